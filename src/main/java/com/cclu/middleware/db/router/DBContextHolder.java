@@ -3,7 +3,8 @@ package com.cclu.middleware.db.router;
 /**
  * @author ChangCheng Lu
  * @date 2023/11/11 16:07
- * @description 数据源上下文
+ * @description 数据源上下文，影子标记用于压测流量，标记后请求路由到影子库或影子表；
+ * 备库标记用于对冲读，标记后请求路由到当前分库的备库
  * @copyright ChangChengLu
  */
 public class DBContextHolder {
@@ -18,6 +19,16 @@ public class DBContextHolder {
      */
     private static final ThreadLocal<String> tbKey = new ThreadLocal<>();
 
+    /**
+     * 影子标记
+     */
+    private static final ThreadLocal<Boolean> shadow = new ThreadLocal<>();
+
+    /**
+     * 备库标记
+     */
+    private static final ThreadLocal<Boolean> replica = new ThreadLocal<>();
+
     public static void setDBKey(String dbKeyIdx) {
         dbKey.set(dbKeyIdx);
     }
@@ -41,4 +52,36 @@ public class DBContextHolder {
     public static void clearTBKey() {
         tbKey.remove();
     }
-}
\ No newline at end of file
+
+    public static void setShadow(boolean shadowFlag) {
+        if (shadowFlag) {
+            shadow.set(Boolean.TRUE);
+        } else {
+            shadow.remove();
+        }
+    }
+
+    public static boolean isShadow() {
+        return Boolean.TRUE.equals(shadow.get());
+    }
+
+    public static void clearShadow() {
+        shadow.remove();
+    }
+
+    public static void setReplica(boolean replicaFlag) {
+        if (replicaFlag) {
+            replica.set(Boolean.TRUE);
+        } else {
+            replica.remove();
+        }
+    }
+
+    public static boolean isReplica() {
+        return Boolean.TRUE.equals(replica.get());
+    }
+
+    public static void clearReplica() {
+        replica.remove();
+    }
+}
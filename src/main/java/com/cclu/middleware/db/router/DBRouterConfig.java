@@ -1,6 +1,5 @@
 package com.cclu.middleware.db.router;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -12,7 +11,6 @@ import lombok.NoArgsConstructor;
  */
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class DBRouterConfig {
 
     /**
@@ -30,4 +28,40 @@ public class DBRouterConfig {
      */
     private String routerKey;
 
+    /**
+     * 分表后缀格式
+     */
+    private String tbKeyFormat = "%03d";
+
+    /**
+     * 慢 SQL 阈值(毫秒)，小于等于 0 表示不记录慢 SQL
+     */
+    private long slowSqlMillis;
+
+    /**
+     * 慢 SQL 采样率，取值范围 (0, 1]
+     */
+    private double slowSqlSampleRate = 1.0D;
+
+    /**
+     * 跨分片查询线程数
+     */
+    private int scatterThreads = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 跨分片流式读取时每次拉取的行数
+     */
+    private int scatterFetchSize = 100;
+
+    /**
+     * 影子表后缀，如 _shadow；为空时影子流量只能路由到影子库
+     */
+    private String shadowTableSuffix;
+
+    public DBRouterConfig(int dbCount, int tbCount, String routerKey) {
+        this.dbCount = dbCount;
+        this.tbCount = tbCount;
+        this.routerKey = routerKey;
+    }
+
 }
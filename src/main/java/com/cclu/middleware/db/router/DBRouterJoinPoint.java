@@ -1,20 +1,33 @@
 package com.cclu.middleware.db.router;
 
 import com.cclu.middleware.db.router.annotation.DBRouter;
-import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import com.cclu.middleware.db.router.annotation.DBRouterHedgedRead;
+import com.cclu.middleware.db.router.annotation.DBRouterSingleFlight;
+import com.cclu.middleware.db.router.annotation.DBRouterWriteBehind;
+import com.cclu.middleware.db.router.batch.WriteBehindBuffer;
+import com.cclu.middleware.db.router.flight.SingleFlight;
+import com.cclu.middleware.db.router.hedge.HedgedReader;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.rule.TableRule;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.StringUtils;
-import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
-import org.aspectj.lang.Signature;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author ChangCheng Lu
@@ -28,14 +41,34 @@ import java.lang.reflect.Method;
 public class DBRouterJoinPoint {
 
     /**
-     * 数据路由配置信息
+     * 分片规则表，按 Mapper 取得路由配置及路由策略
      */
-    private DBRouterConfig dbRouterConfig;
+    private DBRouterRuleTable dbRouterRuleTable;
 
     /**
-     * 数据路由策略
+     * 写合并缓冲
      */
-    private IDBRouterStrategy dbRouterStrategy;
+    private WriteBehindBuffer writeBehindBuffer;
+
+    /**
+     * 对冲读
+     */
+    private HedgedReader hedgedReader;
+
+    /**
+     * 合并读
+     */
+    private SingleFlight singleFlight;
+
+    /**
+     * 入参类型 -> 字段名 -> 字段。缓存保存在入参类型上，随应用的类加载器一起回收，重新部署后不会继续持有旧的应用类
+     */
+    private static final ClassValue<Map<String, Optional<Field>>> FIELD_CACHE = new ClassValue<Map<String, Optional<Field>>>() {
+        @Override
+        protected Map<String, Optional<Field>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
 
     @Pointcut("@annotation(com.cclu.middleware.db.router.annotation.DBRouter)")
     public void aopPoint() {
@@ -43,40 +76,96 @@ public class DBRouterJoinPoint {
 
     /**
      * 所有需要分库分表的操作，都需要使用自定义注解进行拦截，拦截后读取方法中的入参字段，根据字段进行路由操作。
+     * 0. 根据方法所在 Mapper 的 @DBRouterStrategy(logicTable) 从规则表取得分片规则，未指定时使用全局规则
      * 1. dbRouter.key() 确定根据哪个字段进行路由
      * 2. getAttrValue 根据数据库路由字段，从入参中读取出对应的值。比如路由 key 是 uId，那么就从入参对象 Obj 中获取到 uId 的值。
      * 3. dbRouterStrategy.doRouter(dbKeyAttr) 路由策略根据具体的路由值进行处理
      * 4. 路由处理完成比，就是放行。 jp.proceed();
-     * 5. 最后 dbRouterStrategy 需要执行 clear 因为这里用到了 ThreadLocal 需要手动清空。关于 ThreadLocal 内存泄漏介绍 https://t.zsxq.com/027QF2fae
+     * 5. 最后关闭路由作用域，恢复外层路由；最外层时清空 ThreadLocal。关于 ThreadLocal 内存泄漏介绍 https://t.zsxq.com/027QF2fae
+     * 6. 方法标注 @DBRouterWriteBehind 且不在事务内时，不直接执行，按路由结果写入合并缓冲。
+     * 7. 方法标注 @DBRouterHedgedRead 且分库可对冲时，主库慢于 p95 后在备库发起同样的查询。
+     * 8. 方法标注 @DBRouterSingleFlight 且不在事务内时，同一分片上相同参数的并发查询只执行一次。
      */
     @Around("aopPoint() && @annotation(dbRouter)")
     public Object doRouter(ProceedingJoinPoint jp, DBRouter dbRouter) throws Throwable {
+        Method method = ((MethodSignature) jp.getSignature()).getMethod();
+        TableRule rule = dbRouterRuleTable.ruleOfMapper(method.getDeclaringClass()).getTableRule();
+        String routerKey = rule.getConfig().getRouterKey();
         String dbKey = dbRouter.key();
-        if (StringUtils.isBlank(dbKey) && StringUtils.isBlank(dbRouterConfig.getRouterKey())) {
+        if (StringUtils.isBlank(dbKey) && StringUtils.isBlank(routerKey)) {
             throw new RuntimeException("annotation DBRouter key is null!");
         }
-        dbKey = StringUtils.isNotBlank(dbKey) ? dbKey : dbRouterConfig.getRouterKey();
+        dbKey = StringUtils.isNotBlank(dbKey) ? dbKey : routerKey;
         // 路由属性
         String dbKeyAttr = getAttrValue(dbKey, jp.getArgs());
-        // 路由策略
-        dbRouterStrategy.doRouter(dbKeyAttr);
-        // 返回结果
+        // 路由策略，在路由作用域内执行，结束后恢复外层路由，嵌套调用不会清除外层方法的路由
+        DBRouterScope scope = DBRouterScope.open(rule.getStrategy(), dbKeyAttr);
         try {
-            return jp.proceed();
+            DBRouterWriteBehind writeBehind = method.getAnnotation(DBRouterWriteBehind.class);
+            if (null != writeBehind && !TransactionSynchronizationManager.isActualTransactionActive()) {
+                return doWriteBehind(jp, method, writeBehind);
+            }
+            if (method.isAnnotationPresent(DBRouterSingleFlight.class) && singleFlight.isCoalescable()) {
+                String statementId = method.getDeclaringClass().getName() + "." + method.getName();
+                return singleFlight.execute(statementId, jp.getArgs(), () -> doRead(jp, method));
+            }
+            return doRead(jp, method);
         } finally {
-            dbRouterStrategy.clear();
+            scope.close();
         }
     }
 
-    private Method getMethod(JoinPoint jp) throws NoSuchMethodException {
-        Signature sig = jp.getSignature();
-        MethodSignature methodSignature = (MethodSignature) sig;
-        // jp.getTarget(): 返回代理对象
-        return jp.getTarget().getClass().getMethod(methodSignature.getName(), methodSignature.getParameterTypes());
+    private Object doRead(ProceedingJoinPoint jp, Method method) throws Throwable {
+        if (method.isAnnotationPresent(DBRouterHedgedRead.class) && hedgedReader.isHedgeable()) {
+            return hedgedReader.read(jp::proceed);
+        }
+        return jp.proceed();
     }
 
     /**
-     * 计算路由属性
+     * 写入合并缓冲，durable 模式下等待所在批次提交
+     */
+    private Object doWriteBehind(ProceedingJoinPoint jp, Method method, DBRouterWriteBehind writeBehind) throws Throwable {
+        Object[] args = jp.getArgs();
+        if (1 != args.length) {
+            throw new IllegalStateException("write-behind method must have exactly one parameter: " + method);
+        }
+        String statementId = method.getDeclaringClass().getName() + "." + method.getName();
+        CompletableFuture<Void> future = writeBehindBuffer.enqueue(DBContextHolder.getDBKey(), DBContextHolder.getTBKey(), statementId, args[0]);
+        if (writeBehind.durable()) {
+            long timeoutMillis = writeBehindBuffer.durableTimeoutMillis();
+            try {
+                future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            } catch (TimeoutException e) {
+                // 写入仍在缓冲中，之后可能提交，也可能失败
+                throw new IllegalStateException("write-behind batch of " + statementId + " not committed within " + timeoutMillis
+                        + "ms, the row is still buffered and its outcome is unknown", e);
+            }
+        }
+        return affectedRows(method.getReturnType());
+    }
+
+    private Object affectedRows(Class<?> returnType) {
+        if (void.class == returnType || Void.class == returnType) {
+            return null;
+        }
+        if (int.class == returnType || Integer.class == returnType) {
+            return 1;
+        }
+        if (long.class == returnType || Long.class == returnType) {
+            return 1L;
+        }
+        if (boolean.class == returnType || Boolean.class == returnType) {
+            return true;
+        }
+        throw new IllegalStateException("write-behind method must return void or affected rows, but was " + returnType.getName());
+    }
+
+    /**
+     * 计算路由属性，入参实现 IDBRouterKey 时直接取值，不经过反射(native-image 下推荐的方式)；
+     * 否则回退为反射读取同名字段，native-image 下需为入参类型登记反射配置
      * @param attr 分库分表字段 dbKey
      * @param args 切点方法参数数组
      * @return 计算后的路由属性
@@ -89,20 +178,22 @@ public class DBRouterJoinPoint {
             }
         }
 
-        String filedValue = null;
         for (Object arg : args) {
+            if (null == arg) {
+                continue;
+            }
             try {
-                if (StringUtils.isNotBlank(filedValue)) {
-                    break;
+                Object value = arg instanceof IDBRouterKey ? ((IDBRouterKey) arg).routerValue(attr) : getValueByName(arg, attr);
+                // 多参数方法中不含路由字段的参数跳过，继续查找后续参数
+                if (null != value && StringUtils.isNotBlank(value.toString())) {
+                    return value.toString();
                 }
-                // filedValue = BeanUtils.getProperty(arg, attr);
-                // fix: 使用lombok时，uId这种字段的get方法与idea生成的get方法不同，会导致获取不到属性值，改成反射获取解决
-                filedValue = String.valueOf(getValueByName(arg, attr));
             } catch (Exception e) {
                 log.error("获取路由属性值失败 attr：{}", attr, e);
             }
         }
-        return filedValue;
+        // 全部参数都不含路由字段时沿用原有行为，按 "null" 路由
+        return String.valueOf((Object) null);
     }
 
     /**
@@ -119,20 +210,15 @@ public class DBRouterJoinPoint {
             if (field == null) {
                 return null;
             }
-            // 将字段访问权限设置为公有可访问
-            field.setAccessible(true);
-            // 获取该字段的值，并将其赋值给对象 o
-            Object o = field.get(item);
-            // 重新将字段的访问权限设置为私有
-            field.setAccessible(false);
-            return o;
+            return field.get(item);
         } catch (IllegalAccessException e) {
             return null;
         }
     }
 
     /**
-     * 根据名称获取字段，该方法同时兼顾继承类获取父类的属性
+     * 根据名称获取字段，该方法同时兼顾继承类获取父类的属性。字段按类缓存并在缓存时设置为可访问，
+     * 反射查找只在每个类首次路由时发生
      *
      * @author tang
      * @param item 对象
@@ -140,20 +226,25 @@ public class DBRouterJoinPoint {
      * @return 该属性对应的字段
      */
     private Field getFieldByName(Object item, String name) {
-        try {
+        Map<String, Optional<Field>> fields = FIELD_CACHE.get(item.getClass());
+        return fields.computeIfAbsent(name, key -> {
             Field field;
             try {
                 // 获取对象 item 中名称为 name 的字段
                 field = item.getClass().getDeclaredField(name);
             } catch (NoSuchFieldException e) {
-                // 子类没有名称为 name 的字段，从父类的中搜索名称为 name 的字段
-                field = item.getClass().getSuperclass().getDeclaredField(name);
+                try {
+                    // 子类没有名称为 name 的字段，从父类的中搜索名称为 name 的字段
+                    field = item.getClass().getSuperclass().getDeclaredField(name);
+                } catch (NoSuchFieldException | NullPointerException ex) {
+                    // 子类和父类均没有名称为 name 的字段
+                    return Optional.empty();
+                }
             }
-            return field;
-        } catch (NoSuchFieldException e) {
-            // 子类和父类均没有名称为 name 的字段，返回 NULL
-            return null;
-        }
+            // 将字段访问权限设置为公有可访问
+            field.setAccessible(true);
+            return Optional.of(field);
+        }).orElse(null);
     }
 
 }
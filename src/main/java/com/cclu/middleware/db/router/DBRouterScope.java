@@ -0,0 +1,191 @@
+package com.cclu.middleware.db.router;
+
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/22 09:30
+ * @description 路由作用域，配合 try-with-resources 使用，可嵌套。打开时记录外层路由并设置新路由，关闭时恢复外层路由。
+ * 影子作用域内的请求标记为压测流量，路由到影子库或影子表。
+ * 固定连接的作用域内，每个数据源只从连接池借出一个连接，作用域内的多次 SQL 复用该连接，作用域关闭时归还。
+ * <pre>
+ * try (DBRouterScope scope = DBRouterScope.pinned(strategy, uId)) {
+ *     userDao.queryUserInfoByUserId(user);
+ *     userDao.updateUserInfo(user);
+ * }
+ * </pre>
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public final class DBRouterScope implements AutoCloseable {
+
+    private static final ThreadLocal<Deque<DBRouterScope>> SCOPES = new ThreadLocal<>();
+
+    private final String outerDBKey;
+
+    private final String outerTBKey;
+
+    private final boolean outerShadow;
+
+    /**
+     * 目标数据源 -> 固定的连接，仅开启固定连接的作用域持有
+     */
+    private final Map<DataSource, Connection> pinnedConnections;
+
+    private boolean closed;
+
+    private DBRouterScope(boolean pin) {
+        this.outerDBKey = DBContextHolder.getDBKey();
+        this.outerTBKey = DBContextHolder.getTBKey();
+        this.outerShadow = DBContextHolder.isShadow();
+        this.pinnedConnections = pin && null == pinnedConnections() ? new LinkedHashMap<>() : null;
+        Deque<DBRouterScope> scopes = SCOPES.get();
+        if (null == scopes) {
+            scopes = new ArrayDeque<>();
+            SCOPES.set(scopes);
+        }
+        scopes.push(this);
+    }
+
+    /**
+     * 打开路由到指定库表的作用域
+     * @param dbKey 分库标识，如 01
+     * @param tbKey 分表标识，如 003
+     * @return 作用域
+     */
+    public static DBRouterScope open(String dbKey, String tbKey) {
+        DBRouterScope scope = new DBRouterScope(false);
+        DBContextHolder.setDBKey(dbKey);
+        DBContextHolder.setTBKey(tbKey);
+        return scope;
+    }
+
+    /**
+     * 打开按路由策略计算库表的作用域
+     * @param strategy 路由策略
+     * @param routerValue 路由字段值
+     * @return 作用域
+     */
+    public static DBRouterScope open(IDBRouterStrategy strategy, String routerValue) {
+        DBRouterScope scope = new DBRouterScope(false);
+        route(scope, strategy, routerValue);
+        return scope;
+    }
+
+    /**
+     * 打开固定连接的作用域，沿用当前路由
+     * @return 作用域
+     */
+    public static DBRouterScope pinned() {
+        return new DBRouterScope(true);
+    }
+
+    /**
+     * 打开按路由策略计算库表并固定连接的作用域
+     * @param strategy 路由策略
+     * @param routerValue 路由字段值
+     * @return 作用域
+     */
+    public static DBRouterScope pinned(IDBRouterStrategy strategy, String routerValue) {
+        DBRouterScope scope = new DBRouterScope(true);
+        route(scope, strategy, routerValue);
+        return scope;
+    }
+
+    /**
+     * 打开影子作用域，沿用当前路由，作用域内的 SQL 路由到影子库或影子表
+     * @return 作用域
+     */
+    public static DBRouterScope shadow() {
+        DBRouterScope scope = new DBRouterScope(false);
+        DBContextHolder.setShadow(true);
+        return scope;
+    }
+
+    private static void route(DBRouterScope scope, IDBRouterStrategy strategy, String routerValue) {
+        try {
+            strategy.doRouter(routerValue);
+        } catch (RuntimeException e) {
+            scope.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 当前线程固定连接的作用域持有的连接，不在固定连接的作用域内时返回 null
+     */
+    public static Map<DataSource, Connection> pinnedConnections() {
+        Deque<DBRouterScope> scopes = SCOPES.get();
+        if (null == scopes) {
+            return null;
+        }
+        for (DBRouterScope scope : scopes) {
+            if (null != scope.pinnedConnections) {
+                return scope.pinnedConnections;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 当前线程作用域嵌套层数
+     */
+    public static int depth() {
+        Deque<DBRouterScope> scopes = SCOPES.get();
+        return null == scopes ? 0 : scopes.size();
+    }
+
+    /**
+     * 恢复外层路由，固定连接的作用域同时归还连接。作用域需按打开的相反顺序关闭
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        Deque<DBRouterScope> scopes = SCOPES.get();
+        if (null == scopes || scopes.peek() != this) {
+            throw new IllegalStateException("router scope must be closed in reverse order of opening");
+        }
+        closed = true;
+        scopes.pop();
+        if (scopes.isEmpty()) {
+            SCOPES.remove();
+        }
+        restore(outerDBKey, outerTBKey);
+        DBContextHolder.setShadow(outerShadow);
+        if (null != pinnedConnections) {
+            for (Map.Entry<DataSource, Connection> entry : pinnedConnections.entrySet()) {
+                try {
+                    entry.getValue().close();
+                } catch (SQLException e) {
+                    log.warn("归还固定连接失败 数据源：{}", entry.getKey(), e);
+                }
+            }
+            pinnedConnections.clear();
+        }
+    }
+
+    private static void restore(String dbKey, String tbKey) {
+        if (null == dbKey) {
+            DBContextHolder.clearDBKey();
+        } else {
+            DBContextHolder.setDBKey(dbKey);
+        }
+        if (null == tbKey) {
+            DBContextHolder.clearTBKey();
+        } else {
+            DBContextHolder.setTBKey(tbKey);
+        }
+    }
+
+}
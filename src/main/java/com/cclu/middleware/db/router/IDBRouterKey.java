@@ -0,0 +1,18 @@
+package com.cclu.middleware.db.router;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/25 10:00
+ * @description 路由字段取值接口，Mapper 入参实现该接口时切面直接取值，不再反射读取字段，便于 native-image 编译
+ * @copyright ChangChengLu
+ */
+public interface IDBRouterKey {
+
+    /**
+     * 获取路由字段值
+     * @param routerKey 路由字段，如 uId
+     * @return 路由字段值，不包含该字段时返回 null
+     */
+    Object routerValue(String routerKey);
+
+}
@@ -0,0 +1,18 @@
+package com.cclu.middleware.db.router.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/24 10:30
+ * @description 对冲读标记，标注在 @DBRouter 查询方法上，开启 hedgedRead.enabled 后，
+ * 主库超过分库 p95 未返回时在备库发起同样的查询，取先返回的结果。
+ * 只用于无副作用的查询，事务内调用不做对冲。
+ * @copyright ChangChengLu
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface DBRouterHedgedRead {
+
+}
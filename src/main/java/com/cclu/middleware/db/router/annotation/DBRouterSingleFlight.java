@@ -0,0 +1,19 @@
+package com.cclu.middleware.db.router.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/27 09:30
+ * @description 合并读标记，标注在 @DBRouter 查询方法上，开启 singleFlight.enabled 后，
+ * 同一分片上语句与参数都相同的并发查询只执行一次，后到的调用等待第一个查询的结果。
+ * 可变的结果需可序列化(MyBatis 返回的 ArrayList/HashMap 及实现 Serializable 的实体)，等待的调用各自得到副本，
+ * 不可序列化的结果不合并；参数按 equals/hashCode 比较，实体参数需实现 equals/hashCode 才能合并，事务内调用不做合并。
+ * @copyright ChangChengLu
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface DBRouterSingleFlight {
+
+}
@@ -19,4 +19,10 @@ public @interface DBRouterStrategy {
      */
     boolean splitTable() default false;
 
+    /**
+     *
+     * @return 逻辑表名，对应 tables 下单独配置的分片规则；为空时使用全局 dbCount/tbCount/routerKey
+     */
+    String logicTable() default "";
+
 }
@@ -0,0 +1,23 @@
+package com.cclu.middleware.db.router.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/14 09:10
+ * @description 写合并标记，标注在 @DBRouter 插入方法上，按 (库, 表) 缓冲后批量写入。
+ * 事务内调用不做合并；异步模式下不会回填自增主键。
+ * @copyright ChangChengLu
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface DBRouterWriteBehind {
+
+    /**
+     *
+     * @return true: 等待所在批次提交后返回(组提交)；false: 入队后立即返回
+     */
+    boolean durable() default true;
+
+}
@@ -0,0 +1,221 @@
+package com.cclu.middleware.db.router.batch;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/14 09:32
+ * @description 写合并缓冲，按 (库, 表) 使用无锁队列缓存单行插入，达到批量大小或缓冲时间后，
+ * 在一个事务内以 JDBC 批量方式写入并一次提交。带影子标记的写入单独缓冲，刷写时同样带影子标记。MySQL 连接串开启 rewriteBatchedStatements=true 后驱动会改写为多行 INSERT。
+ * 批量写入失败时逐行重试，只有写入失败的行通知调用方失败。刷写在路由作用域内执行，结束后恢复调用线程原有的路由及影子标记。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class WriteBehindBuffer implements DisposableBean {
+
+    private final WriteBehindConfig config;
+
+    private final ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, ShardBuffer> buffers = new ConcurrentHashMap<>();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    public WriteBehindBuffer(WriteBehindConfig config, ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider, TransactionTemplate transactionTemplate) {
+        this.config = config;
+        this.sqlSessionFactoryProvider = sqlSessionFactoryProvider;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    /**
+     * 写入缓冲，沿用当前线程的影子标记
+     * @param dbKey 分库标识
+     * @param tbKey 分表标识
+     * @param statementId Mapper 语句ID
+     * @param parameter 语句参数
+     * @return 所在批次提交后完成的 Future
+     */
+    public CompletableFuture<Void> enqueue(String dbKey, String tbKey, String statementId, Object parameter) {
+        boolean shadow = DBContextHolder.isShadow();
+        ShardBuffer buffer = buffers.computeIfAbsent(dbKey + "_" + tbKey + (shadow ? "#shadow" : ""), key -> new ShardBuffer(dbKey, tbKey, shadow));
+        PendingWrite write = new PendingWrite(statementId, parameter);
+        buffer.queue.add(write);
+        ScheduledExecutorService executor = scheduler();
+        if (buffer.size.incrementAndGet() >= config.getBatchSize()) {
+            executor.execute(() -> flush(buffer, false));
+        }
+        return write.future;
+    }
+
+    /**
+     * @return durable 写入最长等待时间(毫秒)
+     */
+    public long durableTimeoutMillis() {
+        return config.durableTimeoutMillis();
+    }
+
+    /**
+     * 刷写全部缓冲，用于停机或测试。正在被后台线程刷写的缓冲会等待其完成后再刷写剩余数据
+     */
+    public void flushAll() {
+        buffers.values().forEach(buffer -> flush(buffer, true));
+    }
+
+    /**
+     * @param buffer 缓冲
+     * @param wait 缓冲正在刷写时是否等待；后台定时刷写不等待，直接跳过
+     */
+    private void flush(ShardBuffer buffer, boolean wait) {
+        if (wait) {
+            buffer.lock.lock();
+        } else if (!buffer.lock.tryLock()) {
+            return;
+        }
+        try {
+            List<PendingWrite> batch = new ArrayList<>(config.getBatchSize());
+            PendingWrite write;
+            while (true) {
+                batch.clear();
+                while (batch.size() < config.getBatchSize() && null != (write = buffer.queue.poll())) {
+                    batch.add(write);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                buffer.size.addAndGet(-batch.size());
+                write(buffer, batch);
+            }
+        } finally {
+            buffer.lock.unlock();
+        }
+    }
+
+    private void write(ShardBuffer buffer, List<PendingWrite> batch) {
+        // flushAll 在调用线程上执行，作用域关闭时恢复调用方的路由及影子标记
+        DBRouterScope scope = DBRouterScope.open(buffer.dbKey, buffer.tbKey);
+        try {
+            DBContextHolder.setShadow(buffer.shadow);
+            insert(batch, ExecutorType.BATCH);
+            batch.forEach(pending -> pending.future.complete(null));
+            log.debug("写合并刷写 分库：{} 分表：{} 行数：{}", buffer.dbKey, buffer.tbKey, batch.size());
+        } catch (RuntimeException e) {
+            if (1 == batch.size()) {
+                log.error("写合并刷写失败 分库：{} 分表：{} 行数：1", buffer.dbKey, buffer.tbKey, e);
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            log.warn("写合并批量刷写失败，逐行重试 分库：{} 分表：{} 行数：{}", buffer.dbKey, buffer.tbKey, batch.size(), e);
+            for (PendingWrite pending : batch) {
+                try {
+                    insert(Collections.singletonList(pending), ExecutorType.SIMPLE);
+                    pending.future.complete(null);
+                } catch (RuntimeException rowFailure) {
+                    log.error("写合并逐行写入失败 分库：{} 分表：{} 语句：{}", buffer.dbKey, buffer.tbKey, pending.statementId, rowFailure);
+                    pending.future.completeExceptionally(rowFailure);
+                }
+            }
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * 在一个事务内写入并提交
+     */
+    private void insert(List<PendingWrite> writes, ExecutorType executorType) {
+        transactionTemplate.execute(status -> {
+            try (SqlSession sqlSession = sqlSessionFactoryProvider.getObject().openSession(executorType)) {
+                for (PendingWrite pending : writes) {
+                    sqlSession.insert(pending.statementId, pending.parameter);
+                }
+                sqlSession.flushStatements();
+            }
+            return null;
+        });
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (null == scheduler) {
+            synchronized (this) {
+                if (null == scheduler) {
+                    AtomicInteger sequence = new AtomicInteger();
+                    ScheduledExecutorService executor = Executors.newScheduledThreadPool(config.getThreads(), r -> {
+                        Thread thread = new Thread(r, "db-router-write-behind-" + sequence.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.scheduleWithFixedDelay(() -> buffers.values().forEach(buffer -> flush(buffer, false)), config.getFlushMillis(), config.getFlushMillis(), TimeUnit.MILLISECONDS);
+                    scheduler = executor;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdown();
+        }
+        flushAll();
+    }
+
+    /**
+     * 单个 (库, 表) 的缓冲
+     */
+    private static class ShardBuffer {
+
+        private final String dbKey;
+
+        private final String tbKey;
+
+        private final boolean shadow;
+
+        private final ConcurrentLinkedQueue<PendingWrite> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        ShardBuffer(String dbKey, String tbKey, boolean shadow) {
+            this.dbKey = dbKey;
+            this.tbKey = tbKey;
+            this.shadow = shadow;
+        }
+
+    }
+
+    private static class PendingWrite {
+
+        private final String statementId;
+
+        private final Object parameter;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingWrite(String statementId, Object parameter) {
+            this.statementId = statementId;
+            this.parameter = parameter;
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.cclu.middleware.db.router.batch;
+
+import lombok.Data;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/14 09:20
+ * @description 写合并配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class WriteBehindConfig {
+
+    /**
+     * 每批最大行数，达到后立即刷写
+     */
+    private int batchSize = 100;
+
+    /**
+     * 最长缓冲时间(毫秒)，到期后刷写未满的批次
+     */
+    private long flushMillis = 10;
+
+    /**
+     * 刷写线程数
+     */
+    private int threads = 2;
+
+    /**
+     * durable 写入等待批次提交的超时(毫秒)，在最长缓冲时间之外额外等待的时间
+     */
+    private long commitTimeoutMillis = 10000;
+
+    /**
+     * @return durable 写入最长等待时间(毫秒)：最长缓冲时间 + 提交超时
+     */
+    public long durableTimeoutMillis() {
+        return flushMillis + commitTimeoutMillis;
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.cclu.middleware.db.router.bloom;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/21 09:10
+ * @description 逻辑表布隆过滤器配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class BloomFilterConfig {
+
+    /**
+     * 建立过滤器的列
+     */
+    private List<String> columns = new ArrayList<>();
+
+    /**
+     * 每个分片预计行数
+     */
+    private long expectedInsertions = 100_000;
+
+    /**
+     * 期望误判率
+     */
+    private double fpp = 0.01;
+
+}
@@ -0,0 +1,115 @@
+package com.cclu.middleware.db.router.bloom;
+
+import com.cclu.middleware.db.router.util.ColumnValues;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/21 09:20
+ * @description 堆外布隆过滤器，位数组保存在 DirectByteBuffer 中，不占用堆内存也不参与 GC 扫描。
+ * 写入串行执行，读取无锁：写入完成后更新 volatile 计数，读取前先读计数，保证读到已完成写入的位。
+ * @copyright ChangChengLu
+ */
+public class OffHeapBloomFilter {
+
+    private static final double LN2 = Math.log(2);
+
+    private final ByteBuffer bits;
+
+    /**
+     * 位数
+     */
+    private final long bitSize;
+
+    /**
+     * 哈希函数个数
+     */
+    private final int hashCount;
+
+    /**
+     * 已写入次数
+     */
+    private volatile long insertions;
+
+    /**
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望误判率
+     */
+    public OffHeapBloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        // m = -n * ln(p) / (ln2)^2，按 long 对齐
+        long m = (long) (-n * Math.log(fpp) / (LN2 * LN2));
+        long words = Math.max(1, (m + 63) / 64);
+        if (words * 8 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("bloom filter too large: expectedInsertions=" + expectedInsertions + ", fpp=" + fpp);
+        }
+        this.bitSize = words * 64;
+        // k = m / n * ln2
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * LN2));
+        this.bits = ByteBuffer.allocateDirect((int) (words * 8));
+    }
+
+    public synchronized void put(Object value) {
+        long hash = hash(value);
+        long h1 = fmix64(hash);
+        long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            int index = (int) (bit >>> 6) << 3;
+            bits.putLong(index, bits.getLong(index) | (1L << (bit & 63)));
+        }
+        insertions++;
+    }
+
+    public boolean mightContain(Object value) {
+        if (0 == insertions) {
+            return false;
+        }
+        long hash = hash(value);
+        long h1 = fmix64(hash);
+        long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            if (0 == (bits.getLong((int) (bit >>> 6) << 3) & (1L << (bit & 63)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getInsertions() {
+        return insertions;
+    }
+
+    /**
+     * @return 堆外内存占用(字节)
+     */
+    public long sizeInBytes() {
+        return bitSize / 8;
+    }
+
+    /**
+     * 值按规范形式(UTF-8)做 FNV-1a 哈希，数据库比较相等的值(大小写、数值精度、时间类型不同)视为同一元素
+     * @see ColumnValues#normalize(Object)
+     */
+    private static long hash(Object value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : ColumnValues.normalize(value).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb93fe53e87c3L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
@@ -0,0 +1,229 @@
+package com.cclu.middleware.db.router.bloom;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.dynamic.InsertValues;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.scatter.Shard;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/21 10:05
+ * @description 分片布隆过滤器。按 (库, 表, 列) 维护堆外布隆过滤器，容器启动后在后台流式扫描各分表建立，
+ * 之后由 mybatis 插件在插入时同步写入。按非路由列查询时先用过滤器排除一定不包含该值的分片，
+ * 过滤器未建立完成前不做排除。布隆过滤器不支持删除，删除或修改列值后只会增加误判，不会漏查。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class ShardBloomFilters implements ApplicationListener<ContextRefreshedEvent> {
+
+    private final DBRouterRuleTable dbRouterRuleTable;
+
+    private final DataSource dataSource;
+
+    private final int fetchSize;
+
+    /**
+     * 逻辑表名(小写) -> 过滤器
+     */
+    private final Map<String, TableFilters> tables = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong prunedShards = new AtomicLong();
+
+    public ShardBloomFilters(DBRouterRuleTable dbRouterRuleTable, DataSource dataSource, Map<String, BloomFilterConfig> configs, int fetchSize) {
+        this.dbRouterRuleTable = dbRouterRuleTable;
+        this.dataSource = dataSource;
+        this.fetchSize = fetchSize;
+        configs.forEach((logicTable, config) -> tables.put(logicTable.toLowerCase(), new TableFilters(logicTable, config)));
+    }
+
+    public boolean isEnabled() {
+        return !tables.isEmpty();
+    }
+
+    /**
+     * 容器启动完成后在后台建立过滤器，不阻塞启动
+     */
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!isEnabled() || !started.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(this::rebuild, "db-router-bloom-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 扫描全部分表并写入过滤器，扫描期间的插入同时由插件写入，不会遗漏
+     */
+    public void rebuild() {
+        for (TableFilters tableFilters : tables.values()) {
+            long start = System.currentTimeMillis();
+            try {
+                for (Shard shard : tableFilters.filters.keySet()) {
+                    scan(tableFilters, shard);
+                }
+                tableFilters.ready = true;
+                log.info("布隆过滤器建立完成 表：{} 列：{} 耗时：{}ms", tableFilters.logicTable, tableFilters.config.getColumns(), System.currentTimeMillis() - start);
+            } catch (SQLException e) {
+                log.warn("布隆过滤器建立失败，暂不排除分片 表：{}", tableFilters.logicTable, e);
+            }
+        }
+    }
+
+    private void scan(TableFilters tableFilters, Shard shard) throws SQLException {
+        List<String> columns = tableFilters.config.getColumns();
+        String sql = "SELECT " + String.join(", ", columns) + " FROM " + tableFilters.logicTable + "_" + shard.getTbKey();
+        DBContextHolder.setDBKey(shard.getDbKey());
+        DBContextHolder.setTBKey(shard.getTbKey());
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.setFetchSize(fetchSize);
+            try (ResultSet resultSet = statement.executeQuery(sql)) {
+                Map<String, OffHeapBloomFilter> shardFilters = tableFilters.filters.get(shard);
+                while (resultSet.next()) {
+                    for (int i = 0; i < columns.size(); i++) {
+                        Object value = resultSet.getObject(i + 1);
+                        if (null != value) {
+                            shardFilters.get(columns.get(i).toLowerCase()).put(value);
+                        }
+                    }
+                }
+            }
+        } finally {
+            DBContextHolder.clearDBKey();
+            DBContextHolder.clearTBKey();
+        }
+    }
+
+    /**
+     * 排除一定不包含该值的分片
+     * @param logicTable 逻辑表名
+     * @param column 列名
+     * @param value 列值
+     * @param shards 候选分片
+     * @return 可能包含该值的分片；未配置该列或过滤器未建立完成时原样返回
+     */
+    public List<Shard> prune(String logicTable, String column, Object value, List<Shard> shards) {
+        TableFilters tableFilters = null == logicTable ? null : tables.get(logicTable.toLowerCase());
+        if (null == tableFilters || !tableFilters.ready || null == value || !tableFilters.hasColumn(column)) {
+            return shards;
+        }
+        List<Shard> candidates = new ArrayList<>();
+        for (Shard shard : shards) {
+            Map<String, OffHeapBloomFilter> shardFilters = tableFilters.filters.get(shard);
+            if (null == shardFilters || shardFilters.get(column.toLowerCase()).mightContain(value)) {
+                candidates.add(shard);
+            }
+        }
+        lookups.incrementAndGet();
+        prunedShards.addAndGet(shards.size() - candidates.size());
+        return candidates;
+    }
+
+    /**
+     * 插件在 INSERT 执行后调用，将插入行的过滤列值写入当前路由分片的过滤器
+     * @param mappedStatement 语句
+     * @param boundSql 已改写表名的 SQL 及参数
+     */
+    public void onInsert(MappedStatement mappedStatement, BoundSql boundSql) {
+        String dbKey = DBContextHolder.getDBKey();
+        String tbKey = DBContextHolder.getTBKey();
+        if (null == dbKey || null == tbKey) {
+            return;
+        }
+        InsertValues insertValues = InsertValues.parse(mappedStatement, boundSql);
+        if (null == insertValues) {
+            return;
+        }
+        TableFilters tableFilters = tables.get(insertValues.logicTable(tbKey));
+        if (null == tableFilters) {
+            return;
+        }
+        Map<String, OffHeapBloomFilter> shardFilters = tableFilters.filters.get(new Shard(dbKey, tbKey));
+        if (null == shardFilters) {
+            return;
+        }
+        for (Map<String, Object> row : insertValues.getRows()) {
+            for (Map.Entry<String, OffHeapBloomFilter> filter : shardFilters.entrySet()) {
+                Object value = row.get(filter.getKey());
+                if (null != value) {
+                    filter.getValue().put(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 使用过滤器的查询次数
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return 被过滤器排除的分片总数
+     */
+    public long getPrunedShards() {
+        return prunedShards.get();
+    }
+
+    public boolean isReady(String logicTable) {
+        TableFilters tableFilters = tables.get(logicTable.toLowerCase());
+        return null != tableFilters && tableFilters.ready;
+    }
+
+    /**
+     * 单个逻辑表的过滤器：分片 -> 列名(小写) -> 过滤器
+     */
+    private class TableFilters {
+
+        private final String logicTable;
+
+        private final BloomFilterConfig config;
+
+        private final Map<Shard, Map<String, OffHeapBloomFilter>> filters = new LinkedHashMap<>();
+
+        private volatile boolean ready;
+
+        TableFilters(String logicTable, BloomFilterConfig config) {
+            this.logicTable = logicTable;
+            this.config = config;
+            DBRouterConfig routerConfig = dbRouterRuleTable.ruleOf(logicTable).getConfig();
+            for (int dbIdx = 1; dbIdx <= routerConfig.getDbCount(); dbIdx++) {
+                for (int tbIdx = 0; tbIdx < routerConfig.getTbCount(); tbIdx++) {
+                    Map<String, OffHeapBloomFilter> shardFilters = new HashMap<>();
+                    for (String column : config.getColumns()) {
+                        shardFilters.put(column.toLowerCase(), new OffHeapBloomFilter(config.getExpectedInsertions(), config.getFpp()));
+                    }
+                    filters.put(new Shard(String.format("%02d", dbIdx), String.format(routerConfig.getTbKeyFormat(), tbIdx)), shardFilters);
+                }
+            }
+        }
+
+        boolean hasColumn(String column) {
+            return null != column && !filters.isEmpty() && filters.values().iterator().next().containsKey(column.toLowerCase());
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.cclu.middleware.db.router.broadcast;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/18 10:30
+ * @description 广播表写入失败，记录写入失败的数据源及原因。当前数据源上的写入已经执行，失败的数据源需要补偿
+ * @copyright ChangChengLu
+ */
+public class BroadcastWriteException extends RuntimeException {
+
+    /**
+     * 数据源 key -> 失败原因
+     */
+    private final Map<String, Throwable> failures;
+
+    public BroadcastWriteException(String sql, int targets, Map<String, Throwable> failures) {
+        super("broadcast write failed on " + failures.keySet() + " of " + targets + " data sources: " + sql,
+                failures.values().iterator().next());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        failures.values().stream().skip(1).forEach(this::addSuppressed);
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.cclu.middleware.db.router.broadcast;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.parameter.ParameterHandler;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/18 10:10
+ * @description 广播表写入，将当前数据源上执行过的写 SQL 并行复制到其余全部数据源(各分库及默认库)。
+ * 复制在各数据源上以自动提交执行；处于 Spring 事务中时延迟到事务提交后复制，事务回滚则不复制。
+ * 任一数据源失败时汇总抛出 BroadcastWriteException，事务提交后复制失败时由提交调用方收到该异常。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class BroadcastWriter implements DisposableBean {
+
+    private final DynamicDataSource dynamicDataSource;
+
+    private final ExecutorService executorService;
+
+    public BroadcastWriter(DataSource dataSource) {
+        this.dynamicDataSource = (DynamicDataSource) dataSource;
+        AtomicInteger sequence = new AtomicInteger();
+        // 每个数据源一个线程，写入同时发往全部数据源
+        int threads = dynamicDataSource.getResolvedDataSources().size() + 1;
+        this.executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "db-router-broadcast-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 将写 SQL 复制到当前路由数据源之外的全部数据源，处于事务中时在事务提交后复制
+     * @param sql 已在当前数据源执行的 SQL
+     * @param parameterHandler 参数设置
+     * @return 各数据源影响行数，延迟到事务提交后复制时为空
+     */
+    public Map<String, Integer> write(String sql, ParameterHandler parameterHandler) {
+        // 提交回调执行时路由信息已清除，目标数据源在写入时确定
+        Map<String, DataSource> targets = targets();
+        targets.remove(dynamicDataSource.lookupKey(DBContextHolder.getDBKey()));
+        if (TransactionSynchronizationManager.isActualTransactionActive() && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    replicate(targets, sql, parameterHandler);
+                }
+            });
+            return Collections.emptyMap();
+        }
+        return replicate(targets, sql, parameterHandler);
+    }
+
+    private Map<String, Integer> replicate(Map<String, DataSource> targets, String sql, ParameterHandler parameterHandler) {
+        Map<String, Future<Integer>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, DataSource> target : targets.entrySet()) {
+            futures.put(target.getKey(), executorService.submit(() -> executeUpdate(target.getValue(), sql, parameterHandler)));
+        }
+
+        Map<String, Integer> affectedRows = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Integer>> future : futures.entrySet()) {
+            try {
+                affectedRows.put(future.getKey(), future.getValue().get());
+            } catch (ExecutionException e) {
+                failures.put(future.getKey(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(future.getKey(), e);
+            }
+        }
+        if (!failures.isEmpty()) {
+            log.error("广播表写入失败 数据源:{} SQL:{}", failures.keySet(), sql);
+            throw new BroadcastWriteException(sql, futures.size() + 1, failures);
+        }
+        return affectedRows;
+    }
+
+    /**
+     * @return 数据源 key -> 当前数据源(已故障转移的为备库)，包含默认数据源
+     */
+    private Map<String, DataSource> targets() {
+        Map<String, DataSource> targets = new LinkedHashMap<>();
+        String defaultKey = dynamicDataSource.lookupKey(null);
+        targets.put(defaultKey, dynamicDataSource.activeDataSource(defaultKey));
+        dynamicDataSource.getResolvedDataSources().keySet().forEach(key -> targets.put(key.toString(), dynamicDataSource.activeDataSource(key.toString())));
+        return targets;
+    }
+
+    private int executeUpdate(DataSource dataSource, String sql, ParameterHandler parameterHandler) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); PreparedStatement statement = connection.prepareStatement(sql)) {
+            parameterHandler.setParameters(statement);
+            return statement.executeUpdate();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+}
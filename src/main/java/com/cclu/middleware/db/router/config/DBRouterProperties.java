@@ -0,0 +1,148 @@
+package com.cclu.middleware.db.router.config;
+
+import com.cclu.middleware.db.router.batch.WriteBehindConfig;
+import com.cclu.middleware.db.router.bloom.BloomFilterConfig;
+import com.cclu.middleware.db.router.flight.SingleFlightConfig;
+import com.cclu.middleware.db.router.gsi.GlobalIndexConfig;
+import com.cclu.middleware.db.router.health.HealthCheckConfig;
+import com.cclu.middleware.db.router.hedge.HedgedReadConfig;
+import com.cclu.middleware.db.router.pool.AdaptivePoolConfig;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/25 09:10
+ * @description 路由配置，mini-db-router.jdbc.datasource 下的路由、分片规则及各功能配置按类型绑定，
+ * 不再逐项读取字符串再转换。各数据源(list 中的 db00、db01 及 global)的连接属性键不固定，仍按 Map 读取。
+ * @copyright ChangChengLu
+ */
+@Data
+@ConfigurationProperties(prefix = DBRouterProperties.PREFIX)
+public class DBRouterProperties {
+
+    public static final String PREFIX = "mini-db-router.jdbc.datasource";
+
+    /**
+     * 分库数量
+     */
+    private Integer dbCount;
+
+    /**
+     * 分表数量
+     */
+    private Integer tbCount;
+
+    /**
+     * 路由字段
+     */
+    private String routerKey;
+
+    /**
+     * 分表后缀格式
+     */
+    private String tbKeyFormat;
+
+    /**
+     * 分库数据源，逗号分隔 e.g: db01,db02
+     */
+    private String list;
+
+    /**
+     * 默认数据源，配置项为 default
+     */
+    private String defaultDataSource;
+
+    /**
+     * 广播表，逗号分隔
+     */
+    private String broadcastTables;
+
+    /**
+     * 绑定表组，组间使用 ; 分隔
+     */
+    private String bindingTables;
+
+    /**
+     * 慢 SQL 阈值(毫秒)
+     */
+    private long slowSqlMillis;
+
+    /**
+     * 慢 SQL 采样率
+     */
+    private double slowSqlSampleRate = 1.0D;
+
+    /**
+     * 跨分片查询线程数
+     */
+    private Integer scatterThreads;
+
+    /**
+     * 跨分片流式读取行数
+     */
+    private Integer scatterFetchSize;
+
+    /**
+     * 影子表后缀
+     */
+    private String shadowTableSuffix;
+
+    /**
+     * 逻辑表 -> 分片规则
+     */
+    private Map<String, TableRuleProperties> tables = new HashMap<>();
+
+    /**
+     * 逻辑表 -> 布隆过滤器配置
+     */
+    private Map<String, BloomFilterConfig> bloomFilters = new HashMap<>();
+
+    /**
+     * 逻辑表 -> 全局二级索引配置
+     */
+    private Map<String, GlobalIndexConfig> globalIndexes = new HashMap<>();
+
+    private AdaptivePoolConfig adaptivePool = new AdaptivePoolConfig();
+
+    private WriteBehindConfig writeBehind = new WriteBehindConfig();
+
+    private HedgedReadConfig hedgedRead = new HedgedReadConfig();
+
+    private SingleFlightConfig singleFlight = new SingleFlightConfig();
+
+    private HealthCheckConfig healthCheck = new HealthCheckConfig();
+
+    public String getDefault() {
+        return defaultDataSource;
+    }
+
+    public void setDefault(String defaultDataSource) {
+        this.defaultDataSource = defaultDataSource;
+    }
+
+    /**
+     * 逻辑表分片规则，未配置的项继承全局规则
+     */
+    @Data
+    public static class TableRuleProperties {
+
+        private Integer dbCount;
+
+        private Integer tbCount;
+
+        private String routerKey;
+
+        private String tbKeyFormat;
+
+        /**
+         * 路由策略：hash、IDBRouterStrategyFactory 声明的策略名，或策略实现类名(需反射创建)
+         */
+        private String strategy = "hash";
+
+    }
+
+}
@@ -2,17 +2,48 @@ package com.cclu.middleware.db.router.config;
 
 import com.cclu.middleware.db.router.DBRouterConfig;
 import com.cclu.middleware.db.router.DBRouterJoinPoint;
+import com.cclu.middleware.db.router.batch.WriteBehindBuffer;
+import com.cclu.middleware.db.router.bloom.BloomFilterConfig;
+import com.cclu.middleware.db.router.bloom.ShardBloomFilters;
+import com.cclu.middleware.db.router.broadcast.BroadcastWriter;
+import com.cclu.middleware.db.router.batch.WriteBehindConfig;
 import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
 import com.cclu.middleware.db.router.dynamic.DynamicMybatisPlugin;
+import com.cclu.middleware.db.router.dynamic.ShardStatementCache;
+import com.cclu.middleware.db.router.dynamic.StatementCacheConfig;
+import com.cclu.middleware.db.router.flight.SingleFlight;
+import com.cclu.middleware.db.router.flight.SingleFlightConfig;
+import com.cclu.middleware.db.router.gsi.GlobalIndexConfig;
+import com.cclu.middleware.db.router.gsi.GlobalIndexes;
+import com.cclu.middleware.db.router.health.HealthCheckConfig;
+import com.cclu.middleware.db.router.hedge.HedgedReadConfig;
+import com.cclu.middleware.db.router.hedge.HedgedReader;
+import com.cclu.middleware.db.router.hedge.ShardLatencyTracker;
+import com.cclu.middleware.db.router.health.ShardHealthChecker;
+import com.cclu.middleware.db.router.explain.DBRouterEndpoint;
+import com.cclu.middleware.db.router.explain.DBRouterExplainer;
+import com.cclu.middleware.db.router.monitor.SlowStatementLog;
+import com.cclu.middleware.db.router.pool.AdaptivePoolConfig;
+import com.cclu.middleware.db.router.pool.AdaptivePoolController;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.rule.TableRule;
+import com.cclu.middleware.db.router.scatter.ShardScatterTemplate;
 import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategyFactory;
 import com.cclu.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
 import com.cclu.middleware.db.router.util.PropertyUtil;
 import com.cclu.middleware.db.router.util.StringUtils;
+import com.zaxxer.hikari.HikariDataSource;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.reflection.MetaObject;
 import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.context.EnvironmentAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,10 +52,16 @@ import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author ChangCheng Lu
@@ -32,14 +69,29 @@ import java.util.Objects;
  * @description 数据源配置解析
  * @copyright ChangChengLu
  *
- * setEnvironment: 获取并封装数据源配置信息
+ * setEnvironment: 获取并封装数据源配置信息，路由及各功能配置按 DBRouterProperties 类型绑定
  * Interceptor: mybatis 插件加载
  * DataSource: 数据源加载
  * Initializing ExecutorService 'applicationTaskExecutor'
  * DBRouterConfigDB 配置加载
- * IDBRouterStrategy: 数据库路由策略加载
+ * IDBRouterStrategy: 数据库路由策略加载，逻辑表可按 IDBRouterStrategyFactory Bean 声明的策略名使用自定义策略
+ * DBRouterRuleTable: 分片规则表加载(全局规则及 tables 下的逻辑表规则、broadcastTables 广播表、bindingTables 绑定表组)
+ * BroadcastWriter: 广播表写入加载
+ * ShardBloomFilters: 分片布隆过滤器加载(bloomFilters 下配置的逻辑表)
+ * GlobalIndexes: 全局二级索引加载(globalIndexes 下配置的逻辑表)
  * DBRouterJointPoint: 切面加载
  * TransactionTemplate: 事务配置加载
+ * SlowStatementLog: 慢 SQL 日志加载
+ * DBRouterExplainer: 路由解释器加载(actuator 存在时同时加载 DBRouterEndpoint 端点)
+ * ShardScatterTemplate: 跨分片查询模板加载
+ * AdaptivePoolController: 分库连接池自适应调整加载(adaptivePool.enabled=true 时)
+ * WriteBehindBuffer: 写合并缓冲加载
+ * ShardHealthChecker: 分库健康检查及主备切换加载(healthCheck.enabled=true 时)
+ * 影子库: 各数据源 shadow 下配置的影子库及 shadowTableSuffix 影子表后缀，随 DataSource 加载
+ * ShardLatencyTracker: 分库查询耗时统计及语句超时(各数据源 statementTimeoutSeconds)加载
+ * HedgedReader: 对冲读加载(hedgedRead.enabled=true 时对 @DBRouterHedgedRead 查询生效)
+ * SingleFlight: 合并读加载(singleFlight.enabled=true 时对 @DBRouterSingleFlight 查询生效)
+ * ShardStatementCache: 分片 SQL 改写缓存加载(各数据源 pool.statementCache 同时配置驱动的预编译语句缓存)
  */
 @Configuration
 public class DataSourceAutoConfig implements EnvironmentAware {
@@ -54,11 +106,41 @@ public class DataSourceAutoConfig implements EnvironmentAware {
      */
     private static final String TAG_POOL = "pool";
 
+    /**
+     * 连接池下的语句缓存属性(SQL 改写缓存及驱动预编译语句缓存)
+     */
+    private static final String TAG_STATEMENT_CACHE = "statementCache";
+
+    /**
+     * 分库连接池自适应上下限属性
+     */
+    private static final String TAG_ADAPTIVE_POOL = "adaptivePool";
+
+    /**
+     * 备库属性
+     */
+    private static final String TAG_STANDBY = "standby";
+
+    /**
+     * 影子库属性
+     */
+    private static final String TAG_SHADOW = "shadow";
+
+    /**
+     * 按类型绑定的路由配置
+     */
+    private DBRouterProperties dbRouterProperties;
+
     /**
      * 数据源配置组
      */
     private Map<String, Map<String, Object>> dataSourceMap = new HashMap<>();
 
+    /**
+     * 默认数据源名称
+     */
+    private String defaultDataSourceName;
+
     /**
      * 默认数据源配置
      */
@@ -79,16 +161,155 @@ public class DataSourceAutoConfig implements EnvironmentAware {
      */
     private String routerKey;
 
+    /**
+     * 分表后缀格式
+     */
+    private String tbKeyFormat;
+
+    /**
+     * 逻辑表分片规则配置，key 为逻辑表名
+     */
+    private Map<String, DBRouterProperties.TableRuleProperties> tableRules = Collections.emptyMap();
+
+    /**
+     * 广播表
+     */
+    private Set<String> broadcastTables = Collections.emptySet();
+
+    /**
+     * 绑定表组
+     */
+    private List<Set<String>> bindingTables = Collections.emptyList();
+
+    /**
+     * 慢 SQL 阈值(毫秒)
+     */
+    private long slowSqlMillis;
+
+    /**
+     * 慢 SQL 采样率
+     */
+    private double slowSqlSampleRate;
+
+    /**
+     * 跨分片查询线程数
+     */
+    private Integer scatterThreads;
+
+    /**
+     * 跨分片流式读取行数
+     */
+    private Integer scatterFetchSize;
+
+    /**
+     * 连接池自适应配置
+     */
+    private AdaptivePoolConfig adaptivePoolConfig = new AdaptivePoolConfig();
+
+    /**
+     * 写合并配置
+     */
+    private WriteBehindConfig writeBehindConfig = new WriteBehindConfig();
+
+    /**
+     * 逻辑表 -> 布隆过滤器配置
+     */
+    private Map<String, BloomFilterConfig> bloomFilterConfigs = new HashMap<>();
+
+    /**
+     * 逻辑表 -> 全局二级索引配置
+     */
+    private Map<String, GlobalIndexConfig> globalIndexConfigs = new HashMap<>();
+
+    /**
+     * 健康检查配置
+     */
+    private HealthCheckConfig healthCheckConfig = new HealthCheckConfig();
+
+    /**
+     * 影子表后缀
+     */
+    private String shadowTableSuffix;
+
+    /**
+     * 语句超时及对冲读配置
+     */
+    private HedgedReadConfig hedgedReadConfig = new HedgedReadConfig();
+
+    /**
+     * 合并读配置
+     */
+    private SingleFlightConfig singleFlightConfig = new SingleFlightConfig();
+
+    /**
+     * 分片 SQL 改写缓存配置
+     */
+    private StatementCacheConfig statementCacheConfig = new StatementCacheConfig();
+
     /**
      * 加载切面
-     * @param dbRouterConfig 分库分表配置信息
-     * @param dbRouterStrategy 分库分表策略
+     * @param dbRouterRuleTable 分片规则表
+     * @param writeBehindBuffer 写合并缓冲
+     * @param hedgedReader 对冲读
+     * @param singleFlight 合并读
      * @return DBRouterJoinPoint
      */
     @Bean(name = "db-router-point")
     @ConditionalOnMissingBean
-    public DBRouterJoinPoint point(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy) {
-        return new DBRouterJoinPoint(dbRouterConfig, dbRouterStrategy);
+    public DBRouterJoinPoint point(DBRouterRuleTable dbRouterRuleTable, WriteBehindBuffer writeBehindBuffer, HedgedReader hedgedReader, SingleFlight singleFlight) {
+        return new DBRouterJoinPoint(dbRouterRuleTable, writeBehindBuffer, hedgedReader, singleFlight);
+    }
+
+    /**
+     * 加载合并读
+     * @return 合并读
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public SingleFlight singleFlight() {
+        return new SingleFlight(singleFlightConfig);
+    }
+
+    /**
+     * 加载分库查询耗时统计及语句超时
+     * @param dataSource 数据源
+     * @return 分库查询耗时统计
+     */
+    @Bean
+    public ShardLatencyTracker shardLatencyTracker(DataSource dataSource) {
+        return new ShardLatencyTracker(hedgedReadConfig, (DynamicDataSource) dataSource);
+    }
+
+    /**
+     * 加载对冲读，对冲线程在首次对冲时启动
+     * @param shardLatencyTracker 分库查询耗时统计
+     * @param dataSource 数据源
+     * @return 对冲读
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public HedgedReader hedgedReader(ShardLatencyTracker shardLatencyTracker, DataSource dataSource) {
+        return new HedgedReader(hedgedReadConfig, shardLatencyTracker, (DynamicDataSource) dataSource);
+    }
+
+    /**
+     * 加载写合并缓冲，刷写线程在首次写入时启动
+     * @param sqlSessionFactoryProvider mybatis 会话工厂
+     * @param transactionTemplate 事务模板，每批在一个事务内提交
+     * @return 写合并缓冲
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public WriteBehindBuffer writeBehindBuffer(ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider, TransactionTemplate transactionTemplate) {
+        return new WriteBehindBuffer(writeBehindConfig, sqlSessionFactoryProvider, transactionTemplate);
+    }
+
+    /**
+     * @return 按类型绑定的路由配置
+     */
+    @Bean
+    public DBRouterProperties dbRouterProperties() {
+        return dbRouterProperties;
     }
 
     /**
@@ -97,16 +318,173 @@ public class DataSourceAutoConfig implements EnvironmentAware {
      */
     @Bean
     public DBRouterConfig dbRouterConfig() {
-        return new DBRouterConfig(dbCount, tbCount, routerKey);
+        DBRouterConfig dbRouterConfig = new DBRouterConfig(dbCount, tbCount, routerKey);
+        if (null != tbKeyFormat) {
+            dbRouterConfig.setTbKeyFormat(tbKeyFormat);
+        }
+        dbRouterConfig.setSlowSqlMillis(slowSqlMillis);
+        dbRouterConfig.setSlowSqlSampleRate(slowSqlSampleRate);
+        if (null != scatterThreads) {
+            dbRouterConfig.setScatterThreads(scatterThreads);
+        }
+        if (null != scatterFetchSize) {
+            dbRouterConfig.setScatterFetchSize(scatterFetchSize);
+        }
+        dbRouterConfig.setShadowTableSuffix(shadowTableSuffix);
+        return dbRouterConfig;
     }
 
     /**
      *
+     * @param slowStatementLog 慢 SQL 日志
+     * @param dbRouterRuleTable 分片规则表
+     * @param broadcastWriter 广播表写入
+     * @param shardBloomFilters 分片布隆过滤器
+     * @param shardLatencyTracker 分库查询耗时统计
+     * @param globalIndexes 全局二级索引
+     * @param shardStatementCache 分片 SQL 改写缓存
+     * @param dataSource 动态数据源
      * @return mybatis 插件
      */
     @Bean
-    public Interceptor plugin() {
-        return new DynamicMybatisPlugin();
+    public Interceptor plugin(SlowStatementLog slowStatementLog, DBRouterRuleTable dbRouterRuleTable, BroadcastWriter broadcastWriter,
+                              ShardBloomFilters shardBloomFilters, ShardLatencyTracker shardLatencyTracker, GlobalIndexes globalIndexes,
+                              ShardStatementCache shardStatementCache, DataSource dataSource) {
+        return new DynamicMybatisPlugin(slowStatementLog, dbRouterRuleTable, broadcastWriter, shardBloomFilters, shardLatencyTracker, globalIndexes,
+                shardStatementCache, (DynamicDataSource) dataSource);
+    }
+
+    /**
+     * 加载分片 SQL 改写缓存
+     * @return 分片 SQL 改写缓存
+     */
+    @Bean
+    public ShardStatementCache shardStatementCache() {
+        return new ShardStatementCache(statementCacheConfig);
+    }
+
+    /**
+     * 加载全局二级索引，异步写入线程在首次写入时启动
+     * @param dbRouterConfig 分库分表配置信息
+     * @param dbRouterRuleTable 分片规则表
+     * @param dataSource 数据源
+     * @return 全局二级索引
+     */
+    @Bean
+    public GlobalIndexes globalIndexes(DBRouterConfig dbRouterConfig, DBRouterRuleTable dbRouterRuleTable, DataSource dataSource) {
+        return new GlobalIndexes(dbRouterRuleTable, (DynamicDataSource) dataSource, globalIndexConfigs, dbRouterConfig.getScatterFetchSize());
+    }
+
+    /**
+     * 加载分片布隆过滤器
+     * @param dbRouterConfig 分库分表配置信息
+     * @param dbRouterRuleTable 分片规则表
+     * @param dataSource 数据源
+     * @return 分片布隆过滤器
+     */
+    @Bean
+    public ShardBloomFilters shardBloomFilters(DBRouterConfig dbRouterConfig, DBRouterRuleTable dbRouterRuleTable, DataSource dataSource) {
+        return new ShardBloomFilters(dbRouterRuleTable, dataSource, bloomFilterConfigs, dbRouterConfig.getScatterFetchSize());
+    }
+
+    /**
+     * 加载广播表写入
+     * @param dataSource 数据源
+     * @return 广播表写入
+     */
+    @Bean
+    public BroadcastWriter broadcastWriter(DataSource dataSource) {
+        return new BroadcastWriter(dataSource);
+    }
+
+    /**
+     * 加载分片规则表，全局规则使用 dbCount/tbCount/routerKey，逻辑表规则未配置的项继承全局规则
+     * @param dbRouterConfig 分库分表配置信息
+     * @param dbRouterStrategy 全局路由策略
+     * @param strategyFactories 按名称创建逻辑表路由策略的工厂
+     * @return 分片规则表
+     */
+    @Bean
+    public DBRouterRuleTable dbRouterRuleTable(DBRouterConfig dbRouterConfig, IDBRouterStrategy dbRouterStrategy,
+                                               ObjectProvider<IDBRouterStrategyFactory> strategyFactories) {
+        Map<String, IDBRouterStrategyFactory> factories = new HashMap<>();
+        strategyFactories.orderedStream().forEach(factory -> factories.putIfAbsent(factory.name(), factory));
+        Map<String, TableRule> rules = new HashMap<>();
+        for (Map.Entry<String, DBRouterProperties.TableRuleProperties> entry : tableRules.entrySet()) {
+            rules.put(entry.getKey(), createTableRule(entry.getKey(), entry.getValue(), dbRouterConfig, factories));
+        }
+        return new DBRouterRuleTable(new TableRule(null, dbRouterConfig, dbRouterStrategy), rules, broadcastTables, bindingTables);
+    }
+
+    private TableRule createTableRule(String logicTable, DBRouterProperties.TableRuleProperties props, DBRouterConfig global,
+                                      Map<String, IDBRouterStrategyFactory> factories) {
+        DBRouterConfig config = new DBRouterConfig(
+                null == props.getDbCount() ? global.getDbCount() : props.getDbCount(),
+                null == props.getTbCount() ? global.getTbCount() : props.getTbCount(),
+                null == props.getRouterKey() ? global.getRouterKey() : props.getRouterKey());
+        config.setTbKeyFormat(null == props.getTbKeyFormat() ? global.getTbKeyFormat() : props.getTbKeyFormat());
+        if (config.getDbCount() > dataSourceMap.size()) {
+            throw new IllegalArgumentException("dbCount of logic table " + logicTable + " exceeds configured data sources");
+        }
+        return new TableRule(logicTable, config, createStrategy(props.getStrategy(), config, factories));
+    }
+
+    /**
+     * 创建逻辑表路由策略：hash 及工厂声明的策略名直接创建，其余按实现类名反射创建(native-image 下需登记该类的反射配置)
+     */
+    private IDBRouterStrategy createStrategy(String strategy, DBRouterConfig config, Map<String, IDBRouterStrategyFactory> factories) {
+        if ("hash".equalsIgnoreCase(strategy)) {
+            return new DBRouterStrategyHashCode(config);
+        }
+        IDBRouterStrategyFactory factory = factories.get(strategy);
+        if (null != factory) {
+            return factory.create(config);
+        }
+        try {
+            return (IDBRouterStrategy) Class.forName(strategy).getConstructor(DBRouterConfig.class).newInstance(config);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("can not create router strategy " + strategy, e);
+        }
+    }
+
+    /**
+     * @param dbRouterConfig 分库分表配置信息
+     * @return 慢 SQL 日志
+     */
+    @Bean
+    public SlowStatementLog slowStatementLog(DBRouterConfig dbRouterConfig) {
+        return new SlowStatementLog(dbRouterConfig);
+    }
+
+    /**
+     * 加载路由解释器
+     * @param dbRouterRuleTable 分片规则表
+     * @param dbRouterJoinPoint 数据路由切面
+     * @param dataSource 数据源
+     * @param sqlSessionFactoryProvider mybatis 会话工厂，解释时才获取
+     * @return 路由解释器
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public DBRouterExplainer dbRouterExplainer(DBRouterRuleTable dbRouterRuleTable, DBRouterJoinPoint dbRouterJoinPoint,
+                                               DataSource dataSource, ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider) {
+        return new DBRouterExplainer(dbRouterRuleTable, dbRouterJoinPoint, dataSource, sqlSessionFactoryProvider);
+    }
+
+    /**
+     * actuator 存在时加载路由监控端点
+     */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    static class DBRouterEndpointConfig {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public DBRouterEndpoint dbRouterEndpoint(DBRouterConfig dbRouterConfig, DBRouterExplainer dbRouterExplainer, SlowStatementLog slowStatementLog,
+                                                 ShardStatementCache shardStatementCache) {
+            return new DBRouterEndpoint(dbRouterConfig, dbRouterExplainer, slowStatementLog, shardStatementCache);
+        }
+
     }
 
     private DataSource createDataSource(Map<String, Object> attributes) {
@@ -119,14 +497,26 @@ public class DataSourceAutoConfig implements EnvironmentAware {
             String driverClassName = attributes.get("driver-class-name") == null ? "com.zaxxer.hikari.HikariDataSource" : attributes.get("driver-class-name").toString();
             dataSourceProperties.setDriverClassName(driverClassName);
 
-            String typeClassName = attributes.get("type-class-name") == null ? "com.zaxxer.hikari.HikariDataSource" : attributes.get("type-class-name").toString();
-            DataSource ds = dataSourceProperties.initializeDataSourceBuilder().type((Class<DataSource>) Class.forName(typeClassName)).build();
+            // 默认连接池直接引用类型，不经过 Class.forName
+            Object typeClassName = attributes.get("type-class-name");
+            Class<? extends DataSource> type = null == typeClassName || HikariDataSource.class.getName().equals(typeClassName.toString())
+                    ? HikariDataSource.class : (Class<DataSource>) Class.forName(typeClassName.toString());
+            DataSource ds = dataSourceProperties.initializeDataSourceBuilder().type(type).build();
 
-            MetaObject dsMeta = SystemMetaObject.forObject(ds);
+            MetaObject dsMeta = null;
             Map<String, Object> poolProps = (Map<String, Object>) (attributes.containsKey(TAG_POOL) ? attributes.get(TAG_POOL) : Collections.EMPTY_MAP);
             for (Map.Entry<String, Object> entry : poolProps.entrySet()) {
+                if (TAG_STATEMENT_CACHE.equals(entry.getKey())) {
+                    applyStatementCache(ds, (Map<String, Object>) entry.getValue());
+                    continue;
+                }
                 // 中划线转驼峰
                 String key = StringUtils.middleScoreToCamelCase(entry.getKey());
+                // HikariCP 常用属性直接调用 setter，其余属性反射设置
+                if (ds instanceof HikariDataSource && HikariPoolSetters.apply((HikariDataSource) ds, key, entry.getValue())) {
+                    continue;
+                }
+                dsMeta = null == dsMeta ? SystemMetaObject.forObject(ds) : dsMeta;
                 if (dsMeta.hasSetter(key)) {
                     dsMeta.setValue(key, entry.getValue());
                 }
@@ -137,6 +527,27 @@ public class DataSourceAutoConfig implements EnvironmentAware {
         }
     }
 
+    /**
+     * 开启驱动的预编译语句缓存(MySQL Connector/J)，缓存大小与分片语句缓存一致
+     * @param ds 数据源
+     * @param statementCache pool.statementCache 属性
+     */
+    private void applyStatementCache(DataSource ds, Map<String, Object> statementCache) {
+        if (!(ds instanceof HikariDataSource) || null == statementCache.get("size")) {
+            return;
+        }
+        HikariDataSource hikariDataSource = (HikariDataSource) ds;
+        int size = Integer.parseInt(String.valueOf(statementCache.get("size")));
+        hikariDataSource.addDataSourceProperty("cachePrepStmts", String.valueOf(size > 0));
+        hikariDataSource.addDataSourceProperty("prepStmtCacheSize", String.valueOf(size));
+        if (null != statementCache.get("sqlLimit")) {
+            hikariDataSource.addDataSourceProperty("prepStmtCacheSqlLimit", String.valueOf(statementCache.get("sqlLimit")));
+        }
+        if (null != statementCache.get("serverPrepared")) {
+            hikariDataSource.addDataSourceProperty("useServerPrepStmts", String.valueOf(statementCache.get("serverPrepared")));
+        }
+    }
+
     @Bean
     public DataSource createDataSource() {
         // 创建数据源
@@ -154,9 +565,81 @@ public class DataSourceAutoConfig implements EnvironmentAware {
         // db0 为默认数据源
         dynamicDataSource.setDefaultTargetDataSource(createDataSource(defaultDataSourceConfig));
 
+        // 备库，未单独配置的属性沿用主库配置
+        Map<String, DataSource> standbyDataSources = new HashMap<>();
+        for (String dbInfo : dataSourceMap.keySet()) {
+            createAttached(dataSourceMap.get(dbInfo), TAG_STANDBY).ifPresent(ds -> standbyDataSources.put(dbInfo, ds));
+        }
+        createAttached(defaultDataSourceConfig, TAG_STANDBY).ifPresent(ds -> standbyDataSources.put(defaultDataSourceName, ds));
+        dynamicDataSource.setStandbyDataSources(standbyDataSources);
+
+        // 影子库，未单独配置的属性沿用主库配置
+        Map<String, DataSource> shadowDataSources = new HashMap<>();
+        for (String dbInfo : dataSourceMap.keySet()) {
+            createAttached(dataSourceMap.get(dbInfo), TAG_SHADOW).ifPresent(ds -> shadowDataSources.put(dbInfo, ds));
+        }
+        createAttached(defaultDataSourceConfig, TAG_SHADOW).ifPresent(ds -> shadowDataSources.put(defaultDataSourceName, ds));
+        dynamicDataSource.setShadowDataSources(shadowDataSources);
+        dynamicDataSource.setShadowTableSuffix(shadowTableSuffix);
+
         return dynamicDataSource;
     }
 
+    /**
+     * 创建主库附属的数据源(备库、影子库)，tag 下的属性覆盖主库属性
+     * @param attributes 主库属性
+     * @param tag 附属数据源属性
+     * @return 附属数据源，未配置时为空
+     */
+    private Optional<DataSource> createAttached(Map<String, Object> attributes, String tag) {
+        if (!(attributes.get(tag) instanceof Map)) {
+            return Optional.empty();
+        }
+        Map<String, Object> attachedAttributes = new HashMap<>(attributes);
+        attachedAttributes.remove(TAG_STANDBY);
+        attachedAttributes.remove(TAG_SHADOW);
+        attachedAttributes.putAll((Map<String, Object>) attributes.get(tag));
+        return Optional.of(createDataSource(attachedAttributes));
+    }
+
+    /**
+     * 加载分库健康检查，配置了备库的分库在主库故障时自动切换
+     * @param dataSource 数据源
+     * @return 分库健康检查
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource.healthCheck", name = "enabled", havingValue = "true")
+    public ShardHealthChecker shardHealthChecker(DataSource dataSource) {
+        return new ShardHealthChecker((DynamicDataSource) dataSource, healthCheckConfig);
+    }
+
+    /**
+     * 加载跨分片查询模板
+     * @param dbRouterConfig 分库分表配置信息
+     * @param dbRouterRuleTable 分片规则表
+     * @param shardBloomFilters 分片布隆过滤器
+     * @param globalIndexes 全局二级索引
+     * @param dataSource 数据源
+     * @return 跨分片查询模板
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public ShardScatterTemplate shardScatterTemplate(DBRouterConfig dbRouterConfig, DBRouterRuleTable dbRouterRuleTable,
+                                                     ShardBloomFilters shardBloomFilters, GlobalIndexes globalIndexes, DataSource dataSource) {
+        return new ShardScatterTemplate(dbRouterRuleTable, shardBloomFilters, globalIndexes, dataSource, dbRouterConfig.getScatterThreads(), dbRouterConfig.getScatterFetchSize());
+    }
+
+    /**
+     * 加载连接池自适应调整
+     * @param dataSource 数据源
+     * @return 连接池自适应调整
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "mini-db-router.jdbc.datasource.adaptivePool", name = "enabled", havingValue = "true")
+    public AdaptivePoolController adaptivePoolController(DataSource dataSource) {
+        return new AdaptivePoolController((DynamicDataSource) dataSource, adaptivePoolConfig);
+    }
+
     @Bean
     public IDBRouterStrategy dbRouterStrategy(DBRouterConfig dbRouterConfig) {
         return new DBRouterStrategyHashCode(dbRouterConfig);
@@ -185,15 +668,61 @@ public class DataSourceAutoConfig implements EnvironmentAware {
     @Override
     public void setEnvironment(Environment environment) {
         // 配置文件前缀
-        String prefix = "mini-db-router.jdbc.datasource.";
-        // 解析分库数量
-        dbCount = Integer.parseInt(Objects.requireNonNull(environment.getProperty(prefix + "dbCount")));
-        // 解析分表数量
-        tbCount = Integer.parseInt(Objects.requireNonNull(environment.getProperty(prefix + "tbCount")));
+        String prefix = DBRouterProperties.PREFIX + ".";
+        // 路由、分片规则及各功能配置按类型绑定
+        DBRouterProperties properties = Binder.get(environment).bind(DBRouterProperties.PREFIX, DBRouterProperties.class).orElseGet(DBRouterProperties::new);
+        dbRouterProperties = properties;
+        // 分库数量、分表数量
+        dbCount = Objects.requireNonNull(properties.getDbCount(), "dbCount is required");
+        tbCount = Objects.requireNonNull(properties.getTbCount(), "tbCount is required");
         // 路由字段(分区字段)
-        routerKey = environment.getProperty(prefix + "routerKey");
+        routerKey = properties.getRouterKey();
+        // 分表后缀格式
+        tbKeyFormat = properties.getTbKeyFormat();
+        // 逻辑表分片规则 e.g: mini-db-router.jdbc.datasource.tables.user_order.tbCount=8
+        tableRules = properties.getTables();
+        // 广播表 e.g: mini-db-router.jdbc.datasource.broadcastTables=award_dict,activity_dict
+        if (null != properties.getBroadcastTables()) {
+            broadcastTables = splitNames(properties.getBroadcastTables());
+        }
+        // 绑定表组，组间使用 ; 分隔 e.g: mini-db-router.jdbc.datasource.bindingTables=user_order,user_order_item;user_award,user_award_log
+        if (null != properties.getBindingTables()) {
+            bindingTables = Arrays.stream(properties.getBindingTables().split(";")).map(this::splitNames).filter(group -> !group.isEmpty()).collect(Collectors.toList());
+        }
+        // 布隆过滤器 e.g: mini-db-router.jdbc.datasource.bloomFilters.user_strategy_export.columns=uuid,order_id
+        bloomFilterConfigs = properties.getBloomFilters();
+        bloomFilterConfigs.forEach((logicTable, config) -> {
+            if (config.getColumns().isEmpty()) {
+                throw new IllegalArgumentException("columns of bloom filter for logic table " + logicTable + " is required");
+            }
+        });
+        // 全局二级索引 e.g: mini-db-router.jdbc.datasource.globalIndexes.user_strategy_export.columns=order_id
+        globalIndexConfigs = properties.getGlobalIndexes();
+        globalIndexConfigs.forEach((logicTable, config) -> {
+            if (config.getColumns().isEmpty()) {
+                throw new IllegalArgumentException("columns of global index for logic table " + logicTable + " is required");
+            }
+        });
+        // 慢 SQL 阈值及采样率
+        slowSqlMillis = properties.getSlowSqlMillis();
+        slowSqlSampleRate = properties.getSlowSqlSampleRate();
+        // 跨分片查询线程数
+        scatterThreads = properties.getScatterThreads();
+        scatterFetchSize = properties.getScatterFetchSize();
+        // 连接池自适应全局配置，需在解析分库配置前完成
+        adaptivePoolConfig = properties.getAdaptivePool();
+        // 写合并配置
+        writeBehindConfig = properties.getWriteBehind();
+        // 影子表后缀 e.g: mini-db-router.jdbc.datasource.shadowTableSuffix=_shadow
+        shadowTableSuffix = properties.getShadowTableSuffix();
+        // 对冲读配置
+        hedgedReadConfig = properties.getHedgedRead();
+        // 合并读 e.g: mini-db-router.jdbc.datasource.singleFlight.enabled=true
+        singleFlightConfig = properties.getSingleFlight();
+        // 健康检查配置
+        healthCheckConfig = properties.getHealthCheck();
         // 分库分表数据源
-        String dataSources = environment.getProperty(prefix + "list");
+        String dataSources = properties.getList();
         // prefix + TAG_GLOBAL = "mini-db-router.jdbc.datasource.global"
         Map<String, Object> globalInfo = getGlobalProps(environment, prefix + TAG_GLOBAL);
         for (String dbInfo : dataSources.split(",")) {
@@ -205,13 +734,47 @@ public class DataSourceAutoConfig implements EnvironmentAware {
             injectGlobal(dataSourceProps, globalInfo);
             // 以 dbInfo(数据库标识号) 为 Key，存放对应的数据源配置信息
             dataSourceMap.put(dbInfo, dataSourceProps);
+            // 分库连接池自适应上下限 e.g: mini-db-router.jdbc.datasource.db01.adaptivePool.minPoolSize=5
+            if (dataSourceProps.get(TAG_ADAPTIVE_POOL) instanceof Map) {
+                Map<String, Object> bounds = (Map<String, Object>) dataSourceProps.get(TAG_ADAPTIVE_POOL);
+                adaptivePoolConfig.getBounds().put(dbInfo, new AdaptivePoolConfig.Bounds(
+                        Integer.parseInt(String.valueOf(bounds.getOrDefault("minPoolSize", adaptivePoolConfig.getMinPoolSize()))),
+                        Integer.parseInt(String.valueOf(bounds.getOrDefault("maxPoolSize", adaptivePoolConfig.getMaxPoolSize())))));
+            }
+            // 分库语句超时(秒)，可在 global 下统一配置 e.g: mini-db-router.jdbc.datasource.db01.statementTimeoutSeconds=3
+            putStatementTimeout(dbInfo, dataSourceProps);
+            // 分片 SQL 改写缓存 e.g: mini-db-router.jdbc.datasource.db01.pool.statementCache.size=500
+            putStatementCacheSize(dbInfo, dataSourceProps);
         }
         // 获取默认数据源(默认数据库)
         // prefix + "default" e.g: mini-db-router.jdbc.datasource.default=db00
-        String defaultData = environment.getProperty(prefix + "default");
+        defaultDataSourceName = properties.getDefault();
         // 获取默认数据库具体配置，如URL、账户、密码等
-        defaultDataSourceConfig = PropertyUtil.handle(environment, prefix + defaultData, Map.class);
+        defaultDataSourceConfig = PropertyUtil.handle(environment, prefix + defaultDataSourceName, Map.class);
         injectGlobal(defaultDataSourceConfig, globalInfo);
+        putStatementTimeout(defaultDataSourceName, defaultDataSourceConfig);
+        putStatementCacheSize(defaultDataSourceName, defaultDataSourceConfig);
+    }
+
+    private void putStatementCacheSize(String dbInfo, Map<String, Object> dataSourceProps) {
+        if (!(dataSourceProps.get(TAG_POOL) instanceof Map)) {
+            return;
+        }
+        Object statementCache = ((Map<String, Object>) dataSourceProps.get(TAG_POOL)).get(TAG_STATEMENT_CACHE);
+        if (statementCache instanceof Map && null != ((Map<String, Object>) statementCache).get("size")) {
+            statementCacheConfig.getSizes().put(dbInfo, Integer.parseInt(String.valueOf(((Map<String, Object>) statementCache).get("size"))));
+        }
+    }
+
+    private void putStatementTimeout(String dbInfo, Map<String, Object> dataSourceProps) {
+        Object timeout = dataSourceProps.get("statementTimeoutSeconds");
+        if (null != timeout) {
+            hedgedReadConfig.getStatementTimeouts().put(dbInfo, Integer.parseInt(String.valueOf(timeout)));
+        }
+    }
+
+    private Set<String> splitNames(String names) {
+        return Arrays.stream(names.split(",")).map(String::trim).filter(name -> !name.isEmpty()).collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     /**
@@ -222,7 +785,8 @@ public class DataSourceAutoConfig implements EnvironmentAware {
      */
     private Map<String, Object> getGlobalProps(Environment environment, String key) {
         try {
-            return PropertyUtil.handle(environment, key, Map.class);
+            // Binder 只接受规范形式(小写中划线)的前缀，驼峰式配置项按宽松绑定匹配
+            return PropertyUtil.handle(environment, StringUtils.camelCaseToMiddleScore(key), Map.class);
         } catch (Exception e) {
             return Collections.EMPTY_MAP;
         }
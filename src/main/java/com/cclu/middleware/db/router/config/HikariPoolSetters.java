@@ -0,0 +1,64 @@
+package com.cclu.middleware.db.router.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/25 09:30
+ * @description HikariCP 连接池属性的显式设置方法，按属性名直接调用 setter，不经过反射。
+ * 未收录的属性由调用方回退到 MetaObject 反射设置。
+ * @copyright ChangChengLu
+ */
+public final class HikariPoolSetters {
+
+    /**
+     * 驼峰属性名 -> setter
+     */
+    private static final Map<String, BiConsumer<HikariDataSource, String>> SETTERS = new HashMap<>();
+
+    static {
+        SETTERS.put("poolName", HikariDataSource::setPoolName);
+        SETTERS.put("minimumIdle", (ds, value) -> ds.setMinimumIdle(Integer.parseInt(value)));
+        SETTERS.put("maximumPoolSize", (ds, value) -> ds.setMaximumPoolSize(Integer.parseInt(value)));
+        SETTERS.put("connectionTimeout", (ds, value) -> ds.setConnectionTimeout(Long.parseLong(value)));
+        SETTERS.put("validationTimeout", (ds, value) -> ds.setValidationTimeout(Long.parseLong(value)));
+        SETTERS.put("idleTimeout", (ds, value) -> ds.setIdleTimeout(Long.parseLong(value)));
+        SETTERS.put("maxLifetime", (ds, value) -> ds.setMaxLifetime(Long.parseLong(value)));
+        SETTERS.put("leakDetectionThreshold", (ds, value) -> ds.setLeakDetectionThreshold(Long.parseLong(value)));
+        SETTERS.put("initializationFailTimeout", (ds, value) -> ds.setInitializationFailTimeout(Long.parseLong(value)));
+        SETTERS.put("connectionTestQuery", HikariDataSource::setConnectionTestQuery);
+        SETTERS.put("connectionInitSql", HikariDataSource::setConnectionInitSql);
+        SETTERS.put("transactionIsolation", HikariDataSource::setTransactionIsolation);
+        SETTERS.put("catalog", HikariDataSource::setCatalog);
+        SETTERS.put("schema", HikariDataSource::setSchema);
+        SETTERS.put("autoCommit", (ds, value) -> ds.setAutoCommit(Boolean.parseBoolean(value)));
+        SETTERS.put("readOnly", (ds, value) -> ds.setReadOnly(Boolean.parseBoolean(value)));
+        SETTERS.put("allowPoolSuspension", (ds, value) -> ds.setAllowPoolSuspension(Boolean.parseBoolean(value)));
+        SETTERS.put("registerMbeans", (ds, value) -> ds.setRegisterMbeans(Boolean.parseBoolean(value)));
+        SETTERS.put("isolateInternalQueries", (ds, value) -> ds.setIsolateInternalQueries(Boolean.parseBoolean(value)));
+    }
+
+    private HikariPoolSetters() {
+    }
+
+    /**
+     * 设置连接池属性
+     * @param dataSource 连接池
+     * @param key 驼峰属性名，如 maximumPoolSize
+     * @param value 属性值
+     * @return 是否已设置，未收录的属性返回 false
+     */
+    public static boolean apply(HikariDataSource dataSource, String key, Object value) {
+        BiConsumer<HikariDataSource, String> setter = SETTERS.get(key);
+        if (null == setter || null == value) {
+            return false;
+        }
+        setter.accept(dataSource, String.valueOf(value));
+        return true;
+    }
+
+}
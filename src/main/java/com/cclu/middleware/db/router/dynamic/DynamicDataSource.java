@@ -1,13 +1,29 @@
 package com.cclu.middleware.db.router.dynamic;
 
 import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.datasource.ConnectionProxy;
 import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
 
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * @author ChangCheng Lu
  * @date 2023/11/11 16:13
- * @description 动态数据源获取，每当切换数据源，都要从这个里面获取进行获取
+ * @description 动态数据源获取，每当切换数据源，都要从这个里面获取进行获取。
+ * 配置了备库的数据源在故障转移后，路由到该数据源的请求改由备库处理，故障恢复后切回主库。
+ * 带影子标记的请求路由到该数据源的影子库，未配置影子库时使用主库(配合影子表后缀改写为影子表)；两者均未配置时拒绝执行，避免压测数据写入生产表。
+ * 带备库标记的请求(对冲读)路由到该数据源的备库。
+ * 在固定连接的路由作用域内，每个数据源只借出一个连接，返回的连接关闭时不归还连接池，由作用域关闭时归还
  * @copyright ChangChengLu
  */
 public class DynamicDataSource extends AbstractRoutingDataSource {
@@ -15,12 +31,185 @@ public class DynamicDataSource extends AbstractRoutingDataSource {
     @Value("${mini-db-router.jdbc.datasource.default}")
     private String defaultDataSource;
 
+    /**
+     * 数据源 key -> 备库
+     */
+    private final Map<String, DataSource> standbyDataSources = new ConcurrentHashMap<>();
+
+    /**
+     * 已故障转移到备库的数据源 key
+     */
+    private final Set<String> failedOver = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 数据源 key -> 影子库
+     */
+    private final Map<String, DataSource> shadowDataSources = new ConcurrentHashMap<>();
+
+    /**
+     * 影子表后缀
+     */
+    private String shadowTableSuffix;
+
     @Override
     protected Object determineCurrentLookupKey() {
-        if (null == DBContextHolder.getDBKey()) {
+        return lookupKey(DBContextHolder.getDBKey());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Map<DataSource, Connection> pinnedConnections = DBRouterScope.pinnedConnections();
+        if (null == pinnedConnections) {
+            return super.getConnection();
+        }
+        // 按实际目标数据源固定连接：影子、备库读及故障转移后路由到不同的数据源，不复用其他数据源的连接
+        DataSource target = determineTargetDataSource();
+        Connection connection = pinnedConnections.get(target);
+        if (null == connection || connection.isClosed()) {
+            connection = target.getConnection();
+            pinnedConnections.put(target, connection);
+        }
+        return closeSuppressing(connection);
+    }
+
+    private static Connection closeSuppressing(Connection target) {
+        return (Connection) Proxy.newProxyInstance(ConnectionProxy.class.getClassLoader(), new Class<?>[]{ConnectionProxy.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "close":
+                    return null;
+                case "getTargetConnection":
+                    return target;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+            }
+        });
+    }
+
+    @Override
+    protected DataSource determineTargetDataSource() {
+        if (DBContextHolder.isShadow()) {
+            return shadowDataSource((String) determineCurrentLookupKey());
+        }
+        if (DBContextHolder.isReplica()) {
+            DataSource standbyDataSource = standbyDataSources.get(determineCurrentLookupKey());
+            if (null != standbyDataSource) {
+                return standbyDataSource;
+            }
+        }
+        if (!failedOver.isEmpty()) {
+            Object lookupKey = determineCurrentLookupKey();
+            if (failedOver.contains(lookupKey)) {
+                return standbyDataSources.get(lookupKey);
+            }
+        }
+        return super.determineTargetDataSource();
+    }
+
+    /**
+     * 根据分库标识计算数据源 key
+     * @param dbKey 分库标识，如 01；为 null 时使用默认数据源
+     * @return 数据源 key，如 db01
+     */
+    public String lookupKey(String dbKey) {
+        if (null == dbKey) {
             return defaultDataSource;
         } else {
-            return "db" + DBContextHolder.getDBKey();
+            return "db" + dbKey;
+        }
+    }
+
+    /**
+     * 根据数据源 key 获取目标数据源，不存在时返回默认数据源
+     * @param lookupKey 数据源 key
+     * @return 目标数据源
+     */
+    public DataSource resolveTargetDataSource(String lookupKey) {
+        DataSource dataSource = null == lookupKey ? null : getResolvedDataSources().get(lookupKey);
+        return null == dataSource ? getResolvedDefaultDataSource() : dataSource;
+    }
+
+    /**
+     * 根据数据源 key 获取当前承接流量的数据源，已故障转移时返回备库
+     * @param lookupKey 数据源 key
+     * @return 当前数据源
+     */
+    public DataSource activeDataSource(String lookupKey) {
+        if (DBContextHolder.isShadow()) {
+            return shadowDataSource(lookupKey);
+        }
+        if (failedOver.contains(lookupKey)) {
+            return standbyDataSources.get(lookupKey);
+        }
+        return resolveTargetDataSource(lookupKey);
+    }
+
+    /**
+     * 影子流量的目标数据源：优先影子库，其次主库(SQL 已改写为影子表)
+     * @param lookupKey 数据源 key
+     * @return 影子流量的数据源
+     */
+    private DataSource shadowDataSource(String lookupKey) {
+        DataSource shadowDataSource = null == lookupKey ? null : shadowDataSources.get(lookupKey);
+        if (null != shadowDataSource) {
+            return shadowDataSource;
+        }
+        if (null == shadowTableSuffix || shadowTableSuffix.isEmpty()) {
+            throw new IllegalStateException("shadow request routed to " + lookupKey + " but neither shadow data source nor shadow table suffix is configured");
         }
+        return failedOver.contains(lookupKey) ? standbyDataSources.get(lookupKey) : resolveTargetDataSource(lookupKey);
+    }
+
+    public void setShadowDataSources(Map<String, DataSource> shadowDataSources) {
+        this.shadowDataSources.putAll(shadowDataSources);
+    }
+
+    public Map<String, DataSource> getShadowDataSources() {
+        return Collections.unmodifiableMap(shadowDataSources);
+    }
+
+    public void setShadowTableSuffix(String shadowTableSuffix) {
+        this.shadowTableSuffix = shadowTableSuffix;
+    }
+
+    public String getShadowTableSuffix() {
+        return shadowTableSuffix;
+    }
+
+    public void setStandbyDataSources(Map<String, DataSource> standbyDataSources) {
+        this.standbyDataSources.putAll(standbyDataSources);
+    }
+
+    public Map<String, DataSource> getStandbyDataSources() {
+        return Collections.unmodifiableMap(standbyDataSources);
+    }
+
+    /**
+     * 切换到备库
+     * @param lookupKey 数据源 key
+     * @return 是否发生切换，未配置备库或已切换时返回 false
+     */
+    public boolean failover(String lookupKey) {
+        return standbyDataSources.containsKey(lookupKey) && failedOver.add(lookupKey);
+    }
+
+    /**
+     * 切回主库
+     * @param lookupKey 数据源 key
+     * @return 是否发生切换
+     */
+    public boolean failback(String lookupKey) {
+        return failedOver.remove(lookupKey);
+    }
+
+    public boolean isFailedOver(String lookupKey) {
+        return failedOver.contains(lookupKey);
     }
 }
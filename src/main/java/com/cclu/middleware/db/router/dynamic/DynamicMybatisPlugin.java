@@ -1,40 +1,162 @@
 package com.cclu.middleware.db.router.dynamic;
 
 import com.cclu.middleware.db.router.DBContextHolder;
-import com.cclu.middleware.db.router.annotation.DBRouterStrategy;
+import com.cclu.middleware.db.router.bloom.ShardBloomFilters;
+import com.cclu.middleware.db.router.broadcast.BroadcastWriter;
+import com.cclu.middleware.db.router.gsi.GlobalIndexes;
+import com.cclu.middleware.db.router.hedge.HedgedReader;
+import com.cclu.middleware.db.router.hedge.ShardLatencyTracker;
+import com.cclu.middleware.db.router.monitor.SlowStatement;
+import com.cclu.middleware.db.router.monitor.SlowStatementLog;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.rule.MapperRule;
 import org.apache.ibatis.executor.statement.StatementHandler;
 import org.apache.ibatis.mapping.BoundSql;
 import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
 import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.plugin.Intercepts;
 import org.apache.ibatis.plugin.Invocation;
 import org.apache.ibatis.plugin.Signature;
 import org.apache.ibatis.reflection.DefaultReflectorFactory;
 import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.ReflectorFactory;
 import org.apache.ibatis.reflection.SystemMetaObject;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.lang.reflect.Field;
 import java.sql.Connection;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * @author ChangCheng Lu
  * @date 2023/11/16 11:45
- * @description Mybatis 拦截器，通过对 SQL 语句的拦截处理，修改分表信息。
+ * @description Mybatis 拦截器，通过对 SQL 语句的拦截处理，修改分表信息；广播表的写 SQL 执行后复制到全部数据源；
+ * 插入执行后维护分片布隆过滤器及全局二级索引；影子流量在配置了影子表后缀时全部表名改写为影子表。
+ * 改写后的 SQL 按分片缓存，同一语句在同一分片上复用同一 SQL 字符串。
+ * 预编译后按分库设置语句超时并登记到对冲读；主库查询耗时计入分库耗时统计。
  * @copyright ChangChengLu
  */
 // 指定拦截的目标方法
-@Intercepts({@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})})
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}),
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "batch", args = {Statement.class})
+})
 public class DynamicMybatisPlugin implements Interceptor {
 
     /**
-     * 对应查询、插入、更新操作，匹配操作的表名
+     * 共享的反射工厂，StatementHandler 等类的反射信息只解析一次
      */
-    private Pattern pattern = Pattern.compile("(from|into|update)[\\s]{1,}(\\w{1,})", Pattern.CASE_INSENSITIVE);
+    private static final ReflectorFactory REFLECTOR_FACTORY = new DefaultReflectorFactory();
+
+    /**
+     * BoundSql 的 sql 字段，类加载时查找一次并设置为可访问
+     */
+    private static final Field BOUND_SQL_FIELD;
+
+    static {
+        try {
+            BOUND_SQL_FIELD = BoundSql.class.getDeclaredField("sql");
+            BOUND_SQL_FIELD.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * 分表 SQL 改写
+     */
+    private final TableRewriter tableRewriter;
+
+    /**
+     * 慢 SQL 日志
+     */
+    private final SlowStatementLog slowStatementLog;
+
+    /**
+     * 分片规则表
+     */
+    private final DBRouterRuleTable dbRouterRuleTable;
+
+    /**
+     * 广播表写入
+     */
+    private final BroadcastWriter broadcastWriter;
+
+    /**
+     * 分片布隆过滤器
+     */
+    private final ShardBloomFilters shardBloomFilters;
+
+    /**
+     * 分库查询耗时统计及语句超时
+     */
+    private final ShardLatencyTracker shardLatencyTracker;
+
+    /**
+     * 全局二级索引
+     */
+    private final GlobalIndexes globalIndexes;
+
+    /**
+     * 分片 SQL 改写缓存
+     */
+    private final ShardStatementCache shardStatementCache;
+
+    /**
+     * 动态数据源，解析当前路由的数据源 key
+     */
+    private final DynamicDataSource dynamicDataSource;
+
+    public DynamicMybatisPlugin(SlowStatementLog slowStatementLog, DBRouterRuleTable dbRouterRuleTable, BroadcastWriter broadcastWriter,
+                                ShardBloomFilters shardBloomFilters, ShardLatencyTracker shardLatencyTracker, GlobalIndexes globalIndexes,
+                                ShardStatementCache shardStatementCache, DynamicDataSource dynamicDataSource) {
+        this.slowStatementLog = slowStatementLog;
+        this.dbRouterRuleTable = dbRouterRuleTable;
+        this.broadcastWriter = broadcastWriter;
+        this.shardBloomFilters = shardBloomFilters;
+        this.shardLatencyTracker = shardLatencyTracker;
+        this.globalIndexes = globalIndexes;
+        this.shardStatementCache = shardStatementCache;
+        this.dynamicDataSource = dynamicDataSource;
+        this.tableRewriter = new TableRewriter(dbRouterRuleTable.broadcastTables());
+    }
 
     @Override
     public Object intercept(Invocation invocation) throws Throwable {
+        if ("update".equals(invocation.getMethod().getName())) {
+            Object result = executeAndRecord(invocation);
+            broadcast((StatementHandler) invocation.getTarget());
+            maintainBloomFilters((StatementHandler) invocation.getTarget());
+            maintainGlobalIndexes((StatementHandler) invocation.getTarget());
+            return result;
+        }
+        if ("batch".equals(invocation.getMethod().getName())) {
+            Object result = executeAndRecord(invocation);
+            maintainBloomFilters((StatementHandler) invocation.getTarget());
+            maintainGlobalIndexes((StatementHandler) invocation.getTarget());
+            return result;
+        }
+        if ("query".equals(invocation.getMethod().getName())) {
+            return queryAndTrack(invocation);
+        }
+        if (!"prepare".equals(invocation.getMethod().getName())) {
+            return executeAndRecord(invocation);
+        }
+        rewriteTable(invocation);
+        Statement statement = (Statement) invocation.proceed();
+        applyStatementTimeout((StatementHandler) invocation.getTarget(), statement);
+        HedgedReader.register(statement);
+        return statement;
+    }
+
+    /**
+     * 改写分表及影子表的表名
+     */
+    private void rewriteTable(Invocation invocation) throws IllegalAccessException {
         // 获取StatementHandler(指定拦截的目标对象): 准备(预编译)和执行SQL
         // 此处拦截的 statementHandler 实现类实际上是 RoutingStatementHandler
         StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
@@ -47,11 +169,11 @@ public class DynamicMybatisPlugin implements Interceptor {
           statementHandler：需要进行操作的目标对象。
           SystemMetaObject.DEFAULT_OBJECT_FACTORY：指定了使用默认的对象工厂，用于创建MetaObject对象。
           SystemMetaObject.DEFAULT_OBJECT_WRAPPER_FACTORY：指定了使用默认的对象包装器工厂，用于包装和管理Java对象。
-          DefaultReflectorFactory：使用默认的反射工厂，用于获取并操作Java对象的属性和方法。
+          REFLECTOR_FACTORY：共享的默认反射工厂，用于获取并操作Java对象的属性和方法，每个类的反射信息只解析一次。
 
           通过这段代码，我们可以使用MetaObject对象来访问和修改statementHandler对象的属性和方法，实现对其的拦截和处理。
          */
-        MetaObject metaObject = MetaObject.forObject(statementHandler, SystemMetaObject.DEFAULT_OBJECT_FACTORY, SystemMetaObject.DEFAULT_OBJECT_WRAPPER_FACTORY, new DefaultReflectorFactory());
+        MetaObject metaObject = MetaObject.forObject(statementHandler, SystemMetaObject.DEFAULT_OBJECT_FACTORY, SystemMetaObject.DEFAULT_OBJECT_WRAPPER_FACTORY, REFLECTOR_FACTORY);
         /*
           从 RoutingStatementHandler 对象中的 delegate 属性获取  mappedStatement 对象。
 
@@ -69,41 +191,149 @@ public class DynamicMybatisPlugin implements Interceptor {
         // <mapper namespace="com.cclu.lottery.infrastructure.dao.IActivityDao">
         // <insert id="insert" parameterType="com.cclu.lottery.infrastructure.po.Activity">
         // id: com.cclu.lottery.infrastructure.dao.IActivityDao.insert
-        // 此处根据 id 属性获取类的全反射名称
-        String id = mappedStatement.getId();
-        String className = id.substring(0, id.lastIndexOf("."));
-        Class<?> clazz = Class.forName(className);
+        // 此处根据 id 属性获取 Mapper 类名，从规则表取得预先解析的分表标记
         /*
           @Mapper
          * @DBRouterStrategy(splitTable = true)
          * public interface IUserStrategyExportDao {}
          */
-        DBRouterStrategy dbRouterStrategy = clazz.getAnnotation(DBRouterStrategy.class);
-        // 判断该类是否是存在 DBRouterStrategy 注解
-        if (null == dbRouterStrategy || !dbRouterStrategy.splitTable()) {
-            return invocation.proceed();
+        MapperRule mapperRule = dbRouterRuleTable.ruleOfStatement(mappedStatement.getId());
+        String shadowTableSuffix = DBContextHolder.isShadow() ? dbRouterRuleTable.getDefaultRule().getConfig().getShadowTableSuffix() : null;
+        boolean shadowTable = null != shadowTableSuffix && !shadowTableSuffix.isEmpty();
+        // 判断该类是否是存在 DBRouterStrategy 注解，影子流量不分表时也需改写为影子表
+        if (!mapperRule.isSplitTable() && !shadowTable) {
+            return;
         }
 
         // 获取SQL
         // BoundSql 包含最终生成的 SQL，可能是静态生成的SQL，也可能是 Mybatis 动态生成的SQL
         BoundSql boundSql = statementHandler.getBoundSql();
-        String sql = boundSql.getSql();
+        String tbKey = mapperRule.isSplitTable() ? DBContextHolder.getTBKey() : null;
+        // 同一分片上的同一语句只改写一次，命中缓存时跳过表名匹配及绑定表校验
+        String replaceSql = shardStatementCache.rewrite(dynamicDataSource.lookupKey(DBContextHolder.getDBKey()), tbKey, shadowTable, boundSql.getSql(), sql -> {
+            String rewritten = sql;
+            if (mapperRule.isSplitTable()) {
+                // 多张分表时只允许同一绑定表组内的表关联，同组表使用相同后缀
+                dbRouterRuleTable.checkBinding(tableRewriter.tables(rewritten));
+                // 替换 SQL 表名 USER 为 USER_03
+                rewritten = tableRewriter.rewrite(rewritten, tbKey);
+            }
+            if (shadowTable) {
+                // 替换 SQL 表名 USER_03 为 USER_03_shadow
+                rewritten = tableRewriter.shadow(rewritten, shadowTableSuffix);
+            }
+            return rewritten;
+        });
+
+        // 通过反射修改 SQL 语句
+        BOUND_SQL_FIELD.set(boundSql, replaceSql);
+    }
 
-        // 替换 SQL 表名 USER 为 USER_03
-        Matcher matcher = pattern.matcher(sql);
-        String tableName = null;
-        if (matcher.find()) {
-            tableName = matcher.group().trim();
+    /**
+     * 语句未单独指定超时时使用分库语句超时，已有事务超时时取较小值
+     */
+    private void applyStatementTimeout(StatementHandler statementHandler, Statement statement) throws SQLException {
+        int timeout = shardLatencyTracker.statementTimeout(DBContextHolder.getDBKey());
+        if (timeout <= 0) {
+            return;
+        }
+        MappedStatement mappedStatement = mappedStatement(statementHandler);
+        if (null != mappedStatement.getTimeout()) {
+            return;
         }
-        assert null != tableName;
-        String replaceSql = matcher.replaceAll(tableName + "_" + DBContextHolder.getTBKey());
+        int current = statement.getQueryTimeout();
+        statement.setQueryTimeout(current > 0 ? Math.min(current, timeout) : timeout);
+    }
 
-        // 通过反射修改 SQL 语句
-        Field field = boundSql.getClass().getDeclaredField("sql");
-        field.setAccessible(true);
-        field.set(boundSql, replaceSql);
-        field.setAccessible(false);
+    /**
+     * 执行查询，主库查询耗时计入分库耗时统计，作为对冲读的等待时间依据
+     */
+    private Object queryAndTrack(Invocation invocation) throws Throwable {
+        if (!shardLatencyTracker.isEnabled() || DBContextHolder.isReplica() || DBContextHolder.isShadow()) {
+            return executeAndRecord(invocation);
+        }
+        long start = System.nanoTime();
+        Object result = executeAndRecord(invocation);
+        shardLatencyTracker.record(DBContextHolder.getDBKey(), System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * 广播表的写 SQL 在当前数据源执行成功后，复制到其余数据源。
+     * 批量执行器(BATCH)下的写入不做复制，广播表的主键需由应用指定，避免各数据源自增值不一致
+     */
+    private void broadcast(StatementHandler statementHandler) {
+        if (dbRouterRuleTable.broadcastTables().isEmpty()) {
+            return;
+        }
+        MappedStatement mappedStatement = mappedStatement(statementHandler);
+        SqlCommandType sqlCommandType = mappedStatement.getSqlCommandType();
+        if (SqlCommandType.INSERT != sqlCommandType && SqlCommandType.UPDATE != sqlCommandType && SqlCommandType.DELETE != sqlCommandType) {
+            return;
+        }
+        String sql = statementHandler.getBoundSql().getSql();
+        String table = tableRewriter.firstTable(sql);
+        String shadowTableSuffix = dbRouterRuleTable.getDefaultRule().getConfig().getShadowTableSuffix();
+        if (DBContextHolder.isShadow() && null != table && null != shadowTableSuffix && !shadowTableSuffix.isEmpty() && table.endsWith(shadowTableSuffix)) {
+            // 影子表还原为逻辑表名判断是否广播表
+            table = table.substring(0, table.length() - shadowTableSuffix.length());
+        }
+        if (dbRouterRuleTable.isBroadcast(table)) {
+            broadcastWriter.write(sql, statementHandler.getParameterHandler());
+        }
+    }
 
-        return invocation.proceed();
+    /**
+     * 插入执行后将过滤列的值写入当前分片的布隆过滤器
+     */
+    private void maintainBloomFilters(StatementHandler statementHandler) {
+        // 影子流量不写入生产分片的过滤器
+        if (!shardBloomFilters.isEnabled() || DBContextHolder.isShadow()) {
+            return;
+        }
+        MappedStatement mappedStatement = mappedStatement(statementHandler);
+        if (SqlCommandType.INSERT == mappedStatement.getSqlCommandType()) {
+            shardBloomFilters.onInsert(mappedStatement, statementHandler.getBoundSql());
+        }
+    }
+
+    /**
+     * 插入执行后将索引列的值及路由字段值写入全局二级索引
+     */
+    private void maintainGlobalIndexes(StatementHandler statementHandler) {
+        // 影子流量不写入生产索引
+        if (!globalIndexes.isEnabled() || DBContextHolder.isShadow() || null == DBContextHolder.getTBKey()) {
+            return;
+        }
+        MappedStatement mappedStatement = mappedStatement(statementHandler);
+        if (SqlCommandType.INSERT == mappedStatement.getSqlCommandType()) {
+            globalIndexes.onInsert(mappedStatement, statementHandler.getBoundSql());
+        }
+    }
+
+    private static MappedStatement mappedStatement(StatementHandler statementHandler) {
+        MetaObject metaObject = MetaObject.forObject(statementHandler, SystemMetaObject.DEFAULT_OBJECT_FACTORY, SystemMetaObject.DEFAULT_OBJECT_WRAPPER_FACTORY, REFLECTOR_FACTORY);
+        return (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+    }
+
+    /**
+     * 执行 SQL 并统计耗时，超过阈值时按分片记录慢 SQL
+     */
+    private Object executeAndRecord(Invocation invocation) throws Throwable {
+        if (!slowStatementLog.isEnabled()) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            if (slowStatementLog.shouldRecord(elapsedMillis)) {
+                StatementHandler statementHandler = (StatementHandler) invocation.getTarget();
+                MappedStatement mappedStatement = mappedStatement(statementHandler);
+                slowStatementLog.record(new SlowStatement(mappedStatement.getId(), DBContextHolder.getDBKey(), DBContextHolder.getTBKey(),
+                        statementHandler.getBoundSql().getSql(), elapsedMillis, System.currentTimeMillis()));
+            }
+        }
     }
 }
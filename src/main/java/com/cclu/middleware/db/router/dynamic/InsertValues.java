@@ -0,0 +1,150 @@
+package com.cclu.middleware.db.router.dynamic;
+
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.session.Configuration;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/26 09:20
+ * @description INSERT 语句的列值解析，按 INSERT INTO table(columns) VALUES (...) 取得每行占位符列对应的参数值，
+ * 供插入后维护布隆过滤器、全局二级索引使用。列值不是单个占位符(如 now())时不解析。
+ * @copyright ChangChengLu
+ */
+public final class InsertValues {
+
+    /**
+     * 匹配 INSERT INTO table(columns) VALUES ...
+     */
+    private static final Pattern INSERT_PATTERN = Pattern.compile("insert\\s+(?:ignore\\s+)?into\\s+(\\w+)\\s*\\(([^)]*)\\)\\s*values\\s*(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * SQL 中的表名(小写)
+     */
+    private final String table;
+
+    /**
+     * 每行：列名(小写) -> 参数值
+     */
+    private final List<Map<String, Object>> rows;
+
+    private InsertValues(String table, List<Map<String, Object>> rows) {
+        this.table = table;
+        this.rows = rows;
+    }
+
+    /**
+     * 解析插入语句
+     * @param mappedStatement 语句
+     * @param boundSql 已改写表名的 SQL 及参数
+     * @return 插入的列值，不是 INSERT INTO table(columns) VALUES 形式时返回 null
+     */
+    public static InsertValues parse(MappedStatement mappedStatement, BoundSql boundSql) {
+        Matcher matcher = INSERT_PATTERN.matcher(boundSql.getSql());
+        if (!matcher.find()) {
+            return null;
+        }
+        List<String> columns = new ArrayList<>();
+        for (String column : matcher.group(2).split(",")) {
+            columns.add(column.trim().toLowerCase());
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (List<Integer> placeholders : placeholders(matcher.group(3))) {
+            Map<String, Object> row = new HashMap<>();
+            for (int i = 0; i < columns.size() && i < placeholders.size(); i++) {
+                if (placeholders.get(i) >= 0) {
+                    row.put(columns.get(i), parameterValue(mappedStatement.getConfiguration(), boundSql, placeholders.get(i)));
+                }
+            }
+            rows.add(row);
+        }
+        return new InsertValues(matcher.group(1).toLowerCase(), rows);
+    }
+
+    /**
+     * @param tbKey 分表后缀，如 003
+     * @return 去除分表后缀的逻辑表名
+     */
+    public String logicTable(String tbKey) {
+        String suffix = "_" + tbKey;
+        return null != tbKey && table.endsWith(suffix) ? table.substring(0, table.length() - suffix.length()) : table;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    /**
+     * 解析 VALUES 部分，得到每行每列对应的参数下标，列值不是单个占位符(如 now())时为 -1
+     */
+    private static List<List<Integer>> placeholders(String values) {
+        List<List<Integer>> rows = new ArrayList<>();
+        List<Integer> row = null;
+        StringBuilder item = new StringBuilder();
+        int depth = 0;
+        int param = 0;
+        int itemParam = 0;
+        boolean quoted = false;
+        for (char c : values.toCharArray()) {
+            if (quoted) {
+                quoted = '\'' != c;
+                item.append(c);
+                continue;
+            }
+            if ('\'' == c) {
+                quoted = true;
+            } else if ('(' == c && 0 == depth++) {
+                row = new ArrayList<>();
+                item.setLength(0);
+                itemParam = param;
+                continue;
+            } else if (')' == c && 0 == --depth) {
+                row.add("?".equals(item.toString().trim()) ? itemParam : -1);
+                rows.add(row);
+                continue;
+            } else if (',' == c && 1 == depth) {
+                row.add("?".equals(item.toString().trim()) ? itemParam : -1);
+                item.setLength(0);
+                itemParam = param;
+                continue;
+            } else if ('?' == c) {
+                param++;
+            }
+            item.append(c);
+        }
+        return rows;
+    }
+
+    /**
+     * 与 DefaultParameterHandler 一致的参数取值方式
+     */
+    private static Object parameterValue(Configuration configuration, BoundSql boundSql, int index) {
+        List<ParameterMapping> parameterMappings = boundSql.getParameterMappings();
+        if (index >= parameterMappings.size()) {
+            return null;
+        }
+        String property = parameterMappings.get(index).getProperty();
+        Object parameterObject = boundSql.getParameterObject();
+        if (boundSql.hasAdditionalParameter(property)) {
+            return boundSql.getAdditionalParameter(property);
+        } else if (null == parameterObject) {
+            return null;
+        } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+            return parameterObject;
+        }
+        return configuration.newMetaObject(parameterObject).getValue(property);
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.cclu.middleware.db.router.dynamic;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/29 09:20
+ * @description 分片 SQL 改写缓存，按 (库, 表) 缓存改写后的 SQL，每个分片一个按访问顺序淘汰的 LRU。
+ * 同一语句在同一分片上每次得到同一个 SQL 字符串实例，命中时不再做表名匹配和绑定表校验。
+ * 统计的命中、未命中只反映节省的改写次数，不是驱动预编译语句缓存的命中情况，驱动缓存的统计需从驱动或数据库侧获取。
+ * 缓存容量按数据源在 pool.statementCache.size 配置，同一配置同时设置驱动的预编译语句缓存大小(MySQL cachePrepStmts)。
+ * @copyright ChangChengLu
+ */
+public class ShardStatementCache {
+
+    private final StatementCacheConfig config;
+
+    /**
+     * 分片，如 db01_003 -> 缓存
+     */
+    private final Map<String, ShardCache> caches = new ConcurrentHashMap<>();
+
+    public ShardStatementCache(StatementCacheConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 取得分片上改写后的 SQL，未缓存时改写并放入缓存；改写抛出异常时不缓存
+     * @param lookupKey 当前路由的数据源 key，如 db01，未路由时为默认数据源，与 pool.statementCache 配置的数据源一致
+     * @param tbKey 分表标识，如 003；不分表时为 null
+     * @param shadow 是否改写为影子表
+     * @param sql 原始 SQL
+     * @param rewriter 改写方法
+     * @return 改写后的 SQL
+     */
+    public String rewrite(String lookupKey, String tbKey, boolean shadow, String sql, UnaryOperator<String> rewriter) {
+        int size = config.getSizes().getOrDefault(lookupKey, config.getDefaultSize());
+        if (size <= 0) {
+            return rewriter.apply(sql);
+        }
+        String shard = lookupKey + "_" + (null == tbKey ? "-" : tbKey) + (shadow ? "#shadow" : "");
+        ShardCache cache = caches.computeIfAbsent(shard, key -> new ShardCache(size));
+        String rewritten = cache.get(sql);
+        if (null != rewritten) {
+            return rewritten;
+        }
+        return cache.put(sql, rewriter.apply(sql));
+    }
+
+    /**
+     * @return 分片 -> 改写缓存统计，按分片排序
+     */
+    public Map<String, Stats> stats() {
+        Map<String, Stats> stats = new TreeMap<>();
+        caches.forEach((shard, cache) -> stats.put(shard, cache.stats()));
+        return stats;
+    }
+
+    /**
+     * 单个分片的 LRU 缓存
+     */
+    private static class ShardCache {
+
+        private final int capacity;
+
+        private final LinkedHashMap<String, String> statements;
+
+        private final AtomicLong hits = new AtomicLong();
+
+        private final AtomicLong misses = new AtomicLong();
+
+        private final AtomicLong evictions = new AtomicLong();
+
+        ShardCache(int capacity) {
+            this.capacity = capacity;
+            this.statements = new LinkedHashMap<String, String>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    if (size() > ShardCache.this.capacity) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        String get(String sql) {
+            String rewritten;
+            synchronized (statements) {
+                rewritten = statements.get(sql);
+            }
+            (null == rewritten ? misses : hits).incrementAndGet();
+            return rewritten;
+        }
+
+        /**
+         * @return 缓存中的 SQL，并发改写同一语句时以先放入的为准，保证同一分片只有一个实例
+         */
+        String put(String sql, String rewritten) {
+            synchronized (statements) {
+                String existing = statements.putIfAbsent(sql, rewritten);
+                return null == existing ? rewritten : existing;
+            }
+        }
+
+        Stats stats() {
+            int size;
+            synchronized (statements) {
+                size = statements.size();
+            }
+            return new Stats(capacity, size, hits.get(), misses.get(), evictions.get());
+        }
+
+    }
+
+    /**
+     * 分片改写缓存统计，hits 为复用改写结果的次数，misses 为实际改写的次数
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Stats {
+
+        private final int capacity;
+
+        private final int size;
+
+        private final long hits;
+
+        private final long misses;
+
+        private final long evictions;
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return 0 == total ? 0 : (double) hits / total;
+        }
+
+    }
+
+}
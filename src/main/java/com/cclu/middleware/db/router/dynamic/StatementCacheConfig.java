@@ -0,0 +1,27 @@
+package com.cclu.middleware.db.router.dynamic;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/29 09:10
+ * @description 分片 SQL 改写缓存配置，各数据源在 pool.statementCache 下配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class StatementCacheConfig {
+
+    /**
+     * 未单独配置的数据源每个分片缓存的语句数，0 表示不缓存
+     */
+    private int defaultSize = 256;
+
+    /**
+     * 数据源 key，如 db01 -> 该库每个分片缓存的语句数
+     */
+    private Map<String, Integer> sizes = new HashMap<>();
+
+}
@@ -0,0 +1,146 @@
+package com.cclu.middleware.db.router.dynamic;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/02 10:21
+ * @description 分表 SQL 改写，将逻辑表名替换为带分表后缀的物理表名，广播表等排除的表名保持不变。
+ * ON DUPLICATE KEY UPDATE 后的列名及函数调用中的 FROM(如 TRIM(BOTH ' ' FROM col)、EXTRACT(YEAR FROM col))不视为表名。
+ * @copyright ChangChengLu
+ */
+public class TableRewriter {
+
+    /**
+     * 对应查询、插入、更新及关联操作，匹配操作的表名；第 1 组匹配到 ON DUPLICATE KEY UPDATE 时第 3 组为列名
+     */
+    private static final Pattern TABLE_PATTERN = Pattern.compile("\\b(?:(on\\s+duplicate\\s+key\\s+update)|(from|into|update|join))\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private static final int TABLE_GROUP = 3;
+
+    /**
+     * 不改写的表名(小写)
+     */
+    private final Set<String> excludedTables;
+
+    public TableRewriter() {
+        this(Collections.emptySet());
+    }
+
+    /**
+     * @param excludedTables 不改写的表名，如广播表
+     */
+    public TableRewriter(Set<String> excludedTables) {
+        this.excludedTables = new HashSet<>();
+        excludedTables.forEach(table -> this.excludedTables.add(table.toLowerCase()));
+    }
+
+    /**
+     * 获取 SQL 中第一个操作的表名
+     * @param sql SQL
+     * @return 表名，未匹配到时返回 null
+     */
+    public String firstTable(String sql) {
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        while (matcher.find()) {
+            if (isTable(sql, matcher)) {
+                return matcher.group(TABLE_GROUP);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取 SQL 中需要改写的表名(小写)，不含排除的表
+     * @param sql SQL
+     * @return 按出现顺序去重的表名
+     */
+    public Set<String> tables(String sql) {
+        Set<String> tables = new LinkedHashSet<>();
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        while (matcher.find()) {
+            String table = matcher.group(TABLE_GROUP).toLowerCase();
+            if (isTable(sql, matcher) && !excludedTables.contains(table)) {
+                tables.add(table);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * 改写 SQL 表名，如 USER 改写为 USER_003
+     * @param sql 原始 SQL
+     * @param tbKey 分表后缀
+     * @return 改写后的 SQL，未匹配到表名时原样返回
+     */
+    public String rewrite(String sql, String tbKey) {
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        StringBuffer result = new StringBuffer(sql.length() + 8);
+        while (matcher.find()) {
+            if (!isTable(sql, matcher) || excludedTables.contains(matcher.group(TABLE_GROUP).toLowerCase())) {
+                matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group()));
+                continue;
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(matcher.group() + "_" + tbKey));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * 为 SQL 中全部表名追加影子表后缀，包括排除的表，如 USER_003 改写为 USER_003_shadow
+     * @param sql SQL
+     * @param suffix 影子表后缀
+     * @return 改写后的 SQL
+     */
+    public String shadow(String sql, String suffix) {
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        StringBuffer result = new StringBuffer(sql.length() + 16);
+        while (matcher.find()) {
+            matcher.appendReplacement(result, Matcher.quoteReplacement(isTable(sql, matcher) ? matcher.group() + suffix : matcher.group()));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * 匹配到的是否为表名：排除 ON DUPLICATE KEY UPDATE 的列名，以及函数调用括号内的 FROM
+     */
+    private static boolean isTable(String sql, Matcher matcher) {
+        if (null != matcher.group(1)) {
+            return false;
+        }
+        return !"from".equalsIgnoreCase(matcher.group(2)) || !inFunctionCall(sql, matcher.start());
+    }
+
+    /**
+     * 判断位置是否处于函数调用的括号内：最内层未闭合的括号不是以 SELECT 开头的子查询，则为函数调用
+     */
+    private static boolean inFunctionCall(String sql, int index) {
+        Deque<Integer> parentheses = new ArrayDeque<>();
+        boolean quoted = false;
+        for (int i = 0; i < index; i++) {
+            char c = sql.charAt(i);
+            if ('\'' == c) {
+                quoted = !quoted;
+            } else if (!quoted && '(' == c) {
+                parentheses.push(i);
+            } else if (!quoted && ')' == c && !parentheses.isEmpty()) {
+                parentheses.pop();
+            }
+        }
+        if (parentheses.isEmpty()) {
+            return false;
+        }
+        String inner = sql.substring(parentheses.peek() + 1, index).trim();
+        return !inner.regionMatches(true, 0, "select", 0, 6);
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.cclu.middleware.db.router.explain;
+
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.dynamic.ShardStatementCache;
+import com.cclu.middleware.db.router.monitor.SlowStatementLog;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.lang.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/02 11:40
+ * @description 数据路由监控端点
+ * GET /actuator/dbrouter: 路由配置、最近的慢 SQL 及分片 SQL 改写缓存命中率
+ * GET /actuator/dbrouter/{statementId}?key=xxx: 路由解释(不执行 SQL)
+ * @copyright ChangChengLu
+ */
+@Endpoint(id = "dbrouter")
+public class DBRouterEndpoint {
+
+    private final DBRouterConfig dbRouterConfig;
+
+    private final DBRouterExplainer dbRouterExplainer;
+
+    private final SlowStatementLog slowStatementLog;
+
+    private final ShardStatementCache shardStatementCache;
+
+    public DBRouterEndpoint(DBRouterConfig dbRouterConfig, DBRouterExplainer dbRouterExplainer, SlowStatementLog slowStatementLog,
+                            ShardStatementCache shardStatementCache) {
+        this.dbRouterConfig = dbRouterConfig;
+        this.dbRouterExplainer = dbRouterExplainer;
+        this.slowStatementLog = slowStatementLog;
+        this.shardStatementCache = shardStatementCache;
+    }
+
+    @ReadOperation
+    public Map<String, Object> info() {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("config", dbRouterConfig);
+        info.put("slowStatements", slowStatementLog.recent());
+        info.put("rewriteCaches", shardStatementCache.stats());
+        return info;
+    }
+
+    @ReadOperation
+    public RouteExplain explain(@Selector String statementId, @Nullable String key) {
+        return dbRouterExplainer.explain(statementId, key);
+    }
+
+}
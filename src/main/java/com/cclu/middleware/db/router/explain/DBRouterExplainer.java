@@ -0,0 +1,179 @@
+package com.cclu.middleware.db.router.explain;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterJoinPoint;
+import com.cclu.middleware.db.router.annotation.DBRouter;
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import com.cclu.middleware.db.router.dynamic.TableRewriter;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.rule.MapperRule;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import org.apache.commons.lang.StringUtils;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.reflection.ParamNameResolver;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/02 11:12
+ * @description 路由解释器，在不执行 SQL 的前提下计算路由结果、目标数据源和改写后的 SQL
+ * @copyright ChangChengLu
+ */
+public class DBRouterExplainer {
+
+    private final DBRouterRuleTable dbRouterRuleTable;
+
+    private final DBRouterJoinPoint dbRouterJoinPoint;
+
+    private final DataSource dataSource;
+
+    private final ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider;
+
+    private final TableRewriter tableRewriter;
+
+    public DBRouterExplainer(DBRouterRuleTable dbRouterRuleTable, DBRouterJoinPoint dbRouterJoinPoint,
+                             DataSource dataSource, ObjectProvider<SqlSessionFactory> sqlSessionFactoryProvider) {
+        this.dbRouterRuleTable = dbRouterRuleTable;
+        this.tableRewriter = new TableRewriter(dbRouterRuleTable.broadcastTables());
+        this.dbRouterJoinPoint = dbRouterJoinPoint;
+        this.dataSource = dataSource;
+        this.sqlSessionFactoryProvider = sqlSessionFactoryProvider;
+    }
+
+    /**
+     * 解释一次 Mapper 方法调用
+     * @param mapperClass Mapper 接口
+     * @param methodName 方法名
+     * @param args 方法入参
+     * @return 路由解释结果
+     */
+    public RouteExplain explain(Class<?> mapperClass, String methodName, Object... args) {
+        Object[] params = null == args ? new Object[0] : args;
+        Method method = findMethod(mapperClass, methodName, params.length);
+        Configuration configuration = configuration();
+        Object parameterObject = null == configuration ? null : new ParamNameResolver(configuration, method).getNamedParams(params);
+
+        RouteExplain explain = new RouteExplain();
+        explain.setStatementId(mapperClass.getName() + "." + methodName);
+        MapperRule mapperRule = dbRouterRuleTable.ruleOfMapper(mapperClass);
+        if (null != method.getAnnotation(DBRouter.class)) {
+            String routerKey = routerKey(method, mapperRule);
+            explain.setRouterKey(routerKey);
+            explain.setRouterKeyValue(dbRouterJoinPoint.getAttrValue(routerKey, params));
+        }
+        return doExplain(explain, mapperRule, configuration, parameterObject);
+    }
+
+    /**
+     * 根据语句ID和路由字段值解释路由，适用于无法构造完整入参的场景(如 HTTP 端点)
+     * @param statementId Mapper 语句ID
+     * @param routerKeyValue 路由字段值，为空时不路由
+     * @return 路由解释结果
+     */
+    public RouteExplain explain(String statementId, String routerKeyValue) {
+        MapperRule mapperRule = dbRouterRuleTable.ruleOfStatement(statementId);
+        Method method = findMethod(statementId);
+        RouteExplain explain = new RouteExplain();
+        explain.setStatementId(statementId);
+        explain.setRouterKey(null == method ? mapperRule.getTableRule().getConfig().getRouterKey() : routerKey(method, mapperRule));
+        explain.setRouterKeyValue(StringUtils.isBlank(routerKeyValue) ? null : routerKeyValue);
+        return doExplain(explain, mapperRule, configuration(), routerKeyValue);
+    }
+
+    private RouteExplain doExplain(RouteExplain explain, MapperRule mapperRule, Configuration configuration, Object parameterObject) {
+        if (null != explain.getRouterKeyValue()) {
+            route(explain, mapperRule.getTableRule().getStrategy());
+        }
+        if (dataSource instanceof DynamicDataSource) {
+            DynamicDataSource dynamicDataSource = (DynamicDataSource) dataSource;
+            String lookupKey = dynamicDataSource.lookupKey(explain.getDbKey());
+            explain.setDataSourceKey(lookupKey);
+            explain.setDataSource(String.valueOf(dynamicDataSource.activeDataSource(lookupKey)));
+        }
+
+        explain.setSplitTable(mapperRule.isSplitTable());
+        if (null != configuration && configuration.hasStatement(explain.getStatementId())) {
+            MappedStatement mappedStatement = configuration.getMappedStatement(explain.getStatementId());
+            BoundSql boundSql = mappedStatement.getBoundSql(parameterObject);
+            explain.setOriginalSql(boundSql.getSql());
+            explain.setSql(explain.isSplitTable() && null != explain.getTbKey()
+                    ? tableRewriter.rewrite(boundSql.getSql(), explain.getTbKey()) : boundSql.getSql());
+        }
+        return explain;
+    }
+
+    /**
+     * 计算路由，计算完成后恢复当前线程原有的路由信息
+     */
+    private void route(RouteExplain explain, IDBRouterStrategy dbRouterStrategy) {
+        String originDBKey = DBContextHolder.getDBKey();
+        String originTBKey = DBContextHolder.getTBKey();
+        try {
+            dbRouterStrategy.doRouter(explain.getRouterKeyValue());
+            explain.setDbKey(DBContextHolder.getDBKey());
+            explain.setTbKey(DBContextHolder.getTBKey());
+        } finally {
+            dbRouterStrategy.clear();
+            if (null != originDBKey) {
+                DBContextHolder.setDBKey(originDBKey);
+            }
+            if (null != originTBKey) {
+                DBContextHolder.setTBKey(originTBKey);
+            }
+        }
+    }
+
+    /**
+     * 方法的路由字段：@DBRouter(key) 优先，其次为分片规则的 routerKey
+     */
+    private String routerKey(Method method, MapperRule mapperRule) {
+        DBRouter dbRouter = method.getAnnotation(DBRouter.class);
+        return null != dbRouter && StringUtils.isNotBlank(dbRouter.key()) ? dbRouter.key() : mapperRule.getTableRule().getConfig().getRouterKey();
+    }
+
+    /**
+     * 按语句ID查找 Mapper 方法，存在重载时优先取带 @DBRouter 的方法；找不到时返回 null(如 XML 中声明的语句)
+     */
+    private Method findMethod(String statementId) {
+        int index = statementId.lastIndexOf(".");
+        Class<?> mapperClass;
+        try {
+            mapperClass = Class.forName(statementId.substring(0, index));
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        String methodName = statementId.substring(index + 1);
+        Method found = null;
+        for (Method method : mapperClass.getMethods()) {
+            if (!method.getName().equals(methodName)) {
+                continue;
+            }
+            if (null != method.getAnnotation(DBRouter.class)) {
+                return method;
+            }
+            found = null == found ? method : found;
+        }
+        return found;
+    }
+
+    private Configuration configuration() {
+        SqlSessionFactory sqlSessionFactory = sqlSessionFactoryProvider.getIfAvailable();
+        return null == sqlSessionFactory ? null : sqlSessionFactory.getConfiguration();
+    }
+
+    private Method findMethod(Class<?> mapperClass, String methodName, int parameterCount) {
+        for (Method method : mapperClass.getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterCount() == parameterCount) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("can not find mapper method " + mapperClass.getName() + "." + methodName);
+    }
+
+}
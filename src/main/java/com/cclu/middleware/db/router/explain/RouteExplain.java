@@ -0,0 +1,64 @@
+package com.cclu.middleware.db.router.explain;
+
+import lombok.Data;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/02 11:05
+ * @description 路由解释结果，描述一次 Mapper 调用将被路由到的库表及改写后的 SQL
+ * @copyright ChangChengLu
+ */
+@Data
+public class RouteExplain {
+
+    /**
+     * Mapper 语句ID，如 com.cclu.dao.IUserDao.insert
+     */
+    private String statementId;
+
+    /**
+     * 路由字段，未使用 @DBRouter 时为 null
+     */
+    private String routerKey;
+
+    /**
+     * 路由字段值
+     */
+    private String routerKeyValue;
+
+    /**
+     * 分库标识，未路由时为 null
+     */
+    private String dbKey;
+
+    /**
+     * 分表标识，未路由时为 null
+     */
+    private String tbKey;
+
+    /**
+     * 目标数据源 key
+     */
+    private String dataSourceKey;
+
+    /**
+     * 目标数据源描述
+     */
+    private String dataSource;
+
+    /**
+     * 是否分表
+     */
+    private boolean splitTable;
+
+    /**
+     * Mapper 原始 SQL
+     */
+    private String originalSql;
+
+    /**
+     * 改写后的 SQL
+     */
+    private String sql;
+
+}
@@ -0,0 +1,275 @@
+package com.cclu.middleware.db.router.flight;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/27 09:40
+ * @description 合并读，按 (语句, 库, 表, 影子标记, 参数) 登记进行中的查询，同一查询并发到达时只有第一个调用访问数据库，
+ * 其余调用等待其结果或异常。进行中查询表按 key 哈希分段，登记和移除都是无锁的 putIfAbsent/remove，
+ * 查询结束后先移除登记再发布结果，之后到达的调用重新查询，不会读到结束前的旧结果。
+ * 事务内及固定连接的作用域内不做合并，避免读到其他事务的快照或跨连接共享会话状态。
+ * 每个调用得到独立的结果：不可变的值(字符串、数值、java.time 等)直接共享，可序列化的结果由查询的调用序列化一次，
+ * 等待的调用各自反序列化得到副本，修改自己的结果不影响其他调用；无法复制的结果不共享，等待的调用自己重新查询。
+ * 参数按 equals/hashCode 比较，作为参数的实体类未实现 equals/hashCode 时相同取值的调用不会合并。
+ * @copyright ChangChengLu
+ */
+public class SingleFlight {
+
+    private final SingleFlightConfig config;
+
+    private final List<ConcurrentMap<FlightKey, CompletableFuture<Outcome>>> stripes;
+
+    /**
+     * 实际执行的查询次数
+     */
+    private final AtomicLong flights = new AtomicLong();
+
+    /**
+     * 被合并的调用次数
+     */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    public SingleFlight(SingleFlightConfig config) {
+        this.config = config;
+        int size = Math.max(1, config.getStripes());
+        this.stripes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            stripes.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * @return 当前路由的查询是否可以合并
+     */
+    public boolean isCoalescable() {
+        return config.isEnabled() && !TransactionSynchronizationManager.isActualTransactionActive() && null == DBRouterScope.pinnedConnections();
+    }
+
+    /**
+     * 按当前路由执行查询，相同的查询正在执行时等待其结果
+     * @param statementId 语句标识，如 Mapper 类名.方法名
+     * @param args 查询参数
+     * @param flight 查询
+     * @return 查询结果，合并的调用各自得到独立的副本
+     * @throws Throwable 查询异常
+     */
+    public Object execute(String statementId, Object[] args, Flight flight) throws Throwable {
+        FlightKey key = new FlightKey(statementId, DBContextHolder.getDBKey(), DBContextHolder.getTBKey(), DBContextHolder.isShadow(), args);
+        ConcurrentMap<FlightKey, CompletableFuture<Outcome>> stripe = stripes.get((key.hashCode() & Integer.MAX_VALUE) % stripes.size());
+        CompletableFuture<Outcome> own = new CompletableFuture<>();
+        CompletableFuture<Outcome> inFlight = stripe.putIfAbsent(key, own);
+        if (null != inFlight) {
+            Outcome outcome = await(inFlight);
+            if (outcome.isShareable()) {
+                coalesced.incrementAndGet();
+                return outcome.copy();
+            }
+            flights.incrementAndGet();
+            return flight.proceed();
+        }
+        flights.incrementAndGet();
+        Object result;
+        try {
+            result = flight.proceed();
+        } catch (Throwable e) {
+            stripe.remove(key, own);
+            own.completeExceptionally(e);
+            throw e;
+        }
+        stripe.remove(key, own);
+        own.complete(Outcome.of(result));
+        return result;
+    }
+
+    private static Outcome await(CompletableFuture<Outcome> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    public long getFlights() {
+        return flights.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * 可合并的查询，如切点的 proceed
+     */
+    @FunctionalInterface
+    public interface Flight {
+
+        /**
+         * @return 查询结果
+         * @throws Throwable 查询异常
+         */
+        Object proceed() throws Throwable;
+
+    }
+
+    /**
+     * 查询结果的共享形式
+     */
+    private static final class Outcome {
+
+        private static final Outcome UNSHAREABLE = new Outcome(null, null, false);
+
+        /**
+         * 不可变的结果
+         */
+        private final Object value;
+
+        /**
+         * 可变结果的序列化形式，每次反序列化得到一个副本
+         */
+        private final byte[] serialized;
+
+        private final boolean shareable;
+
+        private Outcome(Object value, byte[] serialized, boolean shareable) {
+            this.value = value;
+            this.serialized = serialized;
+            this.shareable = shareable;
+        }
+
+        static Outcome of(Object result) {
+            if (isImmutable(result)) {
+                return new Outcome(result, null, true);
+            }
+            if (!(result instanceof Serializable)) {
+                return UNSHAREABLE;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(result);
+            } catch (IOException e) {
+                // 结果中包含不可序列化的对象
+                return UNSHAREABLE;
+            }
+            return new Outcome(null, bytes.toByteArray(), true);
+        }
+
+        private static boolean isImmutable(Object value) {
+            return null == value || value instanceof String || value instanceof Boolean || value instanceof Character || value instanceof Enum
+                    || value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                    || value instanceof Double || value instanceof Float || value instanceof BigDecimal || value instanceof BigInteger
+                    || value instanceof UUID || value.getClass().getName().startsWith("java.time.");
+        }
+
+        boolean isShareable() {
+            return shareable;
+        }
+
+        Object copy() throws IOException, ClassNotFoundException {
+            if (null == serialized) {
+                return value;
+            }
+            try (ObjectInputStream in = new ContextObjectInputStream(new ByteArrayInputStream(serialized))) {
+                return in.readObject();
+            }
+        }
+
+    }
+
+    /**
+     * 使用线程上下文类加载器解析结果类型，应用类不在路由组件的类加载器中时也能反序列化
+     */
+    private static final class ContextObjectInputStream extends ObjectInputStream {
+
+        ContextObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            if (null != classLoader) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException e) {
+                    // 回退到默认解析
+                }
+            }
+            return super.resolveClass(desc);
+        }
+
+    }
+
+    /**
+     * 进行中查询的标识
+     */
+    private static class FlightKey {
+
+        private final String statementId;
+
+        private final String dbKey;
+
+        private final String tbKey;
+
+        private final boolean shadow;
+
+        private final Object[] args;
+
+        private final int hash;
+
+        FlightKey(String statementId, String dbKey, String tbKey, boolean shadow, Object[] args) {
+            this.statementId = statementId;
+            this.dbKey = dbKey;
+            this.tbKey = tbKey;
+            this.shadow = shadow;
+            this.args = args;
+            this.hash = Objects.hash(statementId, dbKey, tbKey, shadow) * 31 + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FlightKey)) {
+                return false;
+            }
+            FlightKey that = (FlightKey) o;
+            return hash == that.hash && shadow == that.shadow && statementId.equals(that.statementId)
+                    && Objects.equals(dbKey, that.dbKey) && Objects.equals(tbKey, that.tbKey) && Arrays.deepEquals(args, that.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.cclu.middleware.db.router.flight;
+
+import lombok.Data;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/27 09:20
+ * @description 合并读配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class SingleFlightConfig {
+
+    /**
+     * 是否开启合并读
+     */
+    private boolean enabled;
+
+    /**
+     * 进行中查询表的分段数
+     */
+    private int stripes = 16;
+
+}
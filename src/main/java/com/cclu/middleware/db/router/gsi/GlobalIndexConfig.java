@@ -0,0 +1,50 @@
+package com.cclu.middleware.db.router.gsi;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/26 10:00
+ * @description 逻辑表全局二级索引配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class GlobalIndexConfig {
+
+    /**
+     * 建立索引的列，每列对应一张索引表 逻辑表_gsi_列名
+     */
+    private List<String> columns = new ArrayList<>();
+
+    /**
+     * 逻辑表中路由字段对应的列，未配置时由路由字段驼峰转下划线得到，如 uId -> u_id
+     */
+    private String routerColumn;
+
+    /**
+     * 是否异步批量写入索引，关闭时插入后立即写入
+     */
+    private boolean async = true;
+
+    /**
+     * 异步写入每批最大行数
+     */
+    private int batchSize = 200;
+
+    /**
+     * 异步写入最长缓冲时间(毫秒)
+     */
+    private long flushMillis = 50;
+
+    /**
+     * 绑定 mode 配置项，sync 为插入后立即写入，其余为异步写入
+     * @param mode 写入方式
+     */
+    public void setMode(String mode) {
+        this.async = !"sync".equalsIgnoreCase(mode);
+    }
+
+}
@@ -0,0 +1,394 @@
+package com.cclu.middleware.db.router.gsi;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import com.cclu.middleware.db.router.dynamic.InsertValues;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.rule.TableRule;
+import com.cclu.middleware.db.router.scatter.Shard;
+import com.cclu.middleware.db.router.util.ColumnValues;
+import com.cclu.middleware.db.router.util.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/26 10:20
+ * @description 全局二级索引。为逻辑表的非路由列维护索引表 逻辑表_gsi_列名，记录 (列值 index_value, 路由字段值 router_value)，
+ * 列值按 {@link ColumnValues#normalize(Object)} 规范化后写入和查找，索引表按规范化的列值使用逻辑表的分片规则分库分表，需预先建好。mybatis 插件在插入后写入索引，同步模式插入后立即写入，
+ * 异步模式按索引分片缓冲后批量写入。按索引列查询时先在索引分片上按列值点查得到路由字段值，再只查询对应的数据分片。
+ * 索引写入使用独立连接，不参与当前事务，修改和删除不维护索引；查询仍以数据分片的结果为准，多余的索引行只增加一次点查，
+ * 异步模式下刚插入的数据在刷写前查不到。影子流量不写入也不使用索引。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class GlobalIndexes implements DisposableBean {
+
+    private static final String INSERT_SQL = "INSERT IGNORE INTO %s (index_value, router_value) VALUES (?, ?)";
+
+    private static final String SELECT_SQL = "SELECT router_value FROM %s WHERE index_value = ?";
+
+    private final DBRouterRuleTable dbRouterRuleTable;
+
+    private final DynamicDataSource dynamicDataSource;
+
+    private final int fetchSize;
+
+    /**
+     * 逻辑表名(小写) -> 索引
+     */
+    private final Map<String, TableIndexes> tables = new HashMap<>();
+
+    /**
+     * 数据源 key + 索引物理表 -> 异步写入缓冲
+     */
+    private final Map<String, IndexBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong indexWrites = new AtomicLong();
+
+    private volatile ScheduledExecutorService scheduler;
+
+    public GlobalIndexes(DBRouterRuleTable dbRouterRuleTable, DynamicDataSource dynamicDataSource, Map<String, GlobalIndexConfig> configs, int fetchSize) {
+        this.dbRouterRuleTable = dbRouterRuleTable;
+        this.dynamicDataSource = dynamicDataSource;
+        this.fetchSize = fetchSize;
+        configs.forEach((logicTable, config) -> tables.put(logicTable.toLowerCase(), new TableIndexes(logicTable.toLowerCase(), config, dbRouterRuleTable.ruleOf(logicTable))));
+    }
+
+    public boolean isEnabled() {
+        return !tables.isEmpty();
+    }
+
+    /**
+     * @param logicTable 逻辑表名
+     * @param column 列名
+     * @return 该列是否配置了全局二级索引
+     */
+    public boolean hasIndex(String logicTable, String column) {
+        TableIndexes tableIndexes = null == logicTable ? null : tables.get(logicTable.toLowerCase());
+        return null != tableIndexes && null != column && tableIndexes.columns.contains(column.toLowerCase());
+    }
+
+    /**
+     * 插入执行后写入索引，当前路由为插入的数据分片
+     * @param mappedStatement 插入语句
+     * @param boundSql 已改写表名的 SQL 及参数
+     */
+    public void onInsert(MappedStatement mappedStatement, BoundSql boundSql) {
+        InsertValues insertValues = InsertValues.parse(mappedStatement, boundSql);
+        if (null == insertValues) {
+            return;
+        }
+        TableIndexes tableIndexes = tables.get(insertValues.logicTable(DBContextHolder.getTBKey()));
+        if (null == tableIndexes) {
+            return;
+        }
+        Map<String, List<String[]>> pending = new LinkedHashMap<>();
+        for (Map<String, Object> row : insertValues.getRows()) {
+            Object routerValue = row.get(tableIndexes.routerColumn);
+            if (null == routerValue) {
+                continue;
+            }
+            for (String column : tableIndexes.columns) {
+                Object value = row.get(column);
+                if (null != value) {
+                    String[] entry = {ColumnValues.normalize(value), String.valueOf(routerValue)};
+                    pending.computeIfAbsent(bufferKey(tableIndexes, column, entry[0]), key -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+        pending.forEach((key, entries) -> {
+            if (tableIndexes.config.isAsync()) {
+                enqueue(tableIndexes, key, entries);
+            } else {
+                IndexBuffer buffer = buffer(tableIndexes, key);
+                try {
+                    write(buffer, entries);
+                } catch (SQLException e) {
+                    log.error("全局二级索引写入失败 数据源：{} 索引表：{} 行数：{}", buffer.lookupKey, buffer.table, entries.size(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按索引列的值查询数据所在分片，依次点查索引分片得到路由字段值，再按逻辑表的路由策略计算数据分片
+     * @param logicTable 逻辑表名
+     * @param column 索引列
+     * @param value 列值
+     * @return 数据所在分片，值不存在时为空
+     * @throws SQLException 查询索引失败
+     */
+    public List<Shard> shards(String logicTable, String column, Object value) throws SQLException {
+        TableIndexes tableIndexes = tables.get(logicTable.toLowerCase());
+        String indexValue = ColumnValues.normalize(value);
+        Shard indexShard = shardOf(tableIndexes.rule, indexValue);
+        String table = tableIndexes.indexTable(column) + "_" + indexShard.getTbKey();
+        Set<Shard> shards = new LinkedHashSet<>();
+        try (Connection connection = dynamicDataSource.activeDataSource(dynamicDataSource.lookupKey(indexShard.getDbKey())).getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(SELECT_SQL, table))) {
+            statement.setString(1, indexValue);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    shards.add(shardOf(tableIndexes.rule, resultSet.getString(1)));
+                }
+            }
+        }
+        lookups.incrementAndGet();
+        return new ArrayList<>(shards);
+    }
+
+    /**
+     * 扫描逻辑表的全部分表补建索引，用于开启索引前已有的数据或异步写入失败后的修复，已存在的索引行忽略
+     * @param logicTable 逻辑表名
+     * @throws SQLException 扫描或写入失败
+     */
+    public void rebuild(String logicTable) throws SQLException {
+        TableIndexes tableIndexes = tables.get(logicTable.toLowerCase());
+        TableRule rule = tableIndexes.rule;
+        String sql = "SELECT " + tableIndexes.routerColumn + ", " + String.join(", ", tableIndexes.columns) + " FROM " + tableIndexes.logicTable + "_";
+        long start = System.currentTimeMillis();
+        for (int dbIdx = 1; dbIdx <= rule.getConfig().getDbCount(); dbIdx++) {
+            String dbKey = String.format("%02d", dbIdx);
+            for (int tbIdx = 0; tbIdx < rule.getConfig().getTbCount(); tbIdx++) {
+                String tbKey = String.format(rule.getConfig().getTbKeyFormat(), tbIdx);
+                try (Connection connection = dynamicDataSource.activeDataSource(dynamicDataSource.lookupKey(dbKey)).getConnection();
+                     Statement statement = connection.createStatement()) {
+                    statement.setFetchSize(fetchSize);
+                    try (ResultSet resultSet = statement.executeQuery(sql + tbKey)) {
+                        while (resultSet.next()) {
+                            String routerValue = resultSet.getString(1);
+                            for (int i = 0; i < tableIndexes.columns.size(); i++) {
+                                Object value = resultSet.getObject(i + 2);
+                                if (null != routerValue && null != value) {
+                                    String column = tableIndexes.columns.get(i);
+                                    String indexValue = ColumnValues.normalize(value);
+                                    enqueue(tableIndexes, bufferKey(tableIndexes, column, indexValue), Collections.singletonList(new String[]{indexValue, routerValue}));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        flushAll();
+        log.info("全局二级索引补建完成 表：{} 列：{} 耗时：{}ms", tableIndexes.logicTable, tableIndexes.columns, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 刷写全部异步缓冲，用于停机或测试
+     */
+    public void flushAll() {
+        buffers.values().forEach(buffer -> flush(buffer, true));
+    }
+
+    /**
+     * @return 使用索引定位分片的查询次数
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    /**
+     * @return 已写入的索引行数(含已存在被忽略的行)
+     */
+    public long getIndexWrites() {
+        return indexWrites.get();
+    }
+
+    private static Shard shardOf(TableRule rule, String routerValue) {
+        DBRouterScope scope = DBRouterScope.open(rule.getStrategy(), routerValue);
+        try {
+            return new Shard(DBContextHolder.getDBKey(), DBContextHolder.getTBKey());
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * 索引行所在分片的缓冲 key：数据源 key.索引物理表
+     * @param indexValue 规范化后的列值，与查找时计算索引分片使用的值一致
+     */
+    private String bufferKey(TableIndexes tableIndexes, String column, String indexValue) {
+        Shard indexShard = shardOf(tableIndexes.rule, indexValue);
+        return dynamicDataSource.lookupKey(indexShard.getDbKey()) + "." + tableIndexes.indexTable(column) + "_" + indexShard.getTbKey();
+    }
+
+    private IndexBuffer buffer(TableIndexes tableIndexes, String key) {
+        return buffers.computeIfAbsent(key, k -> new IndexBuffer(k.substring(0, k.indexOf('.')), k.substring(k.indexOf('.') + 1), tableIndexes.config));
+    }
+
+    private void enqueue(TableIndexes tableIndexes, String key, List<String[]> entries) {
+        IndexBuffer buffer = buffer(tableIndexes, key);
+        buffer.queue.addAll(entries);
+        ScheduledExecutorService executor = scheduler();
+        if (buffer.size.addAndGet(entries.size()) >= buffer.config.getBatchSize()) {
+            executor.execute(() -> flush(buffer, false));
+        }
+    }
+
+    /**
+     * @param buffer 缓冲
+     * @param wait 缓冲正在刷写时是否等待；后台定时刷写不等待，直接跳过
+     */
+    private void flush(IndexBuffer buffer, boolean wait) {
+        if (wait) {
+            buffer.lock.lock();
+        } else if (!buffer.lock.tryLock()) {
+            return;
+        }
+        try {
+            List<String[]> batch = new ArrayList<>(buffer.config.getBatchSize());
+            String[] entry;
+            while (true) {
+                batch.clear();
+                while (batch.size() < buffer.config.getBatchSize() && null != (entry = buffer.queue.poll())) {
+                    batch.add(entry);
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                buffer.size.addAndGet(-batch.size());
+                try {
+                    write(buffer, batch);
+                } catch (SQLException e) {
+                    log.error("全局二级索引刷写失败，可通过 rebuild 补建 数据源：{} 索引表：{} 行数：{}", buffer.lookupKey, buffer.table, batch.size(), e);
+                }
+            }
+        } finally {
+            buffer.lock.unlock();
+        }
+    }
+
+    private void write(IndexBuffer buffer, List<String[]> entries) throws SQLException {
+        try (Connection connection = dynamicDataSource.activeDataSource(buffer.lookupKey).getConnection();
+             PreparedStatement statement = connection.prepareStatement(String.format(INSERT_SQL, buffer.table))) {
+            for (String[] entry : entries) {
+                statement.setString(1, entry[0]);
+                statement.setString(2, entry[1]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+        indexWrites.addAndGet(entries.size());
+    }
+
+    private ScheduledExecutorService scheduler() {
+        if (null == scheduler) {
+            synchronized (this) {
+                if (null == scheduler) {
+                    AtomicInteger sequence = new AtomicInteger();
+                    ScheduledExecutorService executor = Executors.newScheduledThreadPool(1, r -> {
+                        Thread thread = new Thread(r, "db-router-gsi-" + sequence.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    long flushMillis = tables.values().stream().mapToLong(t -> t.config.getFlushMillis()).min().orElse(50);
+                    executor.scheduleWithFixedDelay(() -> buffers.values().forEach(buffer -> flush(buffer, false)), flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+                    scheduler = executor;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    @Override
+    public void destroy() {
+        if (null != scheduler) {
+            scheduler.shutdown();
+        }
+        flushAll();
+    }
+
+    /**
+     * 单个逻辑表的索引
+     */
+    private static class TableIndexes {
+
+        private final String logicTable;
+
+        private final GlobalIndexConfig config;
+
+        private final TableRule rule;
+
+        /**
+         * 索引列(小写)
+         */
+        private final List<String> columns = new ArrayList<>();
+
+        /**
+         * 路由字段对应的列(小写)
+         */
+        private final String routerColumn;
+
+        TableIndexes(String logicTable, GlobalIndexConfig config, TableRule rule) {
+            this.logicTable = logicTable;
+            this.config = config;
+            this.rule = rule;
+            config.getColumns().forEach(column -> columns.add(column.toLowerCase()));
+            String routerColumn = config.getRouterColumn();
+            if (null == routerColumn) {
+                String routerKey = rule.getConfig().getRouterKey();
+                if (null == routerKey) {
+                    throw new IllegalArgumentException("routerColumn of global index for logic table " + logicTable + " is required");
+                }
+                routerColumn = StringUtils.camelCaseToUnderscore(routerKey);
+            }
+            this.routerColumn = routerColumn.toLowerCase();
+        }
+
+        String indexTable(String column) {
+            return logicTable + "_gsi_" + column.toLowerCase();
+        }
+
+    }
+
+    /**
+     * 单张索引物理表的异步写入缓冲
+     */
+    private static class IndexBuffer {
+
+        private final String lookupKey;
+
+        private final String table;
+
+        private final GlobalIndexConfig config;
+
+        private final ConcurrentLinkedQueue<String[]> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger size = new AtomicInteger();
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        IndexBuffer(String lookupKey, String table, GlobalIndexConfig config) {
+            this.lookupKey = lookupKey;
+            this.table = table;
+            this.config = config;
+        }
+
+    }
+
+}
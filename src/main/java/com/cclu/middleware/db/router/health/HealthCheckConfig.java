@@ -0,0 +1,34 @@
+package com.cclu.middleware.db.router.health;
+
+import lombok.Data;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/20 09:15
+ * @description 分库健康检查配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class HealthCheckConfig {
+
+    /**
+     * 探测间隔(毫秒)
+     */
+    private long intervalMillis = 1000;
+
+    /**
+     * 单次探测超时(毫秒)，超时记为失败
+     */
+    private long timeoutMillis = 1000;
+
+    /**
+     * 连续失败次数达到该值时切换到备库
+     */
+    private int failureThreshold = 3;
+
+    /**
+     * 切换后主库连续成功次数达到该值时切回主库，大于失败阈值避免主备来回切换
+     */
+    private int recoveryThreshold = 5;
+
+}
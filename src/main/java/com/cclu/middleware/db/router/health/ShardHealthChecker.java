@@ -0,0 +1,190 @@
+package com.cclu.middleware.db.router.health;
+
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/20 09:30
+ * @description 分库健康检查。后台周期性探测配置了备库的主库，连续失败达到阈值后将该分库切换到备库，
+ * 切换后继续探测主库，连续成功达到恢复阈值后切回。失败、恢复阈值分开计数，避免主库抖动时来回切换。
+ * 探测使用主库 url、账号新建的非池化连接，不从主库连接池借出，连接池繁忙时不会误判为主库故障；
+ * 建连超时可在连接串中配置，如 MySQL 的 connectTimeout。每个分库同时最多一个探测，上一轮探测未结束时本轮记为失败。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class ShardHealthChecker implements DisposableBean {
+
+    private final DynamicDataSource dynamicDataSource;
+
+    private final HealthCheckConfig config;
+
+    private final Map<String, ProbeState> states = new LinkedHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 数据源 key -> 探测使用的非池化数据源
+     */
+    private final Map<String, DataSource> probeDataSources = new LinkedHashMap<>();
+
+    /**
+     * 数据源 key -> 进行中的探测
+     */
+    private final Map<String, Future<Boolean>> inflight = new LinkedHashMap<>();
+
+    /**
+     * 探测线程，建连可能阻塞到网络超时，与调度线程分开；每个分库一个线程
+     */
+    private final ExecutorService probeExecutor;
+
+    public ShardHealthChecker(DynamicDataSource dynamicDataSource, HealthCheckConfig config) {
+        this.dynamicDataSource = dynamicDataSource;
+        this.config = config;
+        for (String lookupKey : dynamicDataSource.getStandbyDataSources().keySet()) {
+            states.put(lookupKey, new ProbeState());
+            probeDataSources.put(lookupKey, probeDataSource(lookupKey, dynamicDataSource.resolveTargetDataSource(lookupKey)));
+        }
+        AtomicInteger sequence = new AtomicInteger();
+        int threads = Math.max(1, states.size());
+        this.probeExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads), r -> {
+            Thread thread = new Thread(r, "db-router-health-probe-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-router-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!states.isEmpty()) {
+            this.scheduler.scheduleWithFixedDelay(this::check, config.getIntervalMillis(), config.getIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 执行一轮探测，并按结果切换主备
+     */
+    public synchronized void check() {
+        Map<String, Future<Boolean>> probes = new LinkedHashMap<>();
+        for (String lookupKey : states.keySet()) {
+            Future<Boolean> previous = inflight.get(lookupKey);
+            if (null != previous && !previous.isDone()) {
+                // 上一轮探测仍阻塞在建连或校验上，不再叠加探测
+                probes.put(lookupKey, null);
+                continue;
+            }
+            DataSource probeDataSource = probeDataSources.get(lookupKey);
+            try {
+                Future<Boolean> probe = probeExecutor.submit(() -> probe(probeDataSource));
+                inflight.put(lookupKey, probe);
+                probes.put(lookupKey, probe);
+            } catch (RejectedExecutionException e) {
+                // 已取消但线程仍阻塞的探测占满了探测线程
+                probes.put(lookupKey, null);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getTimeoutMillis());
+        for (Map.Entry<String, Future<Boolean>> entry : probes.entrySet()) {
+            boolean healthy;
+            try {
+                healthy = null != entry.getValue() && entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                healthy = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                healthy = false;
+            }
+            onProbe(entry.getKey(), healthy);
+        }
+    }
+
+    /**
+     * 主库为 HikariDataSource 时按其驱动、url、账号及驱动属性构建非池化数据源，否则只能从主库数据源获取连接
+     */
+    private DataSource probeDataSource(String lookupKey, DataSource primary) {
+        if (!(primary instanceof HikariDataSource) || null == ((HikariDataSource) primary).getJdbcUrl()) {
+            log.warn("分库 {} 主库不是按 jdbcUrl 配置的 HikariDataSource，健康检查从主库数据源获取连接", lookupKey);
+            return primary;
+        }
+        HikariDataSource hikariDataSource = (HikariDataSource) primary;
+        DriverManagerDataSource probeDataSource = new DriverManagerDataSource(hikariDataSource.getJdbcUrl(),
+                hikariDataSource.getUsername(), hikariDataSource.getPassword());
+        if (null != hikariDataSource.getDriverClassName()) {
+            probeDataSource.setDriverClassName(hikariDataSource.getDriverClassName());
+        }
+        probeDataSource.setConnectionProperties(hikariDataSource.getDataSourceProperties());
+        return probeDataSource;
+    }
+
+    private boolean probe(DataSource dataSource) throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.isValid((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(config.getTimeoutMillis())));
+        }
+    }
+
+    private void onProbe(String lookupKey, boolean healthy) {
+        ProbeState state = states.get(lookupKey);
+        if (healthy) {
+            state.failures = 0;
+            state.successes++;
+            if (state.successes >= config.getRecoveryThreshold() && dynamicDataSource.failback(lookupKey)) {
+                log.info("分库 {} 主库恢复，切回主库", lookupKey);
+            }
+        } else {
+            state.successes = 0;
+            state.failures++;
+            if (state.failures >= config.getFailureThreshold() && dynamicDataSource.failover(lookupKey)) {
+                log.warn("分库 {} 主库连续 {} 次探测失败，切换到备库", lookupKey, state.failures);
+            }
+        }
+    }
+
+    /**
+     * @return 数据源 key -> 状态，UP 主库承接流量，FAILOVER 已切换到备库
+     */
+    public Map<String, String> status() {
+        Map<String, String> status = new LinkedHashMap<>();
+        states.keySet().forEach(lookupKey -> status.put(lookupKey, dynamicDataSource.isFailedOver(lookupKey) ? "FAILOVER" : "UP"));
+        return status;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        probeExecutor.shutdownNow();
+    }
+
+    /**
+     * 单个分库的连续探测结果，仅在调度线程中读写
+     */
+    private static class ProbeState {
+
+        private int failures;
+
+        private int successes;
+
+    }
+
+}
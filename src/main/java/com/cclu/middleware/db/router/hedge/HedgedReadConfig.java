@@ -0,0 +1,47 @@
+package com.cclu.middleware.db.router.hedge;
+
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/24 09:40
+ * @description 分库语句超时及对冲读配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class HedgedReadConfig {
+
+    /**
+     * 是否开启对冲读
+     */
+    private boolean enabled;
+
+    /**
+     * 对冲等待时间下限(毫秒)，分库 p95 低于该值时按该值等待
+     */
+    private long minDelayMillis = 5;
+
+    /**
+     * 统计 p95 的最近查询样本数
+     */
+    private int windowSize = 1024;
+
+    /**
+     * 样本数不足时不发起对冲
+     */
+    private int minSamples = 100;
+
+    /**
+     * 对冲读线程数
+     */
+    private int threads = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * 数据源 key -> 语句超时(秒)
+     */
+    private Map<String, Integer> statementTimeouts = new HashMap<>();
+
+}
@@ -0,0 +1,261 @@
+package com.cclu.middleware.db.router.hedge;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/24 10:05
+ * @description 对冲读，主库查询在对冲线程执行，调用线程等待分库 p95 后仍未返回时在备库发起同样的查询，
+ * 先成功的结果返回，另一个查询通过 Statement.cancel() 取消。对冲线程用满时退化为在调用线程直接查询。
+ * 事务内、固定连接的作用域内、影子流量、未配置备库或已故障转移的分库不做对冲。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class HedgedReader implements DisposableBean {
+
+    /**
+     * 当前线程正在执行的查询，由 mybatis 插件在预编译后登记 Statement
+     */
+    private static final ThreadLocal<Attempt> CURRENT = new ThreadLocal<>();
+
+    private final HedgedReadConfig config;
+
+    private final ShardLatencyTracker shardLatencyTracker;
+
+    private final DynamicDataSource dynamicDataSource;
+
+    /**
+     * 发起对冲的次数
+     */
+    private final AtomicLong hedges = new AtomicLong();
+
+    /**
+     * 备库先返回的次数
+     */
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private volatile ExecutorService executor;
+
+    public HedgedReader(HedgedReadConfig config, ShardLatencyTracker shardLatencyTracker, DynamicDataSource dynamicDataSource) {
+        this.config = config;
+        this.shardLatencyTracker = shardLatencyTracker;
+        this.dynamicDataSource = dynamicDataSource;
+    }
+
+    /**
+     * @return 当前路由的查询是否可以对冲
+     */
+    public boolean isHedgeable() {
+        if (!config.isEnabled() || DBContextHolder.isShadow() || DBContextHolder.isReplica()) {
+            return false;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive() || null != DBRouterScope.pinnedConnections()) {
+            return false;
+        }
+        String lookupKey = dynamicDataSource.lookupKey(DBContextHolder.getDBKey());
+        return dynamicDataSource.getStandbyDataSources().containsKey(lookupKey) && !dynamicDataSource.isFailedOver(lookupKey);
+    }
+
+    /**
+     * 按当前路由执行对冲读
+     * @param read 查询
+     * @return 先成功的查询结果
+     * @throws Throwable 主库与备库都失败时抛出主库的异常
+     */
+    public Object read(HedgedRead read) throws Throwable {
+        long delayMillis = shardLatencyTracker.hedgeDelayMillis(DBContextHolder.getDBKey());
+        if (delayMillis < 0) {
+            return read.proceed();
+        }
+        String dbKey = DBContextHolder.getDBKey();
+        String tbKey = DBContextHolder.getTBKey();
+        Attempt primary = new Attempt();
+        try {
+            executor().execute(() -> run(primary, dbKey, tbKey, false, read));
+        } catch (RejectedExecutionException e) {
+            // 对冲线程已满，退化为普通查询
+            return read.proceed();
+        }
+        try {
+            return primary.result.get(delayMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException ignore) {
+            // 主库超过 p95 未返回，发起对冲
+        }
+
+        Attempt hedge = new Attempt();
+        try {
+            executor().execute(() -> run(hedge, dbKey, tbKey, true, read));
+            hedges.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            return await(primary.result);
+        }
+        CompletableFuture<Attempt> first = new CompletableFuture<>();
+        primary.result.thenRun(() -> first.complete(primary));
+        hedge.result.thenRun(() -> first.complete(hedge));
+        // 两个查询都失败时以主库异常结束
+        CompletableFuture.allOf(primary.result, hedge.result).whenComplete((v, e) -> primary.result.whenComplete((r, t) -> {
+            if (null != t) {
+                first.completeExceptionally(t);
+            }
+        }));
+        Attempt winner;
+        try {
+            winner = await(first);
+        } catch (InterruptedException e) {
+            primary.cancel();
+            hedge.cancel();
+            throw e;
+        }
+        if (winner == hedge) {
+            hedgeWins.incrementAndGet();
+            primary.cancel();
+        } else {
+            hedge.cancel();
+        }
+        return winner.result.join();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private void run(Attempt attempt, String dbKey, String tbKey, boolean replica, HedgedRead read) {
+        DBContextHolder.setDBKey(dbKey);
+        DBContextHolder.setTBKey(tbKey);
+        DBContextHolder.setReplica(replica);
+        CURRENT.set(attempt);
+        try {
+            attempt.result.complete(read.proceed());
+        } catch (Throwable e) {
+            log.debug("对冲读查询失败 分库：{} 备库：{}", dbKey, replica, e);
+            attempt.result.completeExceptionally(e);
+        } finally {
+            CURRENT.remove();
+            DBContextHolder.clearDBKey();
+            DBContextHolder.clearTBKey();
+            DBContextHolder.clearReplica();
+        }
+    }
+
+    /**
+     * 登记当前线程查询的 Statement，查询被取消时可中断执行
+     * @param statement 预编译后的 Statement
+     */
+    public static void register(Statement statement) {
+        Attempt attempt = CURRENT.get();
+        if (null != attempt) {
+            attempt.register(statement);
+        }
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    private ExecutorService executor() {
+        if (null == executor) {
+            synchronized (this) {
+                if (null == executor) {
+                    AtomicInteger sequence = new AtomicInteger();
+                    // 不排队，线程用满时直接拒绝，由调用方退化为普通查询
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(config.getThreads(), config.getThreads(), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+                        Thread thread = new Thread(r, "db-router-hedge-" + sequence.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void destroy() {
+        if (null != executor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 可重复执行的查询，如切点的 proceed
+     */
+    @FunctionalInterface
+    public interface HedgedRead {
+
+        /**
+         * @return 查询结果
+         * @throws Throwable 查询异常
+         */
+        Object proceed() throws Throwable;
+
+    }
+
+    /**
+     * 一次查询尝试
+     */
+    private static class Attempt {
+
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private Statement statement;
+
+        private boolean cancelled;
+
+        synchronized void register(Statement statement) {
+            this.statement = statement;
+            if (cancelled) {
+                cancel(statement);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (null != statement) {
+                cancel(statement);
+            }
+        }
+
+        private static void cancel(Statement statement) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                log.debug("取消查询失败", e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.cclu.middleware.db.router.hedge;
+
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/24 09:50
+ * @description 分库查询耗时统计，按数据源保留最近 windowSize 次主库查询耗时，用于计算对冲读的等待时间；
+ * 同时提供分库语句超时配置。p95 每新增 1/8 窗口的样本重算一次，记录路径只写环形数组。
+ * @copyright ChangChengLu
+ */
+public class ShardLatencyTracker {
+
+    private final HedgedReadConfig config;
+
+    private final DynamicDataSource dynamicDataSource;
+
+    /**
+     * 数据源 key -> 耗时窗口
+     */
+    private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    public ShardLatencyTracker(HedgedReadConfig config, DynamicDataSource dynamicDataSource) {
+        this.config = config;
+        this.dynamicDataSource = dynamicDataSource;
+    }
+
+    /**
+     * @return 是否统计查询耗时，开启对冲读时统计
+     */
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 记录一次查询耗时
+     * @param dbKey 分库标识，如 01
+     * @param nanos 耗时(纳秒)
+     */
+    public void record(String dbKey, long nanos) {
+        windows.computeIfAbsent(dynamicDataSource.lookupKey(dbKey), key -> new LatencyWindow(config.getWindowSize())).record(nanos);
+    }
+
+    /**
+     * @param dbKey 分库标识
+     * @return 分库查询耗时 p95(毫秒)，样本不足时返回 -1
+     */
+    public long p95Millis(String dbKey) {
+        LatencyWindow window = windows.get(dynamicDataSource.lookupKey(dbKey));
+        if (null == window || window.count.get() < config.getMinSamples()) {
+            return -1;
+        }
+        return window.p95Nanos() / 1_000_000;
+    }
+
+    /**
+     * @param dbKey 分库标识
+     * @return 对冲读等待时间(毫秒)，不低于 minDelayMillis；样本不足时返回 -1
+     */
+    public long hedgeDelayMillis(String dbKey) {
+        long p95 = p95Millis(dbKey);
+        return p95 < 0 ? -1 : Math.max(p95, config.getMinDelayMillis());
+    }
+
+    /**
+     * @param dbKey 分库标识
+     * @return 分库语句超时(秒)，未配置时返回 0
+     */
+    public int statementTimeout(String dbKey) {
+        Integer timeout = config.getStatementTimeouts().get(dynamicDataSource.lookupKey(dbKey));
+        return null == timeout ? 0 : timeout;
+    }
+
+    private static class LatencyWindow {
+
+        private final AtomicLongArray samples;
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final int recomputeEvery;
+
+        private volatile long p95Nanos;
+
+        private volatile long computedAt = -1;
+
+        LatencyWindow(int size) {
+            this.samples = new AtomicLongArray(size);
+            this.recomputeEvery = Math.max(1, size / 8);
+        }
+
+        void record(long nanos) {
+            long idx = count.getAndIncrement();
+            samples.set((int) (idx % samples.length()), nanos);
+        }
+
+        long p95Nanos() {
+            long current = count.get();
+            if (0 == current) {
+                return 0;
+            }
+            if (computedAt < 0 || current - computedAt >= recomputeEvery) {
+                int n = (int) Math.min(current, samples.length());
+                long[] sorted = new long[n];
+                for (int i = 0; i < n; i++) {
+                    sorted[i] = samples.get(i);
+                }
+                Arrays.sort(sorted);
+                p95Nanos = sorted[Math.max(0, (int) Math.ceil(n * 0.95D) - 1)];
+                computedAt = current;
+            }
+            return p95Nanos;
+        }
+
+    }
+
+}
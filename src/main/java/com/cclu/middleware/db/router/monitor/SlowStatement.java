@@ -0,0 +1,46 @@
+package com.cclu.middleware.db.router.monitor;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/02 10:40
+ * @description 慢 SQL 记录
+ * @copyright ChangChengLu
+ */
+@Data
+@AllArgsConstructor
+public class SlowStatement {
+
+    /**
+     * Mapper 语句ID
+     */
+    private String statementId;
+
+    /**
+     * 分库标识，未路由时为 null
+     */
+    private String dbKey;
+
+    /**
+     * 分表标识，未路由时为 null
+     */
+    private String tbKey;
+
+    /**
+     * 改写后的 SQL
+     */
+    private String sql;
+
+    /**
+     * 执行耗时(毫秒)
+     */
+    private long elapsedMillis;
+
+    /**
+     * 记录时间戳
+     */
+    private long timestamp;
+
+}
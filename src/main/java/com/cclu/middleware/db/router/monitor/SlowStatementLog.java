@@ -0,0 +1,83 @@
+package com.cclu.middleware.db.router.monitor;
+
+import com.cclu.middleware.db.router.DBRouterConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/02 10:45
+ * @description 慢 SQL 日志，按分片记录超过阈值的 SQL，并保留最近若干条用于排查
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class SlowStatementLog {
+
+    /**
+     * 默认保留最近的慢 SQL 条数
+     */
+    private static final int DEFAULT_CAPACITY = 200;
+
+    private final DBRouterConfig dbRouterConfig;
+
+    private final int capacity;
+
+    private final ConcurrentLinkedDeque<SlowStatement> recent = new ConcurrentLinkedDeque<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public SlowStatementLog(DBRouterConfig dbRouterConfig) {
+        this(dbRouterConfig, DEFAULT_CAPACITY);
+    }
+
+    public SlowStatementLog(DBRouterConfig dbRouterConfig, int capacity) {
+        this.dbRouterConfig = dbRouterConfig;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return 是否开启慢 SQL 记录
+     */
+    public boolean isEnabled() {
+        return dbRouterConfig.getSlowSqlMillis() > 0;
+    }
+
+    /**
+     * 判断耗时是否需要记录，超过阈值后再按采样率抽样
+     * @param elapsedMillis 执行耗时(毫秒)
+     * @return 是否需要记录
+     */
+    public boolean shouldRecord(long elapsedMillis) {
+        if (!isEnabled() || elapsedMillis < dbRouterConfig.getSlowSqlMillis()) {
+            return false;
+        }
+        double sampleRate = dbRouterConfig.getSlowSqlSampleRate();
+        return sampleRate >= 1.0D || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * 记录慢 SQL
+     * @param slowStatement 慢 SQL
+     */
+    public void record(SlowStatement slowStatement) {
+        log.warn("慢 SQL 分库：{} 分表：{} 耗时：{}ms 语句：{} SQL：{}", slowStatement.getDbKey(), slowStatement.getTbKey(),
+                slowStatement.getElapsedMillis(), slowStatement.getStatementId(), slowStatement.getSql());
+        recent.addFirst(slowStatement);
+        if (size.incrementAndGet() > capacity && null != recent.pollLast()) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return 最近的慢 SQL，按时间倒序
+     */
+    public List<SlowStatement> recent() {
+        return new ArrayList<>(recent);
+    }
+
+}
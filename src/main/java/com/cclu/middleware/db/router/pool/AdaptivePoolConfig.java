@@ -0,0 +1,66 @@
+package com.cclu.middleware.db.router.pool;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/12 09:20
+ * @description 连接池自适应配置
+ * @copyright ChangChengLu
+ */
+@Data
+public class AdaptivePoolConfig {
+
+    /**
+     * 调整周期(毫秒)
+     */
+    private long intervalMillis = 5000;
+
+    /**
+     * 全局最小连接数
+     */
+    private int minPoolSize = 2;
+
+    /**
+     * 全局最大连接数
+     */
+    private int maxPoolSize = 50;
+
+    /**
+     * 单个应用实例在全部分库上的连接总预算，小于等于 0 表示不限制
+     */
+    private int totalConnections;
+
+    /**
+     * 容量冗余系数，按估算并发乘以该系数设置连接数
+     */
+    private double headroom = 1.2D;
+
+    /**
+     * 分库连接数上下限，key 为数据源 key，如 db01；未配置时使用全局上下限
+     */
+    private Map<String, Bounds> bounds = new HashMap<>();
+
+    public Bounds boundsOf(String dbKey) {
+        Bounds dbBounds = bounds.get(dbKey);
+        return null == dbBounds ? new Bounds(minPoolSize, maxPoolSize) : dbBounds;
+    }
+
+    /**
+     * 连接数上下限
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Bounds {
+
+        private int min;
+
+        private int max;
+
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.cclu.middleware.db.router.pool;
+
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/12 10:02
+ * @description 分库连接池自适应调整。周期性采集各分库连接池的使用量、等待时间和吞吐，
+ * 按利特尔法则估算并发需求，在分库上下限及单实例连接总预算内调整 Hikari 最大连接数：热点分库扩容，冷分库逐步缩容并释放空闲连接。
+ * 分库连接数下限之和超出连接总预算时启动失败。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class AdaptivePoolController implements DisposableBean {
+
+    /**
+     * 平均等待连接超过该值(毫秒)时直接扩容
+     */
+    private static final double WAIT_THRESHOLD_MILLIS = 1D;
+
+    private final AdaptivePoolConfig config;
+
+    private final Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+
+    private final Map<String, ShardPoolStats> stats = new LinkedHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long lastAdjustMillis = System.currentTimeMillis();
+
+    public AdaptivePoolController(DynamicDataSource dynamicDataSource, AdaptivePoolConfig config) {
+        this.config = config;
+        for (Map.Entry<Object, DataSource> entry : dynamicDataSource.getResolvedDataSources().entrySet()) {
+            if (entry.getValue() instanceof HikariDataSource) {
+                register(String.valueOf(entry.getKey()), (HikariDataSource) entry.getValue());
+            } else {
+                log.warn("数据源 {} 不是 HikariDataSource，不参与连接池自适应调整", entry.getKey());
+            }
+        }
+        checkBudget();
+        // 启动时即按预算收敛各分库最大连接数，空闲连接下限降到分库下限，冷分库可以释放空闲连接
+        Map<String, Integer> initial = new LinkedHashMap<>();
+        pools.forEach((dbKey, dataSource) -> initial.put(dbKey, dataSource.getMaximumPoolSize()));
+        applyBudget(initial);
+        initial.forEach((dbKey, size) -> {
+            pools.get(dbKey).setMaximumPoolSize(size);
+            pools.get(dbKey).setMinimumIdle(Math.min(minOf(dbKey), size));
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-router-pool-adaptive");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::adjust, config.getIntervalMillis(), config.getIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void register(String dbKey, HikariDataSource dataSource) {
+        ShardPoolStats shardPoolStats = new ShardPoolStats();
+        try {
+            dataSource.setMetricsTrackerFactory(shardPoolStats);
+        } catch (IllegalStateException e) {
+            log.warn("数据源 {} 已配置指标采集，不参与连接池自适应调整", dbKey, e);
+            return;
+        }
+        dataSource.setMaximumPoolSize(clamp(dataSource.getMaximumPoolSize(), config.boundsOf(dbKey)));
+        pools.put(dbKey, dataSource);
+        stats.put(dbKey, shardPoolStats);
+    }
+
+    /**
+     * 执行一次调整
+     */
+    public void adjust() {
+        try {
+            long now = System.currentTimeMillis();
+            long periodMillis = now - lastAdjustMillis;
+            lastAdjustMillis = now;
+
+            Map<String, Integer> desired = new LinkedHashMap<>();
+            for (Map.Entry<String, HikariDataSource> entry : pools.entrySet()) {
+                desired.put(entry.getKey(), desiredSize(entry.getKey(), entry.getValue(), periodMillis));
+            }
+            applyBudget(desired);
+
+            for (Map.Entry<String, Integer> entry : desired.entrySet()) {
+                HikariConfigMXBean poolConfig = pools.get(entry.getKey()).getHikariConfigMXBean();
+                int current = poolConfig.getMaximumPoolSize();
+                int target = entry.getValue();
+                if (current != target) {
+                    poolConfig.setMaximumPoolSize(target);
+                    poolConfig.setMinimumIdle(Math.min(config.boundsOf(entry.getKey()).getMin(), target));
+                    log.info("连接池自适应调整 数据源：{} 最大连接数：{} -> {}", entry.getKey(), current, target);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("连接池自适应调整失败", e);
+        }
+    }
+
+    private int desiredSize(String dbKey, HikariDataSource dataSource, long periodMillis) {
+        AdaptivePoolConfig.Bounds bounds = config.boundsOf(dbKey);
+        ShardPoolStats.Window window = stats.get(dbKey).drain(periodMillis);
+        int current = dataSource.getHikariConfigMXBean().getMaximumPoolSize();
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (null == pool) {
+            // 连接池尚未启动，不占用连接
+            return bounds.getMin();
+        }
+        int waiting = pool.getThreadsAwaitingConnection();
+        int demand = (int) Math.ceil(Math.max(window.concurrency(), pool.getActiveConnections()) * config.getHeadroom()) + waiting;
+        if (window.timeouts > 0 || window.avgWaitMillis > WAIT_THRESHOLD_MILLIS) {
+            demand = Math.max(demand, current + Math.max(1, waiting));
+        }
+        // 扩容一步到位，缩容每个周期最多收缩四分之一，避免抖动
+        int target = demand >= current ? demand : Math.max(demand, current - Math.max(1, current / 4));
+        return clamp(target, bounds);
+    }
+
+    /**
+     * 分库连接数下限之和超出连接总预算时无法满足，启动时直接拒绝
+     */
+    private void checkBudget() {
+        int budget = config.getTotalConnections();
+        int minTotal = pools.keySet().stream().mapToInt(this::minOf).sum();
+        if (budget > 0 && minTotal > budget) {
+            throw new IllegalArgumentException("adaptivePool.totalConnections " + budget + " is less than the sum of minimum pool sizes "
+                    + minTotal + " of " + pools.keySet());
+        }
+    }
+
+    /**
+     * 总连接数超出预算时，先保证各分库下限，剩余预算按超出下限的需求比例分配，分配后总数不超过预算
+     */
+    private void applyBudget(Map<String, Integer> desired) {
+        int budget = config.getTotalConnections();
+        int total = desired.values().stream().mapToInt(Integer::intValue).sum();
+        if (budget <= 0 || total <= budget) {
+            return;
+        }
+        int minTotal = 0;
+        int extraTotal = 0;
+        for (Map.Entry<String, Integer> entry : desired.entrySet()) {
+            int min = minOf(entry.getKey());
+            minTotal += min;
+            extraTotal += entry.getValue() - min;
+        }
+        int remaining = budget - minTotal;
+        for (Map.Entry<String, Integer> entry : desired.entrySet()) {
+            int min = minOf(entry.getKey());
+            int extra = entry.getValue() - min;
+            entry.setValue(min + (extraTotal == 0 ? 0 : (int) ((long) extra * remaining / extraTotal)));
+        }
+    }
+
+    /**
+     * @return 分库实际生效的连接数下限，至少为 1
+     */
+    private int minOf(String dbKey) {
+        return Math.max(1, config.boundsOf(dbKey).getMin());
+    }
+
+    private static int clamp(int size, AdaptivePoolConfig.Bounds bounds) {
+        return Math.max(Math.max(1, bounds.getMin()), Math.min(bounds.getMax(), size));
+    }
+
+    /**
+     * @return 各分库当前最大连接数
+     */
+    public Map<String, Integer> poolSizes() {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        pools.forEach((dbKey, dataSource) -> sizes.put(dbKey, dataSource.getHikariConfigMXBean().getMaximumPoolSize()));
+        return Collections.unmodifiableMap(sizes);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+}
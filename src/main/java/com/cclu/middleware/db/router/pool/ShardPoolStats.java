@@ -0,0 +1,104 @@
+package com.cclu.middleware.db.router.pool;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import lombok.Getter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/12 09:35
+ * @description 分库连接池统计，通过 Hikari 指标回调累计一个调整周期内的借出次数、等待时间和占用时间
+ * @copyright ChangChengLu
+ */
+public class ShardPoolStats implements MetricsTrackerFactory, IMetricsTracker {
+
+    private final LongAdder acquisitions = new LongAdder();
+
+    private final LongAdder acquireNanos = new LongAdder();
+
+    private final LongAdder usages = new LongAdder();
+
+    private final LongAdder usageMillis = new LongAdder();
+
+    private final LongAdder timeouts = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquisitions.increment();
+        acquireNanos.add(elapsedAcquiredNanos);
+    }
+
+    @Override
+    public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+        usages.increment();
+        usageMillis.add(elapsedBorrowedMillis);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        timeouts.increment();
+    }
+
+    /**
+     * 取出当前周期的统计并清零
+     * @param periodMillis 周期长度(毫秒)
+     * @return 周期统计
+     */
+    public Window drain(long periodMillis) {
+        long acquired = acquisitions.sumThenReset();
+        long waitNanos = acquireNanos.sumThenReset();
+        long used = usages.sumThenReset();
+        long usedMillis = usageMillis.sumThenReset();
+        long timeout = timeouts.sumThenReset();
+        Window window = new Window();
+        window.throughput = periodMillis <= 0 ? 0 : acquired * 1000D / periodMillis;
+        window.avgWaitMillis = acquired == 0 ? 0 : waitNanos / 1_000_000D / acquired;
+        window.avgUsageMillis = used == 0 ? 0 : (double) usedMillis / used;
+        window.timeouts = timeout;
+        return window;
+    }
+
+    /**
+     * 一个调整周期内的统计
+     */
+    @Getter
+    public static class Window {
+
+        /**
+         * 每秒借出次数
+         */
+        double throughput;
+
+        /**
+         * 平均等待连接时间(毫秒)
+         */
+        double avgWaitMillis;
+
+        /**
+         * 平均占用连接时间(毫秒)
+         */
+        double avgUsageMillis;
+
+        /**
+         * 获取连接超时次数
+         */
+        long timeouts;
+
+        /**
+         * 按利特尔法则估算的并发连接需求
+         */
+        public double concurrency() {
+            return throughput * Math.max(avgUsageMillis, 1D) / 1000D;
+        }
+
+    }
+
+}
@@ -0,0 +1,190 @@
+package com.cclu.middleware.db.router.rule;
+
+import com.cclu.middleware.db.router.annotation.DBRouterStrategy;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/16 10:05
+ * @description 分片规则表。启动时按逻辑表预先构建规则，Mapper 到规则的映射在首次使用时解析并缓存，
+ * 路由切面和 mybatis 插件都从这里取规则，不再在每次执行时反射读取注解。
+ * @copyright ChangChengLu
+ */
+public class DBRouterRuleTable {
+
+    /**
+     * 全局默认规则
+     */
+    private final TableRule defaultRule;
+
+    /**
+     * 逻辑表名(小写) -> 规则
+     */
+    private final Map<String, TableRule> tableRules;
+
+    /**
+     * 广播表名(小写)，每个分库及默认库各保存一份完整数据
+     */
+    private final Set<String> broadcastTables;
+
+    /**
+     * 表名(小写) -> 所在绑定表组，同组的表使用相同路由及分表后缀，可在同一条 SQL 中关联
+     */
+    private final Map<String, Set<String>> bindingGroups = new HashMap<>();
+
+    /**
+     * Mapper 类名 -> 规则
+     */
+    private final Map<String, MapperRule> mapperRules = new ConcurrentHashMap<>();
+
+    public DBRouterRuleTable(TableRule defaultRule, Map<String, TableRule> tableRules, Set<String> broadcastTables, List<Set<String>> bindingGroups) {
+        this.defaultRule = defaultRule;
+        this.tableRules = new ConcurrentHashMap<>();
+        tableRules.forEach((logicTable, rule) -> this.tableRules.put(logicTable.toLowerCase(), rule));
+        this.broadcastTables = new HashSet<>();
+        broadcastTables.forEach(table -> this.broadcastTables.add(table.toLowerCase()));
+        for (Set<String> bindingGroup : bindingGroups) {
+            addBindingGroup(bindingGroup);
+        }
+    }
+
+    private void addBindingGroup(Set<String> bindingGroup) {
+        Set<String> group = new HashSet<>();
+        bindingGroup.forEach(table -> group.add(table.toLowerCase()));
+        TableRule first = null;
+        for (String table : group) {
+            if (bindingGroups.containsKey(table) || broadcastTables.contains(table)) {
+                throw new IllegalArgumentException("table " + table + " can not be bound more than once or be both broadcast and bound");
+            }
+            TableRule rule = ruleOf(table);
+            if (null != first && !sameRouting(first, rule)) {
+                throw new IllegalArgumentException("binding tables " + group + " must share the same sharding rule");
+            }
+            first = rule;
+            bindingGroups.put(table, Collections.unmodifiableSet(group));
+        }
+    }
+
+    private boolean sameRouting(TableRule a, TableRule b) {
+        return a == b || (a.getConfig().getDbCount() == b.getConfig().getDbCount()
+                && a.getConfig().getTbCount() == b.getConfig().getTbCount()
+                && Objects.equals(a.getConfig().getRouterKey(), b.getConfig().getRouterKey())
+                && Objects.equals(a.getConfig().getTbKeyFormat(), b.getConfig().getTbKeyFormat())
+                && a.getStrategy().getClass() == b.getStrategy().getClass());
+    }
+
+    public TableRule getDefaultRule() {
+        return defaultRule;
+    }
+
+    /**
+     * @param logicTable 逻辑表名
+     * @return 逻辑表规则，未单独配置时返回全局默认规则
+     */
+    public TableRule ruleOf(String logicTable) {
+        if (null == logicTable) {
+            return defaultRule;
+        }
+        TableRule rule = tableRules.get(logicTable.toLowerCase());
+        return null == rule ? defaultRule : rule;
+    }
+
+    /**
+     * @param logicTable 逻辑表名
+     * @return 是否单独配置了分片规则
+     */
+    public boolean hasRule(String logicTable) {
+        return null != logicTable && tableRules.containsKey(logicTable.toLowerCase());
+    }
+
+    /**
+     * @return 单独配置的逻辑表规则
+     */
+    public Collection<TableRule> tableRules() {
+        return Collections.unmodifiableCollection(tableRules.values());
+    }
+
+    /**
+     * @param table 表名
+     * @return 是否为广播表
+     */
+    public boolean isBroadcast(String table) {
+        return null != table && broadcastTables.contains(table.toLowerCase());
+    }
+
+    /**
+     * @return 广播表名
+     */
+    public Set<String> broadcastTables() {
+        return Collections.unmodifiableSet(broadcastTables);
+    }
+
+    /**
+     * 校验同一条 SQL 中的分表能否使用同一分表后缀：多于一张分表时必须属于同一绑定表组
+     * @param tables SQL 中需要改写的表名
+     * @throws IllegalStateException 混用未绑定的分表
+     */
+    public void checkBinding(Set<String> tables) {
+        if (tables.size() <= 1) {
+            return;
+        }
+        String first = tables.iterator().next();
+        Set<String> group = bindingGroups.get(first.toLowerCase());
+        for (String table : tables) {
+            if (null == group || !group.contains(table.toLowerCase())) {
+                throw new IllegalStateException("sharded tables " + tables + " are not in the same binding group and can not be joined in one statement");
+            }
+        }
+    }
+
+    /**
+     * @param mapperClass Mapper 接口(或标注了 @DBRouterStrategy 的类)
+     * @return Mapper 规则
+     */
+    public MapperRule ruleOfMapper(Class<?> mapperClass) {
+        return mapperRules.computeIfAbsent(mapperClass.getName(), name -> resolve(mapperClass));
+    }
+
+    /**
+     * @param statementId Mapper 语句ID，如 com.cclu.dao.IUserDao.insert
+     * @return Mapper 规则
+     */
+    public MapperRule ruleOfStatement(String statementId) {
+        String className = statementId.substring(0, statementId.lastIndexOf("."));
+        MapperRule mapperRule = mapperRules.get(className);
+        if (null != mapperRule) {
+            return mapperRule;
+        }
+        try {
+            return ruleOfMapper(Class.forName(className));
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("can not find mapper class by statement id: " + statementId, e);
+        }
+    }
+
+    private MapperRule resolve(Class<?> mapperClass) {
+        DBRouterStrategy dbRouterStrategy = mapperClass.getAnnotation(DBRouterStrategy.class);
+        if (null == dbRouterStrategy) {
+            return new MapperRule(false, defaultRule);
+        }
+        TableRule rule = defaultRule;
+        if (StringUtils.isNotBlank(dbRouterStrategy.logicTable())) {
+            rule = tableRules.get(dbRouterStrategy.logicTable().toLowerCase());
+            if (null == rule) {
+                throw new IllegalStateException("no sharding rule configured for logic table " + dbRouterStrategy.logicTable() + " of " + mapperClass.getName());
+            }
+        }
+        return new MapperRule(dbRouterStrategy.splitTable(), rule);
+    }
+
+}
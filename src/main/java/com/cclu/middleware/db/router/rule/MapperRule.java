@@ -0,0 +1,26 @@
+package com.cclu.middleware.db.router.rule;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/16 09:52
+ * @description Mapper 分片规则，由 Mapper 上的 @DBRouterStrategy 预先解析
+ * @copyright ChangChengLu
+ */
+@Getter
+@AllArgsConstructor
+public class MapperRule {
+
+    /**
+     * 是否分表
+     */
+    private final boolean splitTable;
+
+    /**
+     * Mapper 对应的逻辑表分片规则
+     */
+    private final TableRule tableRule;
+
+}
@@ -0,0 +1,33 @@
+package com.cclu.middleware.db.router.rule;
+
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/16 09:40
+ * @description 逻辑表分片规则：分库分表数量、路由字段、分表后缀格式及对应的路由策略
+ * @copyright ChangChengLu
+ */
+@Getter
+@AllArgsConstructor
+public class TableRule {
+
+    /**
+     * 逻辑表名，全局默认规则为 null
+     */
+    private final String logicTable;
+
+    /**
+     * 分片配置
+     */
+    private final DBRouterConfig config;
+
+    /**
+     * 路由策略
+     */
+    private final IDBRouterStrategy strategy;
+
+}
@@ -0,0 +1,174 @@
+package com.cclu.middleware.db.router.scatter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.*;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/08 10:58
+ * @description 分片聚合结果合并，按分组列哈希合并各分片的部分聚合值
+ * @copyright ChangChengLu
+ */
+public class AggregateMerger {
+
+    /**
+     * AVG 结果保留的小数位数，与 MySQL 默认的 div_precision_increment 一致
+     */
+    private static final int AVG_SCALE = 4;
+
+    private final AggregateQuery query;
+
+    private final Map<List<Object>, Object[]> groups = new LinkedHashMap<>();
+
+    public AggregateMerger(AggregateQuery query) {
+        this.query = query;
+    }
+
+    /**
+     * 合并一个分片的部分聚合结果
+     * @param rows 分片结果行，列顺序与下推 SQL 一致
+     */
+    public void merge(List<Object[]> rows) {
+        for (Object[] row : rows) {
+            List<Object> groupKey = new ArrayList<>();
+            for (AggregateQuery.Column column : query.getColumns()) {
+                if (AggregateQuery.AggregateType.GROUP == column.getType()) {
+                    groupKey.add(row[column.getIndex()]);
+                }
+            }
+            Object[] accumulator = groups.get(groupKey);
+            if (null == accumulator) {
+                groups.put(groupKey, row.clone());
+                continue;
+            }
+            for (AggregateQuery.Column column : query.getColumns()) {
+                int idx = column.getIndex();
+                switch (column.getType()) {
+                    case COUNT:
+                    case SUM:
+                        accumulator[idx] = add(accumulator[idx], row[idx]);
+                        break;
+                    case AVG:
+                        accumulator[idx] = add(accumulator[idx], row[idx]);
+                        accumulator[idx + 1] = add(accumulator[idx + 1], row[idx + 1]);
+                        break;
+                    case MIN:
+                        if (null == accumulator[idx] || (null != row[idx] && compare(row[idx], accumulator[idx]) < 0)) {
+                            accumulator[idx] = row[idx];
+                        }
+                        break;
+                    case MAX:
+                        if (null == accumulator[idx] || (null != row[idx] && compare(row[idx], accumulator[idx]) > 0)) {
+                            accumulator[idx] = row[idx];
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 合并后的结果，已按 ORDER BY/LIMIT 处理
+     */
+    public List<Map<String, Object>> result() {
+        List<Object[]> outputs = new ArrayList<>(groups.size());
+        List<AggregateQuery.Column> columns = query.getColumns();
+        for (Object[] accumulator : groups.values()) {
+            Object[] output = new Object[columns.size()];
+            for (int i = 0; i < columns.size(); i++) {
+                AggregateQuery.Column column = columns.get(i);
+                if (AggregateQuery.AggregateType.AVG == column.getType()) {
+                    output[i] = avg(accumulator[column.getIndex()], accumulator[column.getIndex() + 1]);
+                } else {
+                    output[i] = accumulator[column.getIndex()];
+                }
+            }
+            outputs.add(output);
+        }
+        if (!query.getOrders().isEmpty()) {
+            outputs.sort((a, b) -> {
+                for (AggregateQuery.Order order : query.getOrders()) {
+                    int result = compareNullable(a[order.getColumn()], b[order.getColumn()]);
+                    if (0 != result) {
+                        return order.isDesc() ? -result : result;
+                    }
+                }
+                return 0;
+            });
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        long skip = query.getOffset();
+        for (Object[] output : outputs) {
+            if (skip-- > 0) {
+                continue;
+            }
+            if (query.getLimit() >= 0 && result.size() >= query.getLimit()) {
+                break;
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                map.put(columns.get(i).getLabel(), output[i]);
+            }
+            result.add(map);
+        }
+        return result;
+    }
+
+    private static Object add(Object a, Object b) {
+        if (null == a) {
+            return b;
+        }
+        if (null == b) {
+            return a;
+        }
+        if (isIntegral(a) && isIntegral(b)) {
+            return ((Number) a).longValue() + ((Number) b).longValue();
+        }
+        return toBigDecimal(a).add(toBigDecimal(b));
+    }
+
+    private static Object avg(Object sum, Object count) {
+        if (null == sum || null == count || 0 == toBigDecimal(count).signum()) {
+            return null;
+        }
+        return toBigDecimal(sum).divide(toBigDecimal(count), AVG_SCALE, RoundingMode.HALF_UP);
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        if (value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        }
+        if (isIntegral(value)) {
+            return BigDecimal.valueOf(((Number) value).longValue());
+        }
+        return new BigDecimal(value.toString());
+    }
+
+    private static int compareNullable(Object a, Object b) {
+        if (null == a) {
+            return null == b ? 0 : -1;
+        }
+        return null == b ? 1 : compare(a, b);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compare(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number) {
+            return toBigDecimal(a).compareTo(toBigDecimal(b));
+        }
+        return ((Comparable) a).compareTo(b);
+    }
+
+}
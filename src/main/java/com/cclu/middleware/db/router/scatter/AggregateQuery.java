@@ -0,0 +1,252 @@
+package com.cclu.middleware.db.router.scatter;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/08 10:15
+ * @description 跨分片聚合 SQL 解析结果，负责生成下推到分片的 SQL(AVG 改写为 SUM/COUNT，去掉 ORDER BY/LIMIT)
+ * @copyright ChangChengLu
+ */
+@Getter
+public class AggregateQuery {
+
+    private static final Pattern SELECT_PATTERN = Pattern.compile("^\\s*select\\s+(.+?)\\s+from\\s+(.+?)\\s*;?\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern AGGREGATE_PATTERN = Pattern.compile("^(count|sum|min|max|avg)\\s*\\(\\s*(distinct\\s+)?(.+?)\\s*\\)(?:\\s+as)?(?:\\s+(\\w+))?$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("^(.+?)(?:\\s+as)?(?:\\s+(\\w+))?$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern LIMIT_PATTERN = Pattern.compile("\\s+limit\\s+(\\d+)(?:\\s*(,|offset)\\s*(\\d+))?$", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern ORDER_PATTERN = Pattern.compile("\\s+order\\s+by\\s+(.+)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern GROUP_PATTERN = Pattern.compile("\\s+group\\s+by\\s+(.+)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final Pattern HAVING_PATTERN = Pattern.compile("\\s+having\\s+", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 输出列
+     */
+    private final List<Column> columns = new ArrayList<>();
+
+    /**
+     * 排序项
+     */
+    private final List<Order> orders = new ArrayList<>();
+
+    /**
+     * 下推到分片执行的 SQL
+     */
+    private String pushdownSql;
+
+    /**
+     * 下推 SQL 的列数
+     */
+    private int pushdownWidth;
+
+    /**
+     * 合并后跳过的行数
+     */
+    private long offset;
+
+    /**
+     * 合并后返回的最大行数，-1 表示不限制
+     */
+    private long limit = -1;
+
+    private AggregateQuery() {
+    }
+
+    /**
+     * 解析聚合 SQL
+     * @param sql 逻辑表聚合 SQL
+     * @return 解析结果
+     */
+    public static AggregateQuery parse(String sql) {
+        Matcher selectMatcher = SELECT_PATTERN.matcher(sql);
+        if (!selectMatcher.matches()) {
+            throw new IllegalArgumentException("not a select statement: " + sql);
+        }
+        String rest = selectMatcher.group(2);
+        if (HAVING_PATTERN.matcher(rest).find()) {
+            throw new IllegalArgumentException("having is not supported in scatter aggregate: " + sql);
+        }
+
+        AggregateQuery query = new AggregateQuery();
+        Matcher limitMatcher = LIMIT_PATTERN.matcher(rest);
+        if (limitMatcher.find()) {
+            long first = Long.parseLong(limitMatcher.group(1));
+            if (null == limitMatcher.group(2)) {
+                query.limit = first;
+            } else if (",".equals(limitMatcher.group(2))) {
+                query.offset = first;
+                query.limit = Long.parseLong(limitMatcher.group(3));
+            } else {
+                query.limit = first;
+                query.offset = Long.parseLong(limitMatcher.group(3));
+            }
+            rest = rest.substring(0, limitMatcher.start());
+        }
+        String orderBy = null;
+        Matcher orderMatcher = ORDER_PATTERN.matcher(rest);
+        if (orderMatcher.find()) {
+            orderBy = orderMatcher.group(1);
+            rest = rest.substring(0, orderMatcher.start());
+        }
+
+        StringBuilder pushdown = new StringBuilder("SELECT ");
+        int index = 0;
+        for (String item : splitTopLevel(selectMatcher.group(1))) {
+            Matcher aggregateMatcher = AGGREGATE_PATTERN.matcher(item);
+            Column column;
+            if (aggregateMatcher.matches()) {
+                if (null != aggregateMatcher.group(2)) {
+                    throw new IllegalArgumentException("distinct aggregate can not be merged across shards: " + item);
+                }
+                AggregateType type = AggregateType.valueOf(aggregateMatcher.group(1).toUpperCase());
+                String label = null == aggregateMatcher.group(4) ? item : aggregateMatcher.group(4);
+                column = new Column(label, type, index);
+                if (AggregateType.AVG == type) {
+                    String argument = aggregateMatcher.group(3);
+                    append(pushdown, index, "SUM(" + argument + "), COUNT(" + argument + ")");
+                    index += 2;
+                } else {
+                    append(pushdown, index, item);
+                    index++;
+                }
+            } else {
+                Matcher columnMatcher = COLUMN_PATTERN.matcher(item);
+                columnMatcher.matches();
+                String label = null == columnMatcher.group(2) ? columnMatcher.group(1) : columnMatcher.group(2);
+                column = new Column(label, AggregateType.GROUP, index);
+                append(pushdown, index, item);
+                index++;
+            }
+            query.columns.add(column);
+        }
+        Matcher groupMatcher = GROUP_PATTERN.matcher(rest);
+        if (groupMatcher.find()) {
+            long groupColumns = query.columns.stream().filter(column -> AggregateType.GROUP == column.getType()).count();
+            if (groupColumns < splitTopLevel(groupMatcher.group(1)).size()) {
+                throw new IllegalArgumentException("all group by columns must be selected in scatter aggregate: " + sql);
+            }
+        }
+        pushdown.append(" FROM ").append(rest);
+        query.pushdownSql = pushdown.toString();
+        query.pushdownWidth = index;
+
+        if (null != orderBy) {
+            for (String item : splitTopLevel(orderBy)) {
+                String[] parts = item.trim().split("\\s+");
+                boolean desc = parts.length > 1 && "desc".equalsIgnoreCase(parts[parts.length - 1]);
+                String label = parts.length > 1 && ("desc".equalsIgnoreCase(parts[parts.length - 1]) || "asc".equalsIgnoreCase(parts[parts.length - 1]))
+                        ? item.trim().substring(0, item.trim().length() - parts[parts.length - 1].length()).trim() : item.trim();
+                query.orders.add(new Order(query.columnIndex(label), desc));
+            }
+        }
+        return query;
+    }
+
+    private int columnIndex(String label) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getLabel().equalsIgnoreCase(label)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("order by item must be a selected column: " + label);
+    }
+
+    private static void append(StringBuilder pushdown, int index, String item) {
+        if (index > 0) {
+            pushdown.append(", ");
+        }
+        pushdown.append(item);
+    }
+
+    /**
+     * 按顶层逗号切分，忽略括号及引号内的逗号
+     */
+    static List<String> splitTopLevel(String text) {
+        List<String> items = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (0 != quote) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == ',' && depth == 0) {
+                items.add(text.substring(start, i).trim());
+                start = i + 1;
+            }
+        }
+        items.add(text.substring(start).trim());
+        return items;
+    }
+
+    public enum AggregateType {
+        /**
+         * 分组列
+         */
+        GROUP,
+        COUNT,
+        SUM,
+        MIN,
+        MAX,
+        AVG
+    }
+
+    /**
+     * 输出列
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Column {
+
+        /**
+         * 输出列名，有别名时为别名，否则为原始表达式
+         */
+        private String label;
+
+        private AggregateType type;
+
+        /**
+         * 在下推 SQL 中的列下标，AVG 占用 index(SUM)、index + 1(COUNT) 两列
+         */
+        private int index;
+
+    }
+
+    /**
+     * 排序项
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Order {
+
+        /**
+         * 输出列下标
+         */
+        private int column;
+
+        private boolean desc;
+
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.cclu.middleware.db.router.scatter;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/10 10:12
+ * @description 跨分片游标，记录每个分片已读取到的 (排序值, 唯一列值) 及已读完的分片，编码为 URL 安全的 Base64 字符串。
+ * 时间类型按原类型及完整精度编码：Date/Timestamp 记录毫秒及纳秒，LocalDateTime 等 java.time 类型记录 ISO 字符串。
+ * @copyright ChangChengLu
+ */
+public class SeekCursor {
+
+    private static final String POSITIONS = "p";
+
+    private static final String EXHAUSTED = "e";
+
+    private static final String TIMESTAMP = "ts";
+
+    private static final String NANOS = "ns";
+
+    private static final String LOCAL_DATE_TIME = "ldt";
+
+    private static final String LOCAL_DATE = "ld";
+
+    private static final String OFFSET_DATE_TIME = "odt";
+
+    /**
+     * 分片 -> 该分片最后读取的 (排序值, 唯一列值)
+     */
+    private final Map<String, Object[]> positions = new LinkedHashMap<>();
+
+    /**
+     * 已读完的分片
+     */
+    private final Set<String> exhausted = new TreeSet<>();
+
+    public static SeekCursor decode(String token) {
+        SeekCursor cursor = new SeekCursor();
+        if (null == token || token.isEmpty()) {
+            return cursor;
+        }
+        JSONObject json = JSON.parseObject(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+        JSONObject positions = json.getJSONObject(POSITIONS);
+        if (null != positions) {
+            for (String shard : positions.keySet()) {
+                // 兼容只记录排序值的旧游标
+                Object value = positions.get(shard);
+                List<?> items = value instanceof JSONArray ? (JSONArray) value : Collections.singletonList(value);
+                Object[] values = new Object[items.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = decodeValue(items.get(i));
+                }
+                cursor.positions.put(shard, values);
+            }
+        }
+        if (null != json.getJSONArray(EXHAUSTED)) {
+            cursor.exhausted.addAll(json.getJSONArray(EXHAUSTED).toJavaList(String.class));
+        }
+        return cursor;
+    }
+
+    public String encode() {
+        Map<String, Object> positionJson = new LinkedHashMap<>();
+        positions.forEach((shard, values) -> {
+            JSONArray array = new JSONArray(values.length);
+            for (Object value : values) {
+                array.add(encodeValue(value));
+            }
+            positionJson.put(shard, array);
+        });
+        JSONObject json = new JSONObject(true);
+        json.put(POSITIONS, positionJson);
+        json.put(EXHAUSTED, exhausted);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.toJSONString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Object[] position(Shard shard) {
+        return positions.get(shard.toString());
+    }
+
+    public void position(Shard shard, Object[] values) {
+        positions.put(shard.toString(), values);
+    }
+
+    public boolean isExhausted(Shard shard) {
+        return exhausted.contains(shard.toString());
+    }
+
+    public void exhaust(Shard shard) {
+        exhausted.add(shard.toString());
+    }
+
+    private static Object encodeValue(Object value) {
+        JSONObject json = new JSONObject(true);
+        if (value instanceof Date) {
+            json.put(TIMESTAMP, ((Date) value).getTime());
+            if (value instanceof Timestamp) {
+                json.put(NANOS, ((Timestamp) value).getNanos());
+            }
+        } else if (value instanceof LocalDateTime) {
+            json.put(LOCAL_DATE_TIME, value.toString());
+        } else if (value instanceof LocalDate) {
+            json.put(LOCAL_DATE, value.toString());
+        } else if (value instanceof OffsetDateTime) {
+            json.put(OFFSET_DATE_TIME, value.toString());
+        } else {
+            return value;
+        }
+        return json;
+    }
+
+    private static Object decodeValue(Object value) {
+        if (!(value instanceof JSONObject)) {
+            return value;
+        }
+        JSONObject json = (JSONObject) value;
+        if (json.containsKey(TIMESTAMP)) {
+            Timestamp timestamp = new Timestamp(json.getLongValue(TIMESTAMP));
+            if (json.containsKey(NANOS)) {
+                timestamp.setNanos(json.getIntValue(NANOS));
+            }
+            return timestamp;
+        } else if (json.containsKey(LOCAL_DATE_TIME)) {
+            return LocalDateTime.parse(json.getString(LOCAL_DATE_TIME));
+        } else if (json.containsKey(LOCAL_DATE)) {
+            return LocalDate.parse(json.getString(LOCAL_DATE));
+        } else if (json.containsKey(OFFSET_DATE_TIME)) {
+            return OffsetDateTime.parse(json.getString(OFFSET_DATE_TIME));
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.cclu.middleware.db.router.scatter;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/08 09:30
+ * @description 分片，即一个 (库, 表) 组合
+ * @copyright ChangChengLu
+ */
+@Data
+@AllArgsConstructor
+public class Shard {
+
+    /**
+     * 分库标识，如 01
+     */
+    private String dbKey;
+
+    /**
+     * 分表标识，如 003
+     */
+    private String tbKey;
+
+    @Override
+    public String toString() {
+        return "db" + dbKey + "_" + tbKey;
+    }
+
+}
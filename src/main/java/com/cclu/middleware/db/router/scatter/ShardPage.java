@@ -0,0 +1,29 @@
+package com.cclu.middleware.db.router.scatter;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/10 10:05
+ * @description 跨分片分页结果
+ * @copyright ChangChengLu
+ */
+@Data
+@AllArgsConstructor
+public class ShardPage {
+
+    /**
+     * 当前页数据
+     */
+    private List<Map<String, Object>> rows;
+
+    /**
+     * 下一页游标，没有更多数据时为 null；偏移分页时始终为 null
+     */
+    private String nextCursor;
+
+}
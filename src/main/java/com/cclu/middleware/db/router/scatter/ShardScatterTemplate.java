@@ -0,0 +1,678 @@
+package com.cclu.middleware.db.router.scatter;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.bloom.ShardBloomFilters;
+import com.cclu.middleware.db.router.dynamic.TableRewriter;
+import com.cclu.middleware.db.router.gsi.GlobalIndexes;
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import javax.sql.DataSource;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/08 09:42
+ * @description 跨分片查询模板，将逻辑表 SQL 并行下发到全部 (库, 表) 并合并结果。
+ * 跨分片查询使用独立连接执行，不参与当前线程的事务。
+ * 偏移分页会同时占用每个分片一个连接并流式读取，MySQL 未开启 useCursorFetch=true 时按 Integer.MIN_VALUE 逐行流式读取。
+ * 按非路由列等值查询时，配置了全局二级索引的列先点查索引再只查询数据所在分片，否则可先用分片布隆过滤器排除一定不包含该值的分片。
+ * 调用线程带影子标记时，各分片同样带影子标记执行，路由到影子库或影子表，且不使用全局二级索引及布隆过滤器排除分片。
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class ShardScatterTemplate implements DisposableBean {
+
+    /**
+     * 排序列、唯一列直接拼入 SQL，只允许 [表别名.]列名
+     */
+    private static final Pattern COLUMN_PATTERN = Pattern.compile("([A-Za-z_][A-Za-z0-9_]*\\.)?[A-Za-z_][A-Za-z0-9_]*");
+
+    private final DBRouterRuleTable dbRouterRuleTable;
+
+    private final DataSource dataSource;
+
+    private final ExecutorService executorService;
+
+    /**
+     * 流式读取时每次从分片拉取的行数
+     */
+    private final int fetchSize;
+
+    private final TableRewriter tableRewriter;
+
+    private final ShardBloomFilters shardBloomFilters;
+
+    private final GlobalIndexes globalIndexes;
+
+    public ShardScatterTemplate(DBRouterRuleTable dbRouterRuleTable, ShardBloomFilters shardBloomFilters, GlobalIndexes globalIndexes,
+                                DataSource dataSource, int threads, int fetchSize) {
+        this.dbRouterRuleTable = dbRouterRuleTable;
+        this.shardBloomFilters = shardBloomFilters;
+        this.globalIndexes = globalIndexes;
+        this.tableRewriter = new TableRewriter(dbRouterRuleTable.broadcastTables());
+        this.dataSource = dataSource;
+        this.fetchSize = fetchSize;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "db-router-scatter-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param logicTable 逻辑表名，按该表的分片规则计算分片
+     * @return 逻辑表的全部分片
+     */
+    public List<Shard> shards(String logicTable) {
+        DBRouterConfig config = dbRouterRuleTable.ruleOf(logicTable).getConfig();
+        List<Shard> shards = new ArrayList<>(config.getDbCount() * config.getTbCount());
+        for (int dbIdx = 1; dbIdx <= config.getDbCount(); dbIdx++) {
+            for (int tbIdx = 0; tbIdx < config.getTbCount(); tbIdx++) {
+                shards.add(new Shard(String.format("%02d", dbIdx), String.format(config.getTbKeyFormat(), tbIdx)));
+            }
+        }
+        return shards;
+    }
+
+    private List<Shard> shardsOf(String sql) {
+        dbRouterRuleTable.checkBinding(tableRewriter.tables(sql));
+        return shards(tableRewriter.firstTable(sql));
+    }
+
+    /**
+     * 在全部分片上执行查询并拼接结果
+     * @param sql 逻辑表 SQL，使用 ? 占位
+     * @param args 参数
+     * @return 全部分片的结果行
+     */
+    public List<Map<String, Object>> queryForList(String sql, Object... args) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (ShardRows shardRows : execute(shardsOf(sql), (shard, connection) -> query(connection, rewrite(sql, shard), args))) {
+            result.addAll(shardRows.toMaps());
+        }
+        return result;
+    }
+
+    /**
+     * 按非路由列等值查询，配置了全局二级索引的列先点查索引得到数据所在分片；
+     * 否则先用布隆过滤器排除一定不包含该值的分片，再在剩余分片上并行执行
+     * @param sql 逻辑表 SQL，条件为 column = ?，只有这一个参数
+     * @param column 条件列，需配置了全局二级索引或布隆过滤器才会减少访问的分片
+     * @param value 条件值
+     * @return 全部候选分片的结果行
+     */
+    public List<Map<String, Object>> lookup(String sql, String column, Object value) {
+        // 索引及布隆过滤器只记录生产数据，影子流量不排除分片
+        List<Shard> shards = DBContextHolder.isShadow() ? shardsOf(sql) : candidates(sql, column, value);
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (shards.isEmpty()) {
+            return result;
+        }
+        for (ShardRows shardRows : execute(shards, (shard, connection) -> query(connection, rewrite(sql, shard), new Object[]{value}))) {
+            result.addAll(shardRows.toMaps());
+        }
+        return result;
+    }
+
+    private List<Shard> candidates(String sql, String column, Object value) {
+        String logicTable = tableRewriter.firstTable(sql);
+        if (null != value && globalIndexes.hasIndex(logicTable, column)) {
+            dbRouterRuleTable.checkBinding(tableRewriter.tables(sql));
+            try {
+                return globalIndexes.shards(logicTable, column, value);
+            } catch (SQLException e) {
+                log.warn("全局二级索引查询失败，回退为跨分片查询 表：{} 列：{}", logicTable, column, e);
+            }
+        }
+        return shardBloomFilters.prune(logicTable, column, value, shardsOf(sql));
+    }
+
+    /**
+     * 判断非路由列的值是否存在，通常只需访问一个分片或不访问分片
+     * @param logicTable 逻辑表名
+     * @param column 条件列
+     * @param value 条件值
+     * @return 是否存在
+     */
+    public boolean exists(String logicTable, String column, Object value) {
+        return !lookup("SELECT 1 FROM " + logicTable + " WHERE " + column + " = ? LIMIT 1", column, value).isEmpty();
+    }
+
+    /**
+     * 跨分片聚合查询，支持 COUNT/SUM/MIN/MAX/AVG 及 GROUP BY。
+     * 聚合下推到每个分片执行，AVG 改写为 SUM/COUNT，再在路由层按分组哈希合并，每个分片每个分组只返回一行。
+     * @param sql 逻辑表聚合 SQL，使用 ? 占位
+     * @param args 参数
+     * @return 合并后的聚合结果
+     */
+    public List<Map<String, Object>> aggregate(String sql, Object... args) {
+        AggregateQuery aggregateQuery = AggregateQuery.parse(sql);
+        AggregateMerger merger = new AggregateMerger(aggregateQuery);
+        for (ShardRows shardRows : execute(shardsOf(sql), (shard, connection) -> query(connection, rewrite(aggregateQuery.getPushdownSql(), shard), args))) {
+            merger.merge(shardRows.getRows());
+        }
+        return merger.result();
+    }
+
+    /**
+     * 跨分片游标(seek)分页，排序列在分片内唯一时使用，如自增 id
+     * @see #seekPage(String, String, String, boolean, int, String, Object...)
+     */
+    public ShardPage seekPage(String sql, String sortColumn, boolean desc, int pageSize, String cursor, Object... args) {
+        return seekPage(sql, sortColumn, sortColumn, desc, pageSize, cursor, args);
+    }
+
+    /**
+     * 跨分片游标(seek)分页，每个分片按自己的游标位置只读取一页数据，归并后取一页，
+     * 游标中记录每个分片已消费到的 (排序值, 唯一列值)，翻页深度不影响单页耗时。
+     * 原 SQL 作为派生表包裹后再追加游标条件，子查询中的 WHERE 不受影响。
+     * @param sql 逻辑表 SQL，不含 ORDER BY/LIMIT，使用 ? 占位
+     * @param sortColumn 排序列，需出现在查询列中且不为 null，可以重复，如创建时间
+     * @param uniqueColumn 分片内唯一的列，排序值相同时按其排序，需出现在查询列中，如自增 id
+     * @param desc 是否倒序
+     * @param pageSize 每页行数
+     * @param cursor 上一页返回的游标，首页传 null
+     * @param args 参数
+     * @return 当前页及下一页游标
+     */
+    public ShardPage seekPage(String sql, String sortColumn, String uniqueColumn, boolean desc, int pageSize, String cursor, Object... args) {
+        checkColumn(sortColumn);
+        checkColumn(uniqueColumn);
+        SeekCursor seekCursor = SeekCursor.decode(cursor);
+        List<Shard> shards = shardsOf(sql).stream().filter(shard -> !seekCursor.isExhausted(shard)).collect(Collectors.toList());
+        boolean tieBreak = !columnName(sortColumn).equalsIgnoreCase(columnName(uniqueColumn));
+        List<ShardRows> results = execute(shards, (shard, connection) -> {
+            Object[] position = seekCursor.position(shard);
+            List<Object> shardArgs = new ArrayList<>(Arrays.asList(null == args ? new Object[0] : args));
+            if (null != position) {
+                shardArgs.add(position[0]);
+                if (tieBreak) {
+                    shardArgs.add(position[0]);
+                    shardArgs.add(position[1]);
+                }
+            }
+            shardArgs.add(pageSize);
+            return query(connection, rewrite(seekSql(sql, sortColumn, tieBreak ? uniqueColumn : null, desc, null != position), shard), shardArgs.toArray());
+        });
+
+        int[] consumed = new int[shards.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>((a, b) -> {
+            int result = AggregateMerger.compare(sortValue(results.get(a), consumed[a], sortColumn), sortValue(results.get(b), consumed[b], sortColumn));
+            if (0 == result && tieBreak) {
+                result = AggregateMerger.compare(sortValue(results.get(a), consumed[a], uniqueColumn), sortValue(results.get(b), consumed[b], uniqueColumn));
+            }
+            return desc ? -result : result;
+        });
+        for (int i = 0; i < shards.size(); i++) {
+            if (!results.get(i).getRows().isEmpty()) {
+                heads.add(i);
+            }
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(pageSize);
+        while (rows.size() < pageSize && !heads.isEmpty()) {
+            int i = heads.poll();
+            ShardRows shardRows = results.get(i);
+            rows.add(shardRows.toMap(consumed[i]));
+            seekCursor.position(shards.get(i), tieBreak
+                    ? new Object[]{sortValue(shardRows, consumed[i], sortColumn), sortValue(shardRows, consumed[i], uniqueColumn)}
+                    : new Object[]{sortValue(shardRows, consumed[i], sortColumn)});
+            if (++consumed[i] < shardRows.getRows().size()) {
+                heads.add(i);
+            }
+        }
+
+        boolean hasMore = false;
+        for (int i = 0; i < shards.size(); i++) {
+            int size = results.get(i).getRows().size();
+            if (size < pageSize && consumed[i] == size) {
+                seekCursor.exhaust(shards.get(i));
+            } else {
+                hasMore = true;
+            }
+        }
+        return new ShardPage(rows, hasMore ? seekCursor.encode() : null);
+    }
+
+    /**
+     * 跨分片偏移分页，排序列在分片内唯一时使用，如自增 id
+     * @see #offsetPage(String, String, String, boolean, long, int, Object...)
+     */
+    public ShardPage offsetPage(String sql, String sortColumn, boolean desc, long offset, int limit, Object... args) {
+        return offsetPage(sql, sortColumn, sortColumn, desc, offset, limit, args);
+    }
+
+    /**
+     * 跨分片偏移分页，各分片按 (排序列, 唯一列) 流式返回，路由层多路归并，跳过 offset 行后只缓存 limit 行。
+     * 排序值及唯一列值都相同的不同分片的行按分片顺序排列，同一查询每次翻页得到相同的全局顺序。
+     * 路由层内存与翻页深度无关，但每个分片仍需读取并丢弃至多 offset 行，耗时随 offset 线性增长，深分页使用
+     * {@link #seekPage(String, String, String, boolean, int, String, Object...)}。
+     * @param sql 逻辑表 SQL，不含 ORDER BY/LIMIT，使用 ? 占位
+     * @param sortColumn 排序列，需出现在查询列中，可以重复
+     * @param uniqueColumn 分片内唯一的列，排序值相同时按其排序，需出现在查询列中，如自增 id
+     * @param desc 是否倒序
+     * @param offset 偏移行数
+     * @param limit 每页行数
+     * @param args 参数
+     * @return 当前页
+     */
+    public ShardPage offsetPage(String sql, String sortColumn, String uniqueColumn, boolean desc, long offset, int limit, Object... args) {
+        checkColumn(sortColumn);
+        checkColumn(uniqueColumn);
+        boolean tieBreak = !columnName(sortColumn).equalsIgnoreCase(columnName(uniqueColumn));
+        List<Object> shardArgs = new ArrayList<>(Arrays.asList(null == args ? new Object[0] : args));
+        shardArgs.add(offset + limit);
+        String direction = desc ? " DESC" : " ASC";
+        String shardSql = sql + " ORDER BY " + sortColumn + direction + (tieBreak ? ", " + uniqueColumn + direction : "") + " LIMIT ?";
+        List<ShardCursor> cursors = openCursors(shardsOf(sql), shardSql, shardArgs.toArray(), sortColumn, uniqueColumn);
+        try {
+            PriorityQueue<ShardCursor> heads = new PriorityQueue<>((a, b) -> {
+                int result = AggregateMerger.compare(a.sortValue(), b.sortValue());
+                if (0 == result && tieBreak) {
+                    result = AggregateMerger.compare(a.uniqueValue(), b.uniqueValue());
+                }
+                if (0 != result) {
+                    return desc ? -result : result;
+                }
+                return Integer.compare(a.order, b.order);
+            });
+            for (ShardCursor cursor : cursors) {
+                if (cursor.next()) {
+                    heads.add(cursor);
+                }
+            }
+            List<Map<String, Object>> rows = new ArrayList<>(limit);
+            long skipped = 0;
+            while (rows.size() < limit && !heads.isEmpty()) {
+                ShardCursor cursor = heads.poll();
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    rows.add(cursor.toMap());
+                }
+                if (cursor.next()) {
+                    heads.add(cursor);
+                }
+            }
+            return new ShardPage(rows, null);
+        } catch (SQLException e) {
+            throw new IllegalStateException("scatter offset page failed", e);
+        } finally {
+            cursors.forEach(ShardCursor::close);
+        }
+    }
+
+    /**
+     * 并行打开各分片的流式结果集。任一分片失败或调用线程被中断时取消其余分片，已打开及之后才打开的结果集都会关闭并归还连接
+     */
+    private List<ShardCursor> openCursors(List<Shard> shards, String sql, Object[] args, String sortColumn, String uniqueColumn) {
+        List<Future<ShardCursor>> futures = new ArrayList<>(shards.size());
+        Queue<ShardCursor> opened = new ConcurrentLinkedQueue<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        boolean shadow = DBContextHolder.isShadow();
+        for (int i = 0; i < shards.size(); i++) {
+            Shard shard = shards.get(i);
+            int order = i;
+            futures.add(executorService.submit(() -> {
+                DBContextHolder.setDBKey(shard.getDbKey());
+                DBContextHolder.setTBKey(shard.getTbKey());
+                DBContextHolder.setShadow(shadow);
+                try {
+                    ShardCursor cursor = ShardCursor.open(dataSource.getConnection(), rewrite(sql, shard), args, sortColumn, uniqueColumn, order, fetchSize);
+                    // 先登记再检查：调用方放弃后登记的结果集由任务自己关闭，放弃前登记的由调用方关闭
+                    opened.add(cursor);
+                    if (abandoned.get() && opened.remove(cursor)) {
+                        cursor.close();
+                    }
+                    return cursor;
+                } finally {
+                    DBContextHolder.clearDBKey();
+                    DBContextHolder.clearTBKey();
+                    DBContextHolder.clearShadow();
+                }
+            }));
+        }
+        List<ShardCursor> cursors = new ArrayList<>(shards.size());
+        RuntimeException failure;
+        try {
+            for (Future<ShardCursor> future : futures) {
+                cursors.add(future.get());
+            }
+            return cursors;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new IllegalStateException("scatter interrupted", e);
+        } catch (ExecutionException e) {
+            failure = new IllegalStateException("scatter on shard " + shards.get(cursors.size()) + " failed", e.getCause());
+        }
+        abandoned.set(true);
+        futures.forEach(future -> future.cancel(true));
+        ShardCursor cursor;
+        while (null != (cursor = opened.poll())) {
+            cursor.close();
+        }
+        throw failure;
+    }
+
+    /**
+     * 校验拼入 SQL 的列名
+     */
+    private static void checkColumn(String column) {
+        if (null == column || !COLUMN_PATTERN.matcher(column).matches()) {
+            throw new IllegalArgumentException("illegal column name: " + column);
+        }
+    }
+
+    /**
+     * 游标分页 SQL：SELECT * FROM (原 SQL) seek_page [WHERE 游标条件] ORDER BY 排序列[, 唯一列] LIMIT ?
+     * 有唯一列时游标条件为 sort > ? OR (sort = ? AND unique > ?)，与行比较 (sort, unique) > (?, ?) 等价
+     */
+    private static String seekSql(String sql, String sortColumn, String uniqueColumn, boolean desc, boolean hasPosition) {
+        String sort = columnName(sortColumn);
+        String operator = desc ? " < ?" : " > ?";
+        String direction = desc ? " DESC" : " ASC";
+        StringBuilder seekSql = new StringBuilder("SELECT * FROM (").append(sql).append(") seek_page");
+        if (hasPosition) {
+            seekSql.append(" WHERE ");
+            if (null == uniqueColumn) {
+                seekSql.append(sort).append(operator);
+            } else {
+                String unique = columnName(uniqueColumn);
+                seekSql.append("(").append(sort).append(operator).append(" OR (").append(sort).append(" = ? AND ")
+                        .append(unique).append(operator).append("))");
+            }
+        }
+        seekSql.append(" ORDER BY ").append(sort).append(direction);
+        if (null != uniqueColumn) {
+            seekSql.append(", ").append(columnName(uniqueColumn)).append(direction);
+        }
+        return seekSql.append(" LIMIT ?").toString();
+    }
+
+    /**
+     * 去掉表别名的列名，派生表外层只能按列名引用
+     */
+    private static String columnName(String column) {
+        return column.substring(column.lastIndexOf('.') + 1);
+    }
+
+    private static Object sortValue(ShardRows shardRows, int row, String sortColumn) {
+        return shardRows.getRows().get(row)[shardRows.indexOf(sortColumn)];
+    }
+
+    /**
+     * 在指定分片上并行执行回调，回调执行期间当前分片已设置到路由上下文
+     * @param shards 分片
+     * @param callback 分片回调
+     * @param <T> 回调结果类型
+     * @return 与 shards 顺序一致的回调结果
+     */
+    public <T> List<T> execute(List<Shard> shards, ShardCallback<T> callback) {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        boolean shadow = DBContextHolder.isShadow();
+        for (Shard shard : shards) {
+            futures.add(executorService.submit(() -> {
+                DBContextHolder.setDBKey(shard.getDbKey());
+                DBContextHolder.setTBKey(shard.getTbKey());
+                DBContextHolder.setShadow(shadow);
+                try (Connection connection = dataSource.getConnection()) {
+                    return callback.doInShard(shard, connection);
+                } finally {
+                    DBContextHolder.clearDBKey();
+                    DBContextHolder.clearTBKey();
+                    DBContextHolder.clearShadow();
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("scatter interrupted", e);
+            } catch (ExecutionException e) {
+                futures.forEach(future -> future.cancel(true));
+                throw new IllegalStateException("scatter on shard " + shards.get(i) + " failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 改写为分片物理表 SQL，带影子标记且配置了影子表后缀时改写为影子表
+     */
+    public String rewrite(String sql, Shard shard) {
+        String rewritten = tableRewriter.rewrite(sql, shard.getTbKey());
+        String shadowTableSuffix = dbRouterRuleTable.getDefaultRule().getConfig().getShadowTableSuffix();
+        if (DBContextHolder.isShadow() && null != shadowTableSuffix && !shadowTableSuffix.isEmpty()) {
+            return tableRewriter.shadow(rewritten, shadowTableSuffix);
+        }
+        return rewritten;
+    }
+
+    static ShardRows query(Connection connection, String sql, Object[] args) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            bind(statement, args);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return ShardRows.read(resultSet);
+            }
+        }
+    }
+
+    static void bind(PreparedStatement statement, Object[] args) throws SQLException {
+        if (null == args) {
+            return;
+        }
+        for (int i = 0; i < args.length; i++) {
+            statement.setObject(i + 1, args[i]);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * 分片回调
+     */
+    @FunctionalInterface
+    public interface ShardCallback<T> {
+
+        T doInShard(Shard shard, Connection connection) throws SQLException;
+
+    }
+
+    /**
+     * 单个分片的查询结果
+     */
+    static class ShardRows {
+
+        private final String[] labels;
+
+        private final List<Object[]> rows;
+
+        ShardRows(String[] labels, List<Object[]> rows) {
+            this.labels = labels;
+            this.rows = rows;
+        }
+
+        static ShardRows read(ResultSet resultSet) throws SQLException {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            String[] labels = new String[metaData.getColumnCount()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = metaData.getColumnLabel(i + 1);
+            }
+            List<Object[]> rows = new ArrayList<>();
+            while (resultSet.next()) {
+                rows.add(readRow(resultSet, labels.length));
+            }
+            return new ShardRows(labels, rows);
+        }
+
+        static Object[] readRow(ResultSet resultSet, int columnCount) throws SQLException {
+            Object[] row = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                row[i] = resultSet.getObject(i + 1);
+            }
+            return row;
+        }
+
+        List<Object[]> getRows() {
+            return rows;
+        }
+
+        int indexOf(String column) {
+            return ShardScatterTemplate.indexOf(labels, column);
+        }
+
+        Map<String, Object> toMap(int row) {
+            return ShardScatterTemplate.toMap(labels, rows.get(row));
+        }
+
+        List<Map<String, Object>> toMaps() {
+            List<Map<String, Object>> maps = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                maps.add(ShardScatterTemplate.toMap(labels, row));
+            }
+            return maps;
+        }
+
+    }
+
+    /**
+     * 单个分片的流式结果集，持有连接直到关闭
+     */
+    static class ShardCursor {
+
+        private final Connection connection;
+
+        private final PreparedStatement statement;
+
+        private final ResultSet resultSet;
+
+        private final String[] labels;
+
+        private final int sortIndex;
+
+        private final int uniqueIndex;
+
+        /**
+         * 分片顺序，排序值及唯一列值都相同时按其排序
+         */
+        private final int order;
+
+        private Object[] current;
+
+        private ShardCursor(Connection connection, PreparedStatement statement, ResultSet resultSet, String[] labels, int sortIndex, int uniqueIndex, int order) {
+            this.connection = connection;
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.labels = labels;
+            this.sortIndex = sortIndex;
+            this.uniqueIndex = uniqueIndex;
+            this.order = order;
+        }
+
+        static ShardCursor open(Connection connection, String sql, Object[] args, String sortColumn, String uniqueColumn, int order, int fetchSize) throws SQLException {
+            PreparedStatement statement = null;
+            try {
+                statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(streamingFetchSize(connection, fetchSize));
+                bind(statement, args);
+                ResultSet resultSet = statement.executeQuery();
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                String[] labels = new String[metaData.getColumnCount()];
+                for (int i = 0; i < labels.length; i++) {
+                    labels[i] = metaData.getColumnLabel(i + 1);
+                }
+                return new ShardCursor(connection, statement, resultSet, labels, ShardScatterTemplate.indexOf(labels, sortColumn),
+                        ShardScatterTemplate.indexOf(labels, uniqueColumn), order);
+            } catch (SQLException | RuntimeException e) {
+                if (null != statement) {
+                    statement.close();
+                }
+                connection.close();
+                throw e;
+            }
+        }
+
+        /**
+         * MySQL Connector/J 未开启 useCursorFetch 时忽略 fetchSize，一次读入全部结果，fetchSize 为 Integer.MIN_VALUE 时逐行流式读取
+         */
+        static int streamingFetchSize(Connection connection, int fetchSize) throws SQLException {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String url = String.valueOf(metaData.getURL()).toLowerCase();
+            if ("mysql".equalsIgnoreCase(metaData.getDatabaseProductName()) && !url.contains("usecursorfetch=true")) {
+                return Integer.MIN_VALUE;
+            }
+            return fetchSize;
+        }
+
+        boolean next() throws SQLException {
+            if (resultSet.next()) {
+                current = ShardRows.readRow(resultSet, labels.length);
+                return true;
+            }
+            current = null;
+            return false;
+        }
+
+        Object sortValue() {
+            return current[sortIndex];
+        }
+
+        Object uniqueValue() {
+            return current[uniqueIndex];
+        }
+
+        Map<String, Object> toMap() {
+            return ShardScatterTemplate.toMap(labels, current);
+        }
+
+        void close() {
+            try {
+                resultSet.close();
+                statement.close();
+            } catch (SQLException e) {
+                log.warn("关闭分片结果集失败", e);
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    log.warn("关闭分片连接失败", e);
+                }
+            }
+        }
+
+    }
+
+    static int indexOf(String[] labels, String column) {
+        String name = column.substring(column.lastIndexOf('.') + 1);
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("sort or unique column must be selected: " + column);
+    }
+
+    static Map<String, Object> toMap(String[] labels, Object[] row) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < labels.length; i++) {
+            map.put(labels[i], row[i]);
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.cclu.middleware.db.router.simulate;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/28 09:20
+ * @description 一种分片配置下路由键在各 (库, 表) 的分布
+ * @copyright ChangChengLu
+ */
+@AllArgsConstructor
+public class ShardDistribution {
+
+    @Getter
+    private final int dbCount;
+
+    @Getter
+    private final int tbCount;
+
+    /**
+     * 下标 (dbIdx - 1) * tbCount + tbIdx 的分片路由键数量
+     */
+    private final long[] counts;
+
+    /**
+     * @param dbIdx 分库编号，从 1 开始
+     * @param tbIdx 分表编号，从 0 开始
+     * @return 分片路由键数量
+     */
+    public long count(int dbIdx, int tbIdx) {
+        return counts[(dbIdx - 1) * tbCount + tbIdx];
+    }
+
+    /**
+     * @param dbIdx 分库编号，从 1 开始
+     * @return 分库路由键数量
+     */
+    public long dbCount(int dbIdx) {
+        long sum = 0;
+        for (int tbIdx = 0; tbIdx < tbCount; tbIdx++) {
+            sum += count(dbIdx, tbIdx);
+        }
+        return sum;
+    }
+
+    public long total() {
+        long sum = 0;
+        for (long count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    public long max() {
+        long max = 0;
+        for (long count : counts) {
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    public long min() {
+        long min = Long.MAX_VALUE;
+        for (long count : counts) {
+            min = Math.min(min, count);
+        }
+        return counts.length == 0 ? 0 : min;
+    }
+
+    public double mean() {
+        return counts.length == 0 ? 0 : (double) total() / counts.length;
+    }
+
+    /**
+     * @return 倾斜度，最大分片与平均值之比，均匀分布时为 1
+     */
+    public double skew() {
+        double mean = mean();
+        return 0 == mean ? 0 : max() / mean;
+    }
+
+    /**
+     * @return 变异系数，各分片数量标准差与平均值之比
+     */
+    public double coefficientOfVariation() {
+        double mean = mean();
+        if (0 == mean) {
+            return 0;
+        }
+        double variance = 0;
+        for (long count : counts) {
+            variance += (count - mean) * (count - mean);
+        }
+        return Math.sqrt(variance / counts.length) / mean;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("dbCount=%d tbCount=%d keys=%d min=%d max=%d skew=%.3f cv=%.3f%n",
+                dbCount, tbCount, total(), min(), max(), skew(), coefficientOfVariation()));
+        report.append(String.format("%-12s %12s %10s%n", "shard", "keys", "share"));
+        long total = Math.max(1, total());
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            for (int tbIdx = 0; tbIdx < tbCount; tbIdx++) {
+                long count = count(dbIdx, tbIdx);
+                report.append(String.format("%-12s %12d %9.2f%%%n", String.format("db%02d_%03d", dbIdx, tbIdx), count, count * 100D / total));
+            }
+        }
+        return report.toString();
+    }
+
+}
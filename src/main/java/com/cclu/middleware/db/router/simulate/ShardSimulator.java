@@ -0,0 +1,267 @@
+package com.cclu.middleware.db.router.simulate;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import com.cclu.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/28 09:50
+ * @description 分片分布模拟器，离线回放采集到的路由键文件(每行一个路由键)，按任意路由策略计算分片，
+ * 统计各 (库, 表) 的路由键数量和倾斜度；指定对比策略时同时统计需要迁移到其他分片的路由键比例，
+ * 用于调整 dbCount/tbCount 或更换路由策略前评估。文件由调用线程流式读取并分批交给模拟线程，
+ * 每个模拟线程单独计数，结束后合并，内存占用与文件大小无关。
+ * <pre>
+ * java -cp db-router-spring-boot-starter.jar com.cclu.middleware.db.router.simulate.ShardSimulator keys.txt 2 4 4 4
+ * </pre>
+ * @copyright ChangChengLu
+ */
+public class ShardSimulator {
+
+    private static final List<String> END = Collections.emptyList();
+
+    private final int threads;
+
+    /**
+     * 每批交给模拟线程的路由键数量
+     */
+    private final int batchSize;
+
+    public ShardSimulator(int threads, int batchSize) {
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public ShardSimulator() {
+        this(Runtime.getRuntime().availableProcessors(), 4096);
+    }
+
+    /**
+     * 统计当前策略下的分布
+     * @param keysFile 路由键文件，每行一个路由键，空行忽略
+     * @param current 当前路由策略
+     * @return 模拟报告
+     * @throws IOException 读取文件失败
+     */
+    public SimulationReport simulate(Path keysFile, IDBRouterStrategy current) throws IOException {
+        return simulate(keysFile, current, null);
+    }
+
+    /**
+     * 统计当前策略与对比策略下的分布及需要迁移的路由键
+     * @param keysFile 路由键文件，每行一个路由键，空行忽略
+     * @param current 当前路由策略
+     * @param target 对比路由策略，为 null 时只统计当前策略
+     * @return 模拟报告
+     * @throws IOException 读取文件失败
+     */
+    public SimulationReport simulate(Path keysFile, IDBRouterStrategy current, IDBRouterStrategy target) throws IOException {
+        long start = System.currentTimeMillis();
+        BlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(threads * 2);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        AtomicInteger sequence = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "db-router-simulate-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<Counter>> futures = new ArrayList<>(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(executorService.submit(() -> route(batches, current, target, failure)));
+            }
+            try (BufferedReader reader = Files.newBufferedReader(keysFile, StandardCharsets.UTF_8)) {
+                List<String> batch = new ArrayList<>(batchSize);
+                String line;
+                // 模拟线程出错后停止读取
+                while (null == failure.get() && null != (line = reader.readLine())) {
+                    String key = line.trim();
+                    if (key.isEmpty()) {
+                        continue;
+                    }
+                    batch.add(key);
+                    if (batch.size() == batchSize) {
+                        batches.put(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(batch);
+                }
+            } finally {
+                for (int i = 0; i < threads; i++) {
+                    batches.put(END);
+                }
+            }
+            Counter total = new Counter(current, target);
+            for (Future<Counter> future : futures) {
+                total.merge(future.get());
+            }
+            if (null != failure.get()) {
+                throw failure.get();
+            }
+            return total.report(System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("simulation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("simulation failed", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * 计算一批路由键的分片，出错后记录异常并继续取出剩余批次直到结束标记，读取线程不会阻塞在队列上
+     */
+    private static Counter route(BlockingQueue<List<String>> batches, IDBRouterStrategy current, IDBRouterStrategy target,
+                                 AtomicReference<RuntimeException> failure) throws InterruptedException {
+        Counter counter = new Counter(current, target);
+        List<String> batch;
+        while (END != (batch = batches.take())) {
+            if (null != failure.get()) {
+                continue;
+            }
+            try {
+                for (String key : batch) {
+                    counter.add(key);
+                }
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 单个模拟线程的计数
+     */
+    private static class Counter {
+
+        private final IDBRouterStrategy current;
+
+        private final IDBRouterStrategy target;
+
+        private final long[] currentCounts;
+
+        private final long[] targetCounts;
+
+        private long relocatedKeys;
+
+        private long relocatedAcrossDb;
+
+        Counter(IDBRouterStrategy current, IDBRouterStrategy target) {
+            this.current = current;
+            this.target = target;
+            this.currentCounts = new long[current.dbCount() * current.tbCount()];
+            this.targetCounts = null == target ? null : new long[target.dbCount() * target.tbCount()];
+        }
+
+        void add(String key) {
+            int[] from = route(current, key);
+            currentCounts[(from[0] - 1) * current.tbCount() + from[1]]++;
+            if (null == target) {
+                return;
+            }
+            int[] to = route(target, key);
+            targetCounts[(to[0] - 1) * target.tbCount() + to[1]]++;
+            if (from[0] != to[0]) {
+                relocatedAcrossDb++;
+                relocatedKeys++;
+            } else if (from[1] != to[1]) {
+                relocatedKeys++;
+            }
+        }
+
+        /**
+         * @return {分库编号, 分表编号}
+         */
+        private static int[] route(IDBRouterStrategy strategy, String key) {
+            strategy.doRouter(key);
+            try {
+                int dbIdx = index(DBContextHolder.getDBKey());
+                int tbIdx = index(DBContextHolder.getTBKey());
+                if (dbIdx < 1 || dbIdx > strategy.dbCount() || tbIdx < 0 || tbIdx >= strategy.tbCount()) {
+                    throw new IllegalStateException("key " + key + " routed out of range: db" + DBContextHolder.getDBKey() + "_" + DBContextHolder.getTBKey());
+                }
+                return new int[]{dbIdx, tbIdx};
+            } finally {
+                strategy.clear();
+            }
+        }
+
+        /**
+         * 取路由标识中的数字部分，如 003 -> 3，兼容自定义的分表后缀格式
+         */
+        private static int index(String key) {
+            int value = 0;
+            boolean digit = false;
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                    digit = true;
+                }
+            }
+            if (!digit) {
+                throw new IllegalStateException("route key is not numeric: " + key);
+            }
+            return value;
+        }
+
+        void merge(Counter other) {
+            for (int i = 0; i < currentCounts.length; i++) {
+                currentCounts[i] += other.currentCounts[i];
+            }
+            if (null != targetCounts) {
+                for (int i = 0; i < targetCounts.length; i++) {
+                    targetCounts[i] += other.targetCounts[i];
+                }
+            }
+            relocatedKeys += other.relocatedKeys;
+            relocatedAcrossDb += other.relocatedAcrossDb;
+        }
+
+        SimulationReport report(long elapsedMillis) {
+            ShardDistribution currentDistribution = new ShardDistribution(current.dbCount(), current.tbCount(), currentCounts);
+            ShardDistribution targetDistribution = null == target ? null : new ShardDistribution(target.dbCount(), target.tbCount(), targetCounts);
+            return new SimulationReport(currentDistribution, targetDistribution, relocatedKeys, relocatedAcrossDb, elapsedMillis);
+        }
+
+    }
+
+    /**
+     * 按哈希路由策略模拟，参数：路由键文件 当前分库数 当前分表数 [对比分库数 对比分表数]
+     * @param args 命令行参数
+     * @throws IOException 读取文件失败
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 5) {
+            System.err.println("usage: ShardSimulator <keys-file> <dbCount> <tbCount> [<targetDbCount> <targetTbCount>]");
+            System.exit(1);
+        }
+        IDBRouterStrategy current = new DBRouterStrategyHashCode(new DBRouterConfig(Integer.parseInt(args[1]), Integer.parseInt(args[2]), null));
+        IDBRouterStrategy target = 5 == args.length ? new DBRouterStrategyHashCode(new DBRouterConfig(Integer.parseInt(args[3]), Integer.parseInt(args[4]), null)) : null;
+        System.out.print(new ShardSimulator().simulate(Paths.get(args[0]), current, target));
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.cclu.middleware.db.router.simulate;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/28 09:30
+ * @description 分片分布模拟报告：当前配置的分布，及对比配置的分布和需要迁移的路由键比例
+ * @copyright ChangChengLu
+ */
+@Getter
+@AllArgsConstructor
+public class SimulationReport {
+
+    /**
+     * 当前配置的分布
+     */
+    private final ShardDistribution current;
+
+    /**
+     * 对比配置的分布，未指定对比配置时为 null
+     */
+    private final ShardDistribution target;
+
+    /**
+     * 分片发生变化的路由键数量
+     */
+    private final long relocatedKeys;
+
+    /**
+     * 分库发生变化的路由键数量，需要跨库迁移
+     */
+    private final long relocatedAcrossDb;
+
+    /**
+     * 模拟耗时(毫秒)
+     */
+    private final long elapsedMillis;
+
+    public long totalKeys() {
+        return current.total();
+    }
+
+    /**
+     * @return 需要迁移的路由键比例
+     */
+    public double relocatedFraction() {
+        return 0 == totalKeys() ? 0 : (double) relocatedKeys / totalKeys();
+    }
+
+    /**
+     * @return 需要跨库迁移的路由键比例
+     */
+    public double relocatedAcrossDbFraction() {
+        return 0 == totalKeys() ? 0 : (double) relocatedAcrossDb / totalKeys();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("keys=%d elapsed=%dms%n", totalKeys(), elapsedMillis));
+        report.append("current: ").append(current);
+        if (null != target) {
+            report.append("target: ").append(target);
+            report.append(String.format("relocated=%d (%.2f%%) across db=%d (%.2f%%)%n",
+                    relocatedKeys, relocatedFraction() * 100, relocatedAcrossDb, relocatedAcrossDbFraction() * 100));
+        }
+        return report.toString();
+    }
+
+}
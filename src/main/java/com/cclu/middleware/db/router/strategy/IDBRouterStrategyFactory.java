@@ -0,0 +1,26 @@
+package com.cclu.middleware.db.router.strategy;
+
+import com.cclu.middleware.db.router.DBRouterConfig;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/25 09:20
+ * @description 路由策略工厂，注册为 Spring Bean 后逻辑表可按策略名使用(tables.<logicTable>.strategy=name)，
+ * 直接调用构造方法创建策略，不经过 Class.forName，便于 native-image 编译
+ * @copyright ChangChengLu
+ */
+public interface IDBRouterStrategyFactory {
+
+    /**
+     * @return 策略名
+     */
+    String name();
+
+    /**
+     * 创建路由策略
+     * @param config 逻辑表的分库分表配置
+     * @return 路由策略
+     */
+    IDBRouterStrategy create(DBRouterConfig config);
+
+}
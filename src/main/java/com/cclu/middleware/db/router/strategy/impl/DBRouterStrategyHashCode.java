@@ -43,7 +43,7 @@ public class DBRouterStrategyHashCode implements IDBRouterStrategy {
 
     @Override
     public void setTBKey(int tbIdx) {
-        DBContextHolder.setTBKey(String.format("%03d", tbIdx));
+        DBContextHolder.setTBKey(String.format(dbRouterConfig.getTbKeyFormat(), tbIdx));
     }
 
     @Override
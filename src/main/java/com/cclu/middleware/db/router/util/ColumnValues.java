@@ -0,0 +1,131 @@
+package com.cclu.middleware.db.router.util;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/31 09:40
+ * @description 列值规范化，布隆过滤器及全局二级索引在写入和查找时使用同一规范形式，
+ * 使数据库比较相等的值(按 MySQL 默认 _ci 排序规则)得到相同结果，避免漏查：
+ * 字符串忽略大小写、重音及末尾空格(PAD SPACE)；数值去掉末尾的 0，字符串形式的数值按数值处理；
+ * 时间类型统一为本地时间的 ISO 形式，保留纳秒，日期按当天零点处理；布尔值按 1/0 处理。
+ * 规范化只会把更多的值归为同一元素，对区分大小写的列只增加误判，不会漏查。
+ * @copyright ChangChengLu
+ */
+public final class ColumnValues {
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    private static final Pattern DATE_TIME_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}([ T]\\d{2}:\\d{2}:\\d{2}(\\.\\d{1,9})?)?");
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+
+    private ColumnValues() {
+    }
+
+    /**
+     * @param value 列值，不为 null
+     * @return 规范形式
+     */
+    public static String normalize(Object value) {
+        if (value instanceof CharSequence) {
+            return normalizeString(value.toString());
+        }
+        if (value instanceof Number) {
+            return normalizeNumber((Number) value);
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? "1" : "0";
+        }
+        LocalDateTime dateTime = toLocalDateTime(value);
+        if (null != dateTime) {
+            return dateTime.toString();
+        }
+        if (value instanceof byte[]) {
+            return Base64.getEncoder().encodeToString((byte[]) value);
+        }
+        return normalizeString(String.valueOf(value));
+    }
+
+    private static String normalizeString(String value) {
+        int end = value.length();
+        while (end > 0 && ' ' == value.charAt(end - 1)) {
+            end--;
+        }
+        String trimmed = value.substring(0, end);
+        if (NUMBER_PATTERN.matcher(trimmed).matches()) {
+            return canonical(new BigDecimal(trimmed));
+        }
+        if (DATE_TIME_PATTERN.matcher(trimmed).matches()) {
+            try {
+                return (trimmed.length() == 10 ? LocalDate.parse(trimmed).atStartOfDay() : LocalDateTime.parse(trimmed.replace(' ', 'T'))).toString();
+            } catch (DateTimeParseException e) {
+                // 形如日期但不是合法日期，按普通字符串处理
+            }
+        }
+        return COMBINING_MARKS.matcher(Normalizer.normalize(trimmed, Normalizer.Form.NFD)).replaceAll("").toLowerCase();
+    }
+
+    private static String normalizeNumber(Number value) {
+        BigDecimal decimal;
+        if (value instanceof BigDecimal) {
+            decimal = (BigDecimal) value;
+        } else if (value instanceof BigInteger) {
+            decimal = new BigDecimal((BigInteger) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            decimal = BigDecimal.valueOf(value.doubleValue());
+        } else {
+            decimal = BigDecimal.valueOf(value.longValue());
+        }
+        return canonical(decimal);
+    }
+
+    /**
+     * 去掉末尾的 0 后数值相等的 BigDecimal 表示唯一，用科学计数形式避免极大指数展开
+     */
+    private static String canonical(BigDecimal decimal) {
+        return 0 == decimal.signum() ? "0" : decimal.stripTrailingZeros().toString();
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date) value).toLocalDate().atStartOfDay();
+        }
+        if (value instanceof Date) {
+            return new Timestamp(((Date) value).getTime()).toLocalDateTime();
+        }
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay();
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        }
+        if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).withZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        }
+        if (value instanceof Instant) {
+            return LocalDateTime.ofInstant((Instant) value, ZoneId.systemDefault());
+        }
+        return null;
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.cclu.middleware.db.router.util;
 
+import org.springframework.boot.context.properties.bind.Binder;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.PropertyResolver;
 
@@ -58,31 +59,18 @@ public class PropertyUtil {
     }
 
     /**
-     * 处理配置文件信息，将配置文件部分 prefix 前缀配置转换为 targetClass 类型对象并返回
+     * 处理配置文件信息，将配置文件部分 prefix 前缀配置转换为 targetClass 类型对象并返回。
+     * Spring Boot 2.x 直接调用 Binder，不经过反射，便于 native-image 编译
      * @param environment profile抽象
      * @param prefix profile配置前缀
      * @param targetClass 目标返回类型
      * @return targetClass类型对象
      */
     private static Object v2(final Environment environment, final String prefix, final Class<?> targetClass) {
-        try {
-            Class<?> binderClass = Class.forName("org.springframework.boot.context.properties.bind.Binder");
-            Method getMethod = binderClass.getDeclaredMethod("get", Environment.class);
-            Method bindMethod = binderClass.getDeclaredMethod("bind", String.class, Class.class);
-            // 获取 Binder 类型实例
-            Object binderObject = getMethod.invoke(null, environment);
-            // 如何 prefix 以 . 号结尾，则去除 . 号
-            String prefixParam = prefix.endsWith(".") ? prefix.substring(0, prefix.length() - 1) : prefix;
-            // 将 prefix 前缀的属性转换为 targetClass 类型实例，并绑定到 bindResultObject 内部 value 属性上
-            Object bindResultObject = bindMethod.invoke(binderObject, prefixParam, targetClass);
-            // 获取 BinderResult 属性的 get() 方法
-            Method resultGetMethod = bindResultObject.getClass().getDeclaredMethod("get");
-            // 使用 binderResult.get() 方法获取 binderResult 内部 value 属性值
-            return resultGetMethod.invoke(bindResultObject);
-        } catch (ClassNotFoundException | NoSuchMethodException | InvocationTargetException
-                | IllegalAccessException ex) {
-            throw new RuntimeException(ex.getMessage(), ex);
-        }
+        // 如何 prefix 以 . 号结尾，则去除 . 号
+        String prefixParam = prefix.endsWith(".") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        // 将 prefix 前缀的属性转换为 targetClass 类型实例，未配置时抛出 NoSuchElementException
+        return Binder.get(environment).bind(prefixParam, targetClass).get();
     }
 
 }
@@ -33,4 +33,40 @@ public class StringUtils {
         return result.toString();
     }
 
+    /**
+     * 将驼峰式字符串转中划线字符串
+     * @param input 驼峰式字符串，如 bloomFilters
+     * @return 中划线字符串，如 bloom-filters
+     */
+    public static String camelCaseToMiddleScore(String input) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < input.length(); i++) {
+            char currentChar = input.charAt(i);
+            if (Character.isUpperCase(currentChar)) {
+                result.append('-').append(Character.toLowerCase(currentChar));
+            } else {
+                result.append(currentChar);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * 将驼峰式字符串转下划线字符串
+     * @param input 驼峰式字符串，如 uId
+     * @return 下划线字符串，如 u_id
+     */
+    public static String camelCaseToUnderscore(String input) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < input.length(); i++) {
+            char currentChar = input.charAt(i);
+            if (Character.isUpperCase(currentChar)) {
+                result.append('_').append(Character.toLowerCase(currentChar));
+            } else {
+                result.append(currentChar);
+            }
+        }
+        return result.toString();
+    }
+
 }
@@ -0,0 +1,44 @@
+package com.cclu.midddleware.example;
+
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/18 11:05
+ * @description 奖品字典Dao，award_dict 为广播表
+ * @copyright ChangChengLu
+ */
+@Mapper
+public interface IAwardDictDao {
+
+    /**
+     * 新增奖品
+     * @param awardId 奖品ID
+     * @param awardName 奖品名称
+     * @return 影响行数
+     */
+    @Insert("INSERT INTO award_dict(award_id, award_name) VALUES(#{awardId}, #{awardName})")
+    int insert(@Param("awardId") String awardId, @Param("awardName") String awardName);
+
+    /**
+     * 修改奖品名称
+     * @param awardId 奖品ID
+     * @param awardName 奖品名称
+     * @return 影响行数
+     */
+    @Update("UPDATE award_dict SET award_name = #{awardName} WHERE award_id = #{awardId}")
+    int updateAwardName(@Param("awardId") String awardId, @Param("awardName") String awardName);
+
+    /**
+     * 查询奖品名称
+     * @param awardId 奖品ID
+     * @return 奖品名称
+     */
+    @Select("SELECT award_name FROM award_dict WHERE award_id = #{awardId}")
+    String queryAwardName(String awardId);
+
+}
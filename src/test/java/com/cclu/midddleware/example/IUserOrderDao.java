@@ -0,0 +1,47 @@
+package com.cclu.midddleware.example;
+
+import com.cclu.middleware.db.router.annotation.DBRouter;
+import com.cclu.middleware.db.router.annotation.DBRouterStrategy;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/16 10:25
+ * @description 用户订单Dao，路由规则取自逻辑表 user_order 的分片规则
+ * @copyright ChangChengLu
+ */
+@Mapper
+@DBRouterStrategy(splitTable = true, logicTable = "user_order")
+public interface IUserOrderDao {
+
+    /**
+     * 新增订单
+     * @param userOrder 用户订单
+     */
+    @DBRouter
+    @Insert("INSERT INTO user_order(u_id, order_id, amount, create_time) VALUES(#{uId}, #{orderId}, #{amount}, now())")
+    void insert(UserOrder userOrder);
+
+    /**
+     * 按订单号查询
+     * @param orderId 订单号
+     * @return 用户订单
+     */
+    @DBRouter
+    @Select("SELECT id, u_id, order_id, amount, create_time FROM user_order WHERE order_id = #{orderId}")
+    UserOrder queryUserOrderByOrderId(String orderId);
+
+    /**
+     * 查询订单商品，user_order 与 user_order_item 为绑定表，在同一分表后缀下关联
+     * @param orderId 订单号
+     * @return 商品编码
+     */
+    @DBRouter
+    @Select("SELECT i.sku FROM user_order o JOIN user_order_item i ON o.order_id = i.order_id WHERE o.order_id = #{orderId} ORDER BY i.sku")
+    List<String> queryOrderSkus(String orderId);
+
+}
@@ -0,0 +1,26 @@
+package com.cclu.midddleware.example;
+
+import com.cclu.middleware.db.router.annotation.DBRouter;
+import com.cclu.middleware.db.router.annotation.DBRouterStrategy;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/19 09:50
+ * @description 订单明细Dao，与 user_order 绑定，按订单号分片
+ * @copyright ChangChengLu
+ */
+@Mapper
+@DBRouterStrategy(splitTable = true, logicTable = "user_order_item")
+public interface IUserOrderItemDao {
+
+    /**
+     * 新增订单明细
+     * @param userOrderItem 订单明细
+     */
+    @DBRouter
+    @Insert("INSERT INTO user_order_item(order_id, sku, quantity) VALUES(#{orderId}, #{sku}, #{quantity})")
+    void insert(UserOrderItem userOrderItem);
+
+}
@@ -2,7 +2,10 @@ package com.cclu.midddleware.example;
 
 import com.cclu.middleware.db.router.annotation.DBRouter;
 import com.cclu.middleware.db.router.annotation.DBRouterStrategy;
+import com.cclu.middleware.db.router.annotation.DBRouterWriteBehind;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
 
 /**
  * @author ChangCheng Lu
@@ -14,19 +17,55 @@ import org.apache.ibatis.annotations.Mapper;
 @DBRouterStrategy(splitTable = true)
 public interface IUserStrategyExportDao {
 
+    String INSERT_SQL = "INSERT INTO user_strategy_export(u_id, activity_id, order_id, strategy_id, strategy_mode, grant_type, grant_date, grant_state, " +
+            "award_id, award_type, award_name, award_content, uuid, create_time, update_time) VALUES(#{uId}, #{activityId}, #{orderId}, " +
+            "#{strategyId}, #{strategyMode}, #{grantType}, #{grantDate}, #{grantState}, #{awardId}, #{awardType}, #{awardName}, " +
+            "#{awardContent}, #{uuid}, now(), now())";
+
     /**
      * 新增数据
      * @param userStrategyExport 用户策略
      */
     @DBRouter(key = "uId")
+    @Insert(INSERT_SQL)
     void insert(UserStrategyExport userStrategyExport);
 
+    /**
+     * 新增数据，组提交
+     * @param userStrategyExport 用户策略
+     * @return 影响行数
+     */
+    @DBRouter(key = "uId")
+    @DBRouterWriteBehind
+    @Insert(INSERT_SQL)
+    int insertGroupCommit(UserStrategyExport userStrategyExport);
+
+    /**
+     * 新增数据，异步写入
+     * @param userStrategyExport 用户策略
+     */
+    @DBRouter(key = "uId")
+    @DBRouterWriteBehind(durable = false)
+    @Insert(INSERT_SQL)
+    void insertAsync(UserStrategyExport userStrategyExport);
+
     /**
      * 查询数据
      * @param uId 用户ID
      * @return 用户策略
      */
     @DBRouter
+    @Select("SELECT id, u_id, activity_id, order_id, strategy_id, strategy_mode, grant_type, grant_date, grant_state, award_id, award_type, " +
+            "award_name, award_content, uuid, create_time, update_time FROM user_strategy_export WHERE u_id = #{uId}")
     UserStrategyExport queryUserStrategyExportByUId(String uId);
 
+    /**
+     * 查询用户获得的奖品名称，award_dict 为广播表，与分表在同一分库内关联
+     * @param uId 用户ID
+     * @return 奖品名称
+     */
+    @DBRouter
+    @Select("SELECT award_name FROM award_dict WHERE award_id IN (SELECT award_id FROM user_strategy_export WHERE u_id = #{uId})")
+    String queryAwardNameByUId(String uId);
+
 }
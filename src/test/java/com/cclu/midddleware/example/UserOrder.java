@@ -0,0 +1,42 @@
+package com.cclu.midddleware.example;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/16 10:20
+ * @description 用户订单表，按订单号分片
+ * @copyright ChangChengLu
+ */
+@Data
+public class UserOrder {
+
+    /**
+     * 自增ID
+     */
+    private Long id;
+
+    /**
+     * 用户ID
+     */
+    private String uId;
+
+    /**
+     * 订单号
+     */
+    private String orderId;
+
+    /**
+     * 订单金额
+     */
+    private BigDecimal amount;
+
+    /**
+     * 创建时间
+     */
+    private Date createTime;
+
+}
@@ -0,0 +1,33 @@
+package com.cclu.midddleware.example;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/19 09:45
+ * @description 订单明细表，与订单表绑定
+ * @copyright ChangChengLu
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserOrderItem {
+
+    /**
+     * 订单号
+     */
+    private String orderId;
+
+    /**
+     * 商品编码
+     */
+    private String sku;
+
+    /**
+     * 数量
+     */
+    private Integer quantity;
+
+}
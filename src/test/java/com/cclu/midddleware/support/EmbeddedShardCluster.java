@@ -0,0 +1,456 @@
+package com.cclu.midddleware.support;
+
+import com.cclu.middleware.db.router.config.DataSourceAutoConfig;
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionFactoryBean;
+import org.mybatis.spring.mapper.MapperFactoryBean;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.EnableAspectJAutoProxy;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.util.StreamUtils;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/05 14:10
+ * @description 内存分片集群，按 dbCount 启动 H2(MySQL 模式)内存库，按模板建好分表，
+ * 并通过 DataSourceAutoConfig 完成数据源、切面、mybatis 插件的装配，用于脱离 MySQL 的路由及性能测试。
+ * @copyright ChangChengLu
+ */
+public class EmbeddedShardCluster implements AutoCloseable {
+
+    private static final String PREFIX = "mini-db-router.jdbc.datasource.";
+
+    /**
+     * 模板中的表名占位符
+     */
+    public static final String TABLE_PLACEHOLDER = "{table}";
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    private final String name = "shard_cluster_" + SEQUENCE.incrementAndGet();
+
+    private final int dbCount;
+
+    private final int tbCount;
+
+    private final String routerKey;
+
+    private final Map<String, String> tableTemplates;
+
+    private final List<Class<?>> mapperClasses;
+
+    private final Map<String, Object> properties;
+
+    private final Set<String> standbyKeys;
+
+    private final Set<String> shadowKeys;
+
+    private final List<Object> beans;
+
+    private AnnotationConfigApplicationContext context;
+
+    private EmbeddedShardCluster(Builder builder) {
+        this.dbCount = builder.dbCount;
+        this.tbCount = builder.tbCount;
+        this.routerKey = builder.routerKey;
+        this.tableTemplates = builder.tableTemplates;
+        this.mapperClasses = builder.mapperClasses;
+        this.properties = builder.properties;
+        this.standbyKeys = builder.standbyKeys;
+        this.shadowKeys = builder.shadowKeys;
+        this.beans = builder.beans;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 读取 classpath 下的建表模板
+     * @param resource 资源路径，如 sql/user_strategy_export.sql
+     * @return 建表模板，表名使用 {table} 占位
+     */
+    public static String loadTemplate(String resource) {
+        try (InputStream in = EmbeddedShardCluster.class.getClassLoader().getResourceAsStream(resource)) {
+            if (null == in) {
+                throw new IllegalArgumentException("can not find template " + resource);
+            }
+            return StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 启动集群：装配 Spring 上下文并创建分表
+     * @return this
+     */
+    public EmbeddedShardCluster start() {
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource(name, buildProperties()));
+        context.registerBean(EmbeddedShardCluster.class, () -> this);
+        context.register(DataSourceAutoConfig.class, EmbeddedMybatisConfig.class);
+        for (Object bean : beans) {
+            context.getBeanFactory().registerSingleton(bean.getClass().getName(), bean);
+        }
+        for (Class<?> mapperClass : mapperClasses) {
+            context.registerBean(mapperClass.getName(), MapperFactoryBean.class, bd -> {
+                bd.getConstructorArgumentValues().addGenericArgumentValue(mapperClass);
+                bd.getPropertyValues().add("sqlSessionFactory", new RuntimeBeanReference("sqlSessionFactory"));
+            });
+        }
+        context.refresh();
+        createTables();
+        return this;
+    }
+
+    private Map<String, Object> buildProperties() {
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put(PREFIX + "dbCount", dbCount);
+        props.put(PREFIX + "tbCount", tbCount);
+        props.put(PREFIX + "routerKey", routerKey);
+        props.put(PREFIX + "default", "db00");
+        props.put(PREFIX + "list", String.join(",", shardKeys()));
+        props.put(PREFIX + "global.driver-class-name", "org.h2.Driver");
+        props.put(PREFIX + "global.username", "sa");
+        props.put(PREFIX + "global.password", "sa");
+        for (String dbKey : allKeys()) {
+            props.put(PREFIX + dbKey + ".url", url(dbKey));
+            props.put(PREFIX + dbKey + ".pool.pool-name", name + "_" + dbKey);
+            if (standbyKeys.contains(dbKey)) {
+                props.put(PREFIX + dbKey + ".standby.url", url(dbKey + "_standby"));
+                props.put(PREFIX + dbKey + ".standby.pool.pool-name", name + "_" + dbKey + "_standby");
+            }
+            if (shadowKeys.contains(dbKey)) {
+                props.put(PREFIX + dbKey + ".shadow.url", url(dbKey + "_shadow"));
+                props.put(PREFIX + dbKey + ".shadow.pool.pool-name", name + "_" + dbKey + "_shadow");
+            }
+        }
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            props.put(PREFIX + entry.getKey(), entry.getValue());
+        }
+        return props;
+    }
+
+    /**
+     * @param dbKey 数据源 key，如 db01
+     * @return H2 内存库 URL
+     */
+    public String url(String dbKey) {
+        return "jdbc:h2:mem:" + name + "_" + dbKey + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+
+    private void createTables() {
+        // 配置了影子表后缀时，主库及影子库同时建影子表
+        Object shadowTableSuffix = properties.get("shadowTableSuffix");
+        for (String dbKey : allKeys()) {
+            createTables(dbKey, getDataSource(dbKey), "");
+            if (standbyKeys.contains(dbKey)) {
+                createTables(dbKey, getStandbyDataSource(dbKey), "");
+            }
+            if (null != shadowTableSuffix) {
+                createTables(dbKey, getDataSource(dbKey), shadowTableSuffix.toString());
+            }
+            if (shadowKeys.contains(dbKey)) {
+                createTables(dbKey, getShadowDataSource(dbKey), null == shadowTableSuffix ? "" : shadowTableSuffix.toString());
+            }
+        }
+    }
+
+    private void createTables(String dbKey, DataSource dataSource, String suffix) {
+        for (Map.Entry<String, String> entry : tableTemplates.entrySet()) {
+            // 默认库及广播表建逻辑表，分库建全部分表
+            if ("db00".equals(dbKey) || broadcastTables().contains(entry.getKey())) {
+                execute(dataSource, entry.getValue().replace(TABLE_PLACEHOLDER, entry.getKey() + suffix));
+                continue;
+            }
+            // 配置了逻辑表分片规则时按规则的分表数及后缀格式建表
+            String rulePrefix = "tables." + entry.getKey() + ".";
+            int tableCount = Integer.parseInt(String.valueOf(properties.getOrDefault(rulePrefix + "tbCount", tbCount)));
+            String tbKeyFormat = String.valueOf(properties.getOrDefault(rulePrefix + "tbKeyFormat", "%03d"));
+            for (int tbIdx = 0; tbIdx < tableCount; tbIdx++) {
+                execute(dataSource, entry.getValue().replace(TABLE_PLACEHOLDER, entry.getKey() + "_" + String.format(tbKeyFormat, tbIdx) + suffix));
+            }
+        }
+    }
+
+    private List<String> broadcastTables() {
+        Object broadcastTables = properties.get("broadcastTables");
+        return null == broadcastTables ? Collections.emptyList() : Arrays.asList(broadcastTables.toString().split(","));
+    }
+
+    /**
+     * 在指定数据源上执行以 ; 分隔的 SQL 脚本
+     * @param dbKey 数据源 key
+     * @param script SQL 脚本
+     */
+    public void execute(String dbKey, String script) {
+        execute(getDataSource(dbKey), script);
+    }
+
+    /**
+     * 在指定数据源上执行以 ; 分隔的 SQL 脚本
+     * @param dataSource 数据源
+     * @param script SQL 脚本
+     */
+    public void execute(DataSource dataSource, String script) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : script.split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    statement.execute(sql);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("execute script failed", e);
+        }
+    }
+
+    /**
+     * 在指定数据源上执行计数类查询
+     * @param dbKey 数据源 key
+     * @param sql 返回单个数值的 SQL
+     * @return 查询结果
+     */
+    public long queryForLong(String dbKey, String sql) {
+        return queryForLong(getDataSource(dbKey), sql);
+    }
+
+    /**
+     * 在指定数据源上执行计数类查询
+     * @param dataSource 数据源
+     * @param sql 返回单个数值的 SQL
+     * @return 查询结果
+     */
+    public long queryForLong(DataSource dataSource, String sql) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getLong(1) : 0L;
+        } catch (SQLException e) {
+            throw new IllegalStateException("query failed", e);
+        }
+    }
+
+    /**
+     * @return 分库数据源 key，如 db01、db02
+     */
+    public List<String> shardKeys() {
+        List<String> keys = new ArrayList<>(dbCount);
+        for (int dbIdx = 1; dbIdx <= dbCount; dbIdx++) {
+            keys.add(String.format("db%02d", dbIdx));
+        }
+        return keys;
+    }
+
+    private List<String> allKeys() {
+        List<String> keys = new ArrayList<>(shardKeys());
+        keys.add(0, "db00");
+        return keys;
+    }
+
+    public DataSource getDataSource(String dbKey) {
+        return getDynamicDataSource().resolveTargetDataSource(dbKey);
+    }
+
+    /**
+     * @param dbKey 数据源 key，如 db01
+     * @return 备库数据源
+     */
+    public DataSource getStandbyDataSource(String dbKey) {
+        return getDynamicDataSource().getStandbyDataSources().get(dbKey);
+    }
+
+    /**
+     * @param dbKey 数据源 key，如 db01
+     * @return 影子库数据源
+     */
+    public DataSource getShadowDataSource(String dbKey) {
+        return getDynamicDataSource().getShadowDataSources().get(dbKey);
+    }
+
+    public DynamicDataSource getDynamicDataSource() {
+        return context.getBean(DynamicDataSource.class);
+    }
+
+    public IDBRouterStrategy getStrategy() {
+        return context.getBean(IDBRouterStrategy.class);
+    }
+
+    public <T> T getMapper(Class<T> mapperClass) {
+        return context.getBean(mapperClass);
+    }
+
+    public <T> T getBean(Class<T> beanClass) {
+        return context.getBean(beanClass);
+    }
+
+    public AnnotationConfigApplicationContext getContext() {
+        return context;
+    }
+
+    public int getDbCount() {
+        return dbCount;
+    }
+
+    public int getTbCount() {
+        return tbCount;
+    }
+
+    @Override
+    public void close() {
+        if (null == context) {
+            return;
+        }
+        DynamicDataSource dynamicDataSource = getDynamicDataSource();
+        Set<DataSource> dataSources = new LinkedHashSet<>(dynamicDataSource.getResolvedDataSources().values());
+        dataSources.add(dynamicDataSource.getResolvedDefaultDataSource());
+        dataSources.addAll(dynamicDataSource.getStandbyDataSources().values());
+        dataSources.addAll(dynamicDataSource.getShadowDataSources().values());
+        context.close();
+        for (DataSource dataSource : dataSources) {
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("SHUTDOWN");
+            } catch (SQLException ignore) {
+                // 数据源已关闭
+            }
+            if (dataSource instanceof Closeable) {
+                try {
+                    ((Closeable) dataSource).close();
+                } catch (IOException ignore) {
+                    // 关闭失败不影响测试
+                }
+            }
+        }
+        context = null;
+    }
+
+    /**
+     * mybatis 装配，开启切面代理使 Mapper 经过 DBRouterJoinPoint 路由
+     */
+    @Configuration
+    @EnableAspectJAutoProxy
+    static class EmbeddedMybatisConfig {
+
+        @Bean
+        public SqlSessionFactory sqlSessionFactory(DataSource dataSource, Interceptor[] interceptors) throws Exception {
+            org.apache.ibatis.session.Configuration configuration = new org.apache.ibatis.session.Configuration();
+            configuration.setMapUnderscoreToCamelCase(true);
+            SqlSessionFactoryBean sqlSessionFactoryBean = new SqlSessionFactoryBean();
+            sqlSessionFactoryBean.setDataSource(dataSource);
+            sqlSessionFactoryBean.setConfiguration(configuration);
+            sqlSessionFactoryBean.setPlugins(interceptors);
+            return sqlSessionFactoryBean.getObject();
+        }
+
+    }
+
+    public static class Builder {
+
+        private int dbCount = 2;
+
+        private int tbCount = 4;
+
+        private String routerKey = "uId";
+
+        private final Map<String, String> tableTemplates = new LinkedHashMap<>();
+
+        private final List<Class<?>> mapperClasses = new ArrayList<>();
+
+        private final Map<String, Object> properties = new LinkedHashMap<>();
+
+        private final Set<String> standbyKeys = new LinkedHashSet<>();
+
+        private final Set<String> shadowKeys = new LinkedHashSet<>();
+
+        private final List<Object> beans = new ArrayList<>();
+
+        public Builder dbCount(int dbCount) {
+            this.dbCount = dbCount;
+            return this;
+        }
+
+        public Builder tbCount(int tbCount) {
+            this.tbCount = tbCount;
+            return this;
+        }
+
+        public Builder routerKey(String routerKey) {
+            this.routerKey = routerKey;
+            return this;
+        }
+
+        /**
+         * @param logicTable 逻辑表名
+         * @param template 建表模板，表名使用 {table} 占位
+         */
+        public Builder table(String logicTable, String template) {
+            tableTemplates.put(logicTable, template);
+            return this;
+        }
+
+        /**
+         * 为数据源配置一个 H2 备库，建表与主库相同
+         * @param dbKey 数据源 key，如 db01
+         */
+        public Builder standby(String dbKey) {
+            standbyKeys.add(dbKey);
+            return this;
+        }
+
+        /**
+         * 为数据源配置一个 H2 影子库，建表与主库相同(配置了影子表后缀时建影子表)
+         * @param dbKey 数据源 key，如 db01
+         */
+        public Builder shadow(String dbKey) {
+            shadowKeys.add(dbKey);
+            return this;
+        }
+
+        public Builder mapper(Class<?> mapperClass) {
+            mapperClasses.add(mapperClass);
+            return this;
+        }
+
+        /**
+         * @param key mini-db-router.jdbc.datasource. 之后的配置 key
+         * @param value 配置值
+         */
+        public Builder property(String key, Object value) {
+            properties.put(key, value);
+            return this;
+        }
+
+        /**
+         * 注册一个单例 Bean，如路由策略工厂
+         * @param bean Bean 实例
+         */
+        public Builder bean(Object bean) {
+            beans.add(bean);
+            return this;
+        }
+
+        public EmbeddedShardCluster build() {
+            return new EmbeddedShardCluster(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.cclu.midddleware.support;
+
+import java.util.Random;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/05 15:02
+ * @description 路由键分布，用于压测时模拟真实的访问热点
+ * @copyright ChangChengLu
+ */
+public interface KeyDistribution {
+
+    /**
+     * 生成下一个路由键
+     * @param random 随机数生成器，由调用线程提供
+     * @return 路由键
+     */
+    String nextKey(Random random);
+
+    /**
+     * 均匀分布
+     * @param prefix 路由键前缀
+     * @param keyCount 路由键数量
+     * @return 均匀分布
+     */
+    static KeyDistribution uniform(String prefix, int keyCount) {
+        return random -> prefix + random.nextInt(keyCount);
+    }
+
+    /**
+     * Zipf 分布，排名为 k 的键出现概率正比于 1 / k^exponent
+     * @param prefix 路由键前缀
+     * @param keyCount 路由键数量
+     * @param exponent 倾斜系数，越大热点越集中，常用 1.0
+     * @return Zipf 分布
+     */
+    static KeyDistribution zipf(String prefix, int keyCount, double exponent) {
+        double[] cdf = new double[keyCount];
+        double sum = 0;
+        for (int rank = 1; rank <= keyCount; rank++) {
+            sum += 1.0D / Math.pow(rank, exponent);
+            cdf[rank - 1] = sum;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            cdf[i] /= sum;
+        }
+        return random -> {
+            double p = random.nextDouble();
+            int low = 0, high = keyCount - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cdf[mid] < p) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return prefix + low;
+        };
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.cclu.midddleware.support;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/05 15:48
+ * @description 压测报告，延迟单位为微秒
+ * @copyright ChangChengLu
+ */
+@Data
+@AllArgsConstructor
+public class LoadReport {
+
+    /**
+     * 压测总耗时(纳秒)
+     */
+    private long elapsedNanos;
+
+    /**
+     * 各分片统计，key 为 db01_001 形式
+     */
+    private Map<String, ShardLoad> shardLoads;
+
+    public long totalOperations() {
+        return shardLoads.values().stream().mapToLong(ShardLoad::getOperations).sum();
+    }
+
+    public long totalErrors() {
+        return shardLoads.values().stream().mapToLong(ShardLoad::getErrors).sum();
+    }
+
+    public double throughput() {
+        return totalOperations() * 1_000_000_000D / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("total ops=%d errors=%d elapsed=%dms throughput=%.1f/s%n",
+                totalOperations(), totalErrors(), elapsedNanos / 1_000_000, throughput()));
+        report.append(String.format("%-12s %10s %8s %12s %10s %10s %10s %10s%n", "shard", "ops", "errors", "ops/s", "p50(us)", "p95(us)", "p99(us)", "max(us)"));
+        for (ShardLoad load : shardLoads.values()) {
+            report.append(String.format("%-12s %10d %8d %12.1f %10d %10d %10d %10d%n", load.getShard(), load.getOperations(), load.getErrors(),
+                    load.getThroughput(), load.getP50(), load.getP95(), load.getP99(), load.getMax()));
+        }
+        return report.toString();
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class ShardLoad {
+
+        private String shard;
+
+        private long operations;
+
+        private long errors;
+
+        private double throughput;
+
+        private long p50;
+
+        private long p95;
+
+        private long p99;
+
+        private long max;
+
+    }
+
+}
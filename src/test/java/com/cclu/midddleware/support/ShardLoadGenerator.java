@@ -0,0 +1,206 @@
+package com.cclu.midddleware.support;
+
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/05 15:20
+ * @description 分片压测生成器，按路由键分布并发调用 Mapper，统计各分片吞吐和延迟
+ * @copyright ChangChengLu
+ */
+public class ShardLoadGenerator {
+
+    private final int threads;
+
+    private final long operations;
+
+    private final long durationMillis;
+
+    private final KeyDistribution keyDistribution;
+
+    private final IDBRouterStrategy dbRouterStrategy;
+
+    private final Consumer<String> action;
+
+    private ShardLoadGenerator(Builder builder) {
+        this.threads = builder.threads;
+        this.operations = builder.operations;
+        this.durationMillis = builder.durationMillis;
+        this.keyDistribution = builder.keyDistribution;
+        this.dbRouterStrategy = builder.dbRouterStrategy;
+        this.action = builder.action;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 执行压测，达到操作总数或持续时间任一条件即停止
+     * @return 压测报告
+     */
+    public LoadReport run() throws InterruptedException {
+        AtomicLong remaining = new AtomicLong(operations <= 0 ? Long.MAX_VALUE : operations);
+        long deadline = durationMillis <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + durationMillis;
+        List<Map<String, ShardSamples>> threadSamples = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(() -> {
+                Map<String, ShardSamples> samples = new HashMap<>();
+                try {
+                    Random random = ThreadLocalRandom.current();
+                    while (remaining.getAndDecrement() > 0 && System.currentTimeMillis() < deadline) {
+                        String key = keyDistribution.nextKey(random);
+                        String shard = shardOf(key);
+                        long begin = System.nanoTime();
+                        boolean success = true;
+                        try {
+                            action.accept(key);
+                        } catch (RuntimeException e) {
+                            success = false;
+                        }
+                        samples.computeIfAbsent(shard, k -> new ShardSamples()).add(System.nanoTime() - begin, success);
+                    }
+                } finally {
+                    threadSamples.add(samples);
+                    latch.countDown();
+                }
+            }, "shard-load-" + i);
+            worker.start();
+        }
+        latch.await();
+        long elapsedNanos = System.nanoTime() - start;
+
+        Map<String, ShardSamples> merged = new TreeMap<>();
+        for (Map<String, ShardSamples> samples : threadSamples) {
+            samples.forEach((shard, s) -> merged.computeIfAbsent(shard, k -> new ShardSamples()).merge(s));
+        }
+        Map<String, LoadReport.ShardLoad> shardLoads = new TreeMap<>();
+        merged.forEach((shard, samples) -> shardLoads.put(shard, samples.toShardLoad(shard, elapsedNanos)));
+        return new LoadReport(elapsedNanos, shardLoads);
+    }
+
+    private String shardOf(String key) {
+        try {
+            dbRouterStrategy.doRouter(key);
+            return "db" + DBContextHolder.getDBKey() + "_" + DBContextHolder.getTBKey();
+        } finally {
+            dbRouterStrategy.clear();
+        }
+    }
+
+    /**
+     * 单线程内某个分片的延迟样本
+     */
+    private static class ShardSamples {
+
+        private long[] latencies = new long[64];
+
+        private int size;
+
+        private long errors;
+
+        void add(long latencyNanos, boolean success) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size << 1);
+            }
+            latencies[size++] = latencyNanos;
+            if (!success) {
+                errors++;
+            }
+        }
+
+        void merge(ShardSamples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.latencies[i], true);
+            }
+            errors += other.errors;
+        }
+
+        LoadReport.ShardLoad toShardLoad(String shard, long elapsedNanos) {
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return new LoadReport.ShardLoad(shard, size, errors, size * 1_000_000_000D / elapsedNanos,
+                    percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), sorted[size - 1] / 1000);
+        }
+
+        private static long percentile(long[] sorted, double p) {
+            int idx = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, idx)] / 1000;
+        }
+
+    }
+
+    public static class Builder {
+
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        private long operations = 10_000;
+
+        private long durationMillis;
+
+        private KeyDistribution keyDistribution = KeyDistribution.uniform("u", 10_000);
+
+        private IDBRouterStrategy dbRouterStrategy;
+
+        private Consumer<String> action;
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param operations 操作总数，小于等于 0 表示不限制
+         */
+        public Builder operations(long operations) {
+            this.operations = operations;
+            return this;
+        }
+
+        /**
+         * @param durationMillis 持续时间(毫秒)，小于等于 0 表示不限制
+         */
+        public Builder durationMillis(long durationMillis) {
+            this.durationMillis = durationMillis;
+            return this;
+        }
+
+        public Builder keyDistribution(KeyDistribution keyDistribution) {
+            this.keyDistribution = keyDistribution;
+            return this;
+        }
+
+        /**
+         * @param dbRouterStrategy 路由策略，用于将路由键归属到分片
+         */
+        public Builder strategy(IDBRouterStrategy dbRouterStrategy) {
+            this.dbRouterStrategy = dbRouterStrategy;
+            return this;
+        }
+
+        /**
+         * @param action 压测动作，入参为路由键，如 uId -> dao.queryUserStrategyExportByUId(uId)
+         */
+        public Builder action(Consumer<String> action) {
+            this.action = action;
+            return this;
+        }
+
+        public ShardLoadGenerator build() {
+            Objects.requireNonNull(dbRouterStrategy, "strategy");
+            Objects.requireNonNull(action, "action");
+            return new ShardLoadGenerator(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.pool.AdaptivePoolController;
+import com.cclu.middleware.db.router.pool.ShardPoolStats;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanCreationException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/30 14:20
+ * @description 连接池自适应调整测试：热点分库扩容、空闲分库逐步缩容、连接总预算约束
+ * @copyright ChangChengLu
+ */
+public class AdaptivePoolTest {
+
+    @Test
+    public void test_grow_and_shrink() throws Exception {
+        EmbeddedShardCluster cluster = cluster()
+                .property("db01.pool.maximum-pool-size", 4)
+                .property("db01.adaptivePool.minPoolSize", 3)
+                .property("db01.adaptivePool.maxPoolSize", 8)
+                .build()
+                .start();
+        try {
+            AdaptivePoolController controller = cluster.getBean(AdaptivePoolController.class);
+            HikariDataSource db01 = (HikariDataSource) cluster.getDataSource("db01");
+            Assert.assertEquals(4, controller.poolSizes().get("db01").intValue());
+            Assert.assertEquals(3, db01.getMinimumIdle());
+
+            // 占满 4 个连接且有 1 个线程等待：ceil(4 * 1.2) + 1 = 6
+            saturate(db01, 4, () -> {
+                controller.adjust();
+                Assert.assertEquals(6, controller.poolSizes().get("db01").intValue());
+            });
+
+            // 等待线程拿到连接的等待时间计入下一周期，先消化该周期
+            controller.adjust();
+            int size = controller.poolSizes().get("db01");
+            Assert.assertTrue(size >= 6 && size <= 8);
+            // 空闲后每个周期最多缩容四分之一，最终回到下限
+            controller.adjust();
+            Assert.assertEquals(size - Math.max(1, size / 4), controller.poolSizes().get("db01").intValue());
+            for (int i = 0; i < 10; i++) {
+                controller.adjust();
+            }
+            Assert.assertEquals(3, controller.poolSizes().get("db01").intValue());
+            Assert.assertEquals(2, controller.poolSizes().get("db02").intValue());
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void test_total_connections_budget() throws Exception {
+        EmbeddedShardCluster cluster = cluster()
+                .property("adaptivePool.minPoolSize", 1)
+                .property("adaptivePool.totalConnections", 3)
+                .build()
+                .start();
+        try {
+            AdaptivePoolController controller = cluster.getBean(AdaptivePoolController.class);
+            // 启动时 db01、db02 默认各 10 个连接，按预算收敛到下限
+            Map<String, Integer> sizes = controller.poolSizes();
+            Assert.assertEquals(2, sizes.size());
+            Assert.assertTrue(sizes.values().stream().allMatch(size -> 1 == size));
+
+            // db01 期望 ceil(1 * 1.2) + 1 = 3，总数 4 超出预算 3，剩余 1 个连接分给 db01
+            HikariDataSource db01 = (HikariDataSource) cluster.getDataSource("db01");
+            saturate(db01, 1, () -> {
+                controller.adjust();
+                Map<String, Integer> adjusted = controller.poolSizes();
+                Assert.assertEquals(2, adjusted.get("db01").intValue());
+                Assert.assertTrue(adjusted.values().stream().mapToInt(Integer::intValue).sum() <= 3);
+            });
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void test_reject_budget_below_minimums() {
+        try {
+            cluster()
+                    .property("adaptivePool.minPoolSize", 2)
+                    .property("adaptivePool.totalConnections", 3)
+                    .build()
+                    .start();
+            Assert.fail("minimum pool sizes exceed the budget");
+        } catch (BeanCreationException e) {
+            Throwable cause = e;
+            while (null != cause.getCause()) {
+                cause = cause.getCause();
+            }
+            Assert.assertTrue(cause instanceof IllegalArgumentException);
+            Assert.assertTrue(cause.getMessage().contains("totalConnections 3"));
+        }
+    }
+
+    @Test
+    public void test_pool_stats_window() {
+        ShardPoolStats stats = new ShardPoolStats();
+        for (int i = 0; i < 10; i++) {
+            stats.recordConnectionAcquiredNanos(2_000_000L);
+            stats.recordConnectionUsageMillis(200L);
+        }
+        stats.recordConnectionTimeout();
+        ShardPoolStats.Window window = stats.drain(1000L);
+        // 每秒 10 次借出，每次占用 200ms，估算并发 2
+        Assert.assertEquals(2D, window.concurrency(), 0.0001D);
+        Assert.assertEquals(10D, window.getThroughput(), 0.0001D);
+        Assert.assertEquals(2D, window.getAvgWaitMillis(), 0.0001D);
+        Assert.assertEquals(1L, window.getTimeouts());
+        // 取出后清零
+        Assert.assertEquals(0D, stats.drain(1000L).concurrency(), 0.0001D);
+    }
+
+    private static EmbeddedShardCluster.Builder cluster() {
+        // 调整周期足够长，由测试手动触发调整
+        return EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(2)
+                .property("adaptivePool.enabled", true)
+                .property("adaptivePool.intervalMillis", 3_600_000L)
+                .property("global.pool.connection-timeout", 5000);
+    }
+
+    /**
+     * 借出 size 个连接并让另一个线程等待连接，在此状态下执行 action，之后释放一个连接给等待线程并全部归还
+     */
+    private static void saturate(HikariDataSource dataSource, int size, Runnable action) throws Exception {
+        List<Connection> held = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            held.add(dataSource.getConnection());
+        }
+        Thread waiter = new Thread(() -> {
+            try (Connection ignore = dataSource.getConnection()) {
+                // 拿到连接即归还
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waiter.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection() < 1) {
+                Assert.assertTrue("waiter not blocked", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+            action.run();
+        } finally {
+            held.remove(0).close();
+            waiter.join();
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserOrderDao;
+import com.cclu.midddleware.example.IUserOrderItemDao;
+import com.cclu.midddleware.example.UserOrder;
+import com.cclu.midddleware.example.UserOrderItem;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.dynamic.TableRewriter;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.scatter.ShardScatterTemplate;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/19 10:05
+ * @description 绑定表测试：user_order 与 user_order_item 同组，关联查询在同一分表后缀下执行
+ * @copyright ChangChengLu
+ */
+public class BindingTableTest {
+
+    private EmbeddedShardCluster cluster;
+
+    @Before
+    public void init() {
+        EmbeddedShardCluster.Builder builder = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .table("user_order", EmbeddedShardCluster.loadTemplate("sql/user_order.sql"))
+                .table("user_order_item", EmbeddedShardCluster.loadTemplate("sql/user_order_item.sql"))
+                .property("bindingTables", "user_order,user_order_item")
+                .mapper(IUserOrderDao.class)
+                .mapper(IUserOrderItemDao.class);
+        for (String table : new String[]{"user_order", "user_order_item"}) {
+            builder.property("tables." + table + ".tbCount", 2)
+                    .property("tables." + table + ".routerKey", "orderId");
+        }
+        cluster = builder.build().start();
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_join_binding_tables() {
+        IUserOrderDao userOrderDao = cluster.getMapper(IUserOrderDao.class);
+        IUserOrderItemDao userOrderItemDao = cluster.getMapper(IUserOrderItemDao.class);
+        for (int i = 0; i < 10; i++) {
+            String orderId = "o" + i;
+            UserOrder userOrder = new UserOrder();
+            userOrder.setUId("u" + i);
+            userOrder.setOrderId(orderId);
+            userOrder.setAmount(BigDecimal.TEN);
+            userOrderDao.insert(userOrder);
+            userOrderItemDao.insert(new UserOrderItem(orderId, "sku_a", 1));
+            userOrderItemDao.insert(new UserOrderItem(orderId, "sku_b", 2));
+
+            Assert.assertEquals(Arrays.asList("sku_a", "sku_b"), userOrderDao.queryOrderSkus(orderId));
+        }
+        Assert.assertEquals(20L, ((Number) cluster.getBean(ShardScatterTemplate.class)
+                .aggregate("select count(1) as cnt from user_order o join user_order_item i on o.order_id = i.order_id").get(0).get("cnt")).longValue());
+    }
+
+    @Test
+    public void test_keywords_that_are_not_tables() {
+        TableRewriter tableRewriter = new TableRewriter();
+        String upsert = "INSERT INTO user_order(order_id, amount) VALUES(?, ?) ON DUPLICATE KEY UPDATE amount = VALUES(amount)";
+        Assert.assertEquals(Collections.singleton("user_order"), tableRewriter.tables(upsert));
+        Assert.assertEquals("INSERT INTO user_order_01(order_id, amount) VALUES(?, ?) ON DUPLICATE KEY UPDATE amount = VALUES(amount)",
+                tableRewriter.rewrite(upsert, "01"));
+
+        String functions = "SELECT TRIM(BOTH ' ' FROM i.sku), EXTRACT(YEAR FROM o.create_time), o.last_update FROM user_order o "
+                + "JOIN user_order_item i ON o.order_id = i.order_id WHERE o.order_id IN (SELECT order_id FROM user_order WHERE amount > 0)";
+        Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("user_order", "user_order_item")), tableRewriter.tables(functions));
+        Assert.assertEquals("SELECT TRIM(BOTH ' ' FROM i.sku), EXTRACT(YEAR FROM o.create_time), o.last_update FROM user_order_01 o "
+                        + "JOIN user_order_item_01 i ON o.order_id = i.order_id WHERE o.order_id IN (SELECT order_id FROM user_order_01 WHERE amount > 0)",
+                tableRewriter.rewrite(functions, "01"));
+        Assert.assertEquals("user_order", tableRewriter.firstTable("SELECT EXTRACT(YEAR FROM create_time) FROM user_order"));
+    }
+
+    @Test
+    public void test_function_from_passes_binding_check() {
+        UserOrder userOrder = new UserOrder();
+        userOrder.setUId("u1");
+        userOrder.setOrderId("o1");
+        userOrder.setAmount(BigDecimal.ONE);
+        cluster.getMapper(IUserOrderDao.class).insert(userOrder);
+        cluster.getMapper(IUserOrderItemDao.class).insert(new UserOrderItem("o1", " sku_a ", 1));
+        List<Map<String, Object>> rows = cluster.getBean(ShardScatterTemplate.class).queryForList(
+                "select trim(both ' ' from i.sku) as sku, extract(year from o.create_time) as y from user_order o "
+                        + "join user_order_item i on o.order_id = i.order_id where o.order_id = ?", "o1");
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals("sku_a", rows.get(0).get("SKU"));
+    }
+
+    @Test
+    public void test_reject_unbound_tables() {
+        DBRouterRuleTable ruleTable = cluster.getBean(DBRouterRuleTable.class);
+        ruleTable.checkBinding(new LinkedHashSet<>(Arrays.asList("user_order", "user_order_item")));
+        try {
+            cluster.getBean(ShardScatterTemplate.class)
+                    .queryForList("select o.order_id from user_order o join user_strategy_export e on o.u_id = e.u_id");
+            Assert.fail("unbound sharded tables should be rejected");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("binding group"));
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IAwardDictDao;
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.example.UserStrategyExport;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.broadcast.BroadcastWriteException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/18 11:20
+ * @description 广播表测试：写入复制到全部数据源，事务中写入在提交后复制，读取及关联在本分库完成
+ * @copyright ChangChengLu
+ */
+public class BroadcastTableTest {
+
+    private EmbeddedShardCluster cluster;
+
+    private IAwardDictDao awardDictDao;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .table("award_dict", EmbeddedShardCluster.loadTemplate("sql/award_dict.sql"))
+                .property("broadcastTables", "award_dict")
+                .mapper(IUserStrategyExportDao.class)
+                .mapper(IAwardDictDao.class)
+                .build()
+                .start();
+        awardDictDao = cluster.getMapper(IAwardDictDao.class);
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_write_replicated_to_all_data_sources() {
+        Assert.assertEquals(1, awardDictDao.insert("1", "iPhone"));
+        Assert.assertEquals(1, awardDictDao.updateAwardName("1", "iPad"));
+        for (String dbKey : new String[]{"db00", "db01", "db02"}) {
+            Assert.assertEquals(1L, cluster.queryForLong(dbKey, "select count(1) from award_dict where award_name = 'iPad'"));
+        }
+    }
+
+    @Test
+    public void test_join_with_sharded_table_in_local_db() {
+        awardDictDao.insert("1", "iPhone");
+        IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+        for (int i = 0; i < 10; i++) {
+            UserStrategyExport export = EmbeddedShardClusterTest.newExport("u" + i);
+            userStrategyExportDao.insert(export);
+            Assert.assertEquals("iPhone", userStrategyExportDao.queryAwardNameByUId("u" + i));
+        }
+    }
+
+    @Test
+    public void test_rollback_not_replicated() {
+        TransactionTemplate transactionTemplate = cluster.getBean(TransactionTemplate.class);
+        transactionTemplate.execute(status -> {
+            awardDictDao.insert("3", "iWatch");
+            status.setRollbackOnly();
+            return null;
+        });
+        for (String dbKey : new String[]{"db00", "db01", "db02"}) {
+            Assert.assertEquals(0L, cluster.queryForLong(dbKey, "select count(1) from award_dict where award_id = '3'"));
+        }
+    }
+
+    @Test
+    public void test_replicated_after_commit() {
+        TransactionTemplate transactionTemplate = cluster.getBean(TransactionTemplate.class);
+        transactionTemplate.execute(status -> {
+            awardDictDao.insert("4", "iPod");
+            // 提交前不复制
+            Assert.assertEquals(0L, cluster.queryForLong("db01", "select count(1) from award_dict where award_id = '4'"));
+            return null;
+        });
+        for (String dbKey : new String[]{"db00", "db01", "db02"}) {
+            Assert.assertEquals(1L, cluster.queryForLong(dbKey, "select count(1) from award_dict where award_id = '4'"));
+        }
+    }
+
+    @Test
+    public void test_failure_after_commit_reported() {
+        cluster.execute("db02", "DROP TABLE award_dict");
+        TransactionTemplate transactionTemplate = cluster.getBean(TransactionTemplate.class);
+        try {
+            transactionTemplate.execute(status -> awardDictDao.insert("5", "iMac"));
+            Assert.fail("broadcast write to db02 should fail after commit");
+        } catch (BroadcastWriteException e) {
+            Assert.assertTrue(e.getFailures().containsKey("db02"));
+        }
+        Assert.assertEquals(1L, cluster.queryForLong("db00", "select count(1) from award_dict where award_id = '5'"));
+        Assert.assertEquals(1L, cluster.queryForLong("db01", "select count(1) from award_dict where award_id = '5'"));
+    }
+
+    @Test
+    public void test_write_failure_reported() {
+        cluster.execute("db02", "DROP TABLE award_dict");
+        try {
+            awardDictDao.insert("2", "iMac");
+            Assert.fail("broadcast write to db02 should fail");
+        } catch (RuntimeException e) {
+            // 经 mybatis、spring 异常转换包装
+            Throwable cause = e;
+            while (null != cause && !(cause instanceof BroadcastWriteException)) {
+                cause = cause.getCause();
+            }
+            Assert.assertNotNull(cause);
+            BroadcastWriteException broadcastWriteException = (BroadcastWriteException) cause;
+            Assert.assertEquals(1, broadcastWriteException.getFailures().size());
+            Assert.assertTrue(broadcastWriteException.getFailures().containsKey("db02"));
+        }
+        Assert.assertEquals(1L, cluster.queryForLong("db01", "select count(1) from award_dict where award_id = '2'"));
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.explain.DBRouterEndpoint;
+import com.cclu.middleware.db.router.explain.DBRouterExplainer;
+import com.cclu.middleware.db.router.explain.RouteExplain;
+import com.cclu.middleware.db.router.monitor.SlowStatement;
+import com.cclu.middleware.db.router.monitor.SlowStatementLog;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/30 10:10
+ * @description 路由解释、慢 SQL 日志及监控端点测试
+ * @copyright ChangChengLu
+ */
+public class DBRouterExplainerTest {
+
+    private static final String INSERT = IUserStrategyExportDao.class.getName() + ".insert";
+
+    private static final String QUERY = IUserStrategyExportDao.class.getName() + ".queryUserStrategyExportByUId";
+
+    private EmbeddedShardCluster cluster;
+
+    @Before
+    public void init() {
+        // 全局路由字段与 @DBRouter(key = "uId") 不同，用于校验解释时取方法上的路由字段
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .routerKey("userId")
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .standby("db01")
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_explain_mapper_method() {
+        String uId = userOfShard("01");
+        RouteExplain explain = cluster.getBean(DBRouterExplainer.class)
+                .explain(IUserStrategyExportDao.class, "insert", EmbeddedShardClusterTest.newExport(uId));
+
+        Assert.assertEquals(INSERT, explain.getStatementId());
+        Assert.assertEquals("uId", explain.getRouterKey());
+        Assert.assertEquals(uId, explain.getRouterKeyValue());
+        Assert.assertEquals("01", explain.getDbKey());
+        Assert.assertEquals("db01", explain.getDataSourceKey());
+        Assert.assertEquals(String.valueOf(cluster.getDataSource("db01")), explain.getDataSource());
+        Assert.assertTrue(explain.isSplitTable());
+        Assert.assertTrue(explain.getOriginalSql().startsWith("INSERT INTO user_strategy_export("));
+        Assert.assertTrue(explain.getSql().startsWith("INSERT INTO user_strategy_export_" + explain.getTbKey() + "("));
+        // 解释不影响当前线程的路由信息
+        Assert.assertNull(DBContextHolder.getDBKey());
+    }
+
+    @Test
+    public void test_explain_statement_uses_method_router_key() {
+        DBRouterExplainer explainer = cluster.getBean(DBRouterExplainer.class);
+        Assert.assertEquals("uId", explainer.explain(INSERT, "u1").getRouterKey());
+        Assert.assertEquals("userId", explainer.explain(QUERY, "u1").getRouterKey());
+
+        RouteExplain unrouted = explainer.explain(QUERY, null);
+        Assert.assertNull(unrouted.getDbKey());
+        Assert.assertEquals("db00", unrouted.getDataSourceKey());
+        Assert.assertTrue(unrouted.getSql().contains("FROM user_strategy_export WHERE"));
+    }
+
+    @Test
+    public void test_explain_reports_active_data_source() {
+        String uId = userOfShard("01");
+        DBRouterExplainer explainer = cluster.getBean(DBRouterExplainer.class);
+        Assert.assertTrue(cluster.getDynamicDataSource().failover("db01"));
+
+        RouteExplain explain = explainer.explain(QUERY, uId);
+        Assert.assertEquals("db01", explain.getDataSourceKey());
+        Assert.assertEquals(String.valueOf(cluster.getStandbyDataSource("db01")), explain.getDataSource());
+        Assert.assertTrue(explain.getSql().contains("FROM user_strategy_export_" + explain.getTbKey() + " WHERE"));
+    }
+
+    @Test
+    public void test_endpoint() {
+        cluster.getBean(SlowStatementLog.class).record(new SlowStatement(QUERY, "01", "002", "select 1", 120L, System.currentTimeMillis()));
+        DBRouterEndpoint endpoint = cluster.getBean(DBRouterEndpoint.class);
+
+        Map<String, Object> info = endpoint.info();
+        Assert.assertSame(cluster.getBean(DBRouterConfig.class), info.get("config"));
+        Assert.assertEquals(1, ((List<?>) info.get("slowStatements")).size());
+        Assert.assertTrue(info.containsKey("rewriteCaches"));
+
+        RouteExplain explain = endpoint.explain(INSERT, userOfShard("01"));
+        Assert.assertEquals("uId", explain.getRouterKey());
+        Assert.assertEquals("db01", explain.getDataSourceKey());
+    }
+
+    @Test
+    public void test_slow_log_threshold() {
+        DBRouterConfig config = new DBRouterConfig();
+        SlowStatementLog slowStatementLog = new SlowStatementLog(config);
+        Assert.assertFalse(slowStatementLog.isEnabled());
+        Assert.assertFalse(slowStatementLog.shouldRecord(10_000L));
+
+        config.setSlowSqlMillis(100L);
+        Assert.assertTrue(slowStatementLog.isEnabled());
+        Assert.assertFalse(slowStatementLog.shouldRecord(99L));
+        Assert.assertTrue(slowStatementLog.shouldRecord(100L));
+    }
+
+    @Test
+    public void test_slow_log_sampling() {
+        DBRouterConfig config = new DBRouterConfig();
+        config.setSlowSqlMillis(100L);
+        config.setSlowSqlSampleRate(0.0D);
+        SlowStatementLog slowStatementLog = new SlowStatementLog(config);
+        for (int i = 0; i < 100; i++) {
+            Assert.assertFalse(slowStatementLog.shouldRecord(500L));
+        }
+
+        config.setSlowSqlSampleRate(0.5D);
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            sampled += slowStatementLog.shouldRecord(500L) ? 1 : 0;
+        }
+        Assert.assertTrue("sampled " + sampled, sampled > 4_000 && sampled < 6_000);
+    }
+
+    @Test
+    public void test_slow_log_capacity() {
+        DBRouterConfig config = new DBRouterConfig();
+        config.setSlowSqlMillis(100L);
+        SlowStatementLog slowStatementLog = new SlowStatementLog(config, 3);
+        for (int i = 0; i < 5; i++) {
+            slowStatementLog.record(new SlowStatement("s" + i, "01", "000", "select " + i, 100L + i, i));
+        }
+        List<SlowStatement> recent = slowStatementLog.recent();
+        Assert.assertEquals(3, recent.size());
+        // 按时间倒序保留最近的记录
+        Assert.assertEquals("s4", recent.get(0).getStatementId());
+        Assert.assertEquals("s2", recent.get(2).getStatementId());
+    }
+
+    /**
+     * 找到一个路由到指定分库的用户ID
+     */
+    private String userOfShard(String dbKey) {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        for (int i = 0; ; i++) {
+            strategy.doRouter("u" + i);
+            String routed = DBContextHolder.getDBKey();
+            strategy.clear();
+            if (dbKey.equals(routed)) {
+                return "u" + i;
+            }
+        }
+    }
+
+}
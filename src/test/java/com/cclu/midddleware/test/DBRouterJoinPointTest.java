@@ -0,0 +1,40 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.UserStrategyExport;
+import com.cclu.middleware.db.router.DBRouterJoinPoint;
+import com.cclu.middleware.db.router.IDBRouterKey;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/25 10:30
+ * @description 路由字段取值测试：IDBRouterKey 直接取值，普通对象反射读取字段，多参数时跳过不含路由字段的参数
+ * @copyright ChangChengLu
+ */
+public class DBRouterJoinPointTest {
+
+    private final DBRouterJoinPoint dbRouterJoinPoint = new DBRouterJoinPoint(null, null, null, null);
+
+    @Test
+    public void test_router_key_accessor() {
+        IDBRouterKey arg = routerKey -> "uId".equals(routerKey) ? "u1" : null;
+        Assert.assertEquals("u1", dbRouterJoinPoint.getAttrValue("uId", new Object[]{arg}));
+    }
+
+    @Test
+    public void test_field_value() {
+        UserStrategyExport export = EmbeddedShardClusterTest.newExport("u2");
+        Assert.assertEquals("u2", dbRouterJoinPoint.getAttrValue("uId", new Object[]{export}));
+        // 字段已缓存，再次取值结果一致
+        Assert.assertEquals("u3", dbRouterJoinPoint.getAttrValue("uId", new Object[]{EmbeddedShardClusterTest.newExport("u3")}));
+    }
+
+    @Test
+    public void test_skip_args_without_router_key() {
+        UserStrategyExport export = EmbeddedShardClusterTest.newExport("u4");
+        Assert.assertEquals("u4", dbRouterJoinPoint.getAttrValue("uId", new Object[]{100L, null, export}));
+        Assert.assertEquals("null", dbRouterJoinPoint.getAttrValue("uId", new Object[]{100L, 200L}));
+    }
+
+}
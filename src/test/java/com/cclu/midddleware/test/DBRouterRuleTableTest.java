@@ -0,0 +1,130 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserOrderDao;
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.example.UserOrder;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.config.DBRouterProperties;
+import com.cclu.middleware.db.router.rule.DBRouterRuleTable;
+import com.cclu.middleware.db.router.rule.TableRule;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategyFactory;
+import com.cclu.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/16 10:40
+ * @description 逻辑表分片规则测试：user_order 按 orderId 分 2 表，user_strategy_export 沿用全局规则
+ * @copyright ChangChengLu
+ */
+public class DBRouterRuleTableTest {
+
+    private EmbeddedShardCluster cluster;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .table("user_order", EmbeddedShardCluster.loadTemplate("sql/user_order.sql"))
+                .property("tables.user_order.tbCount", 2)
+                .property("tables.user_order.tbKeyFormat", "%02d")
+                .property("tables.user_order.routerKey", "orderId")
+                .mapper(IUserStrategyExportDao.class)
+                .mapper(IUserOrderDao.class)
+                .build()
+                .start();
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_table_rule_resolved() {
+        DBRouterRuleTable ruleTable = cluster.getBean(DBRouterRuleTable.class);
+        TableRule orderRule = ruleTable.ruleOfMapper(IUserOrderDao.class).getTableRule();
+        Assert.assertEquals("user_order", orderRule.getLogicTable());
+        Assert.assertEquals(2, orderRule.getConfig().getTbCount());
+        Assert.assertEquals("orderId", orderRule.getConfig().getRouterKey());
+        Assert.assertSame(ruleTable.getDefaultRule(), ruleTable.ruleOfMapper(IUserStrategyExportDao.class).getTableRule());
+    }
+
+    @Test
+    public void test_typed_table_rule_properties() {
+        DBRouterProperties.TableRuleProperties orderProps = cluster.getBean(DBRouterProperties.class).getTables().get("user_order");
+        Assert.assertEquals(Integer.valueOf(2), orderProps.getTbCount());
+        Assert.assertNull(orderProps.getDbCount());
+        Assert.assertEquals("hash", orderProps.getStrategy());
+    }
+
+    @Test
+    public void test_strategy_by_factory_name() {
+        cluster.close();
+        List<IDBRouterStrategy> created = new ArrayList<>();
+        IDBRouterStrategyFactory factory = new IDBRouterStrategyFactory() {
+            @Override
+            public String name() {
+                return "order";
+            }
+
+            @Override
+            public IDBRouterStrategy create(DBRouterConfig config) {
+                IDBRouterStrategy strategy = new DBRouterStrategyHashCode(config);
+                created.add(strategy);
+                return strategy;
+            }
+        };
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_order", EmbeddedShardCluster.loadTemplate("sql/user_order.sql"))
+                .property("tables.user_order.tbCount", 2)
+                .property("tables.user_order.routerKey", "orderId")
+                .property("tables.user_order.strategy", "order")
+                .bean(factory)
+                .mapper(IUserOrderDao.class)
+                .build()
+                .start();
+        TableRule orderRule = cluster.getBean(DBRouterRuleTable.class).ruleOf("user_order");
+        Assert.assertEquals(1, created.size());
+        Assert.assertSame(created.get(0), orderRule.getStrategy());
+        Assert.assertEquals(2, orderRule.getConfig().getTbCount());
+    }
+
+    @Test
+    public void test_insert_and_query_by_table_rule() {
+        IUserOrderDao userOrderDao = cluster.getMapper(IUserOrderDao.class);
+        TableRule orderRule = cluster.getBean(DBRouterRuleTable.class).ruleOf("user_order");
+        for (int i = 0; i < 20; i++) {
+            String orderId = "o" + i;
+            UserOrder userOrder = new UserOrder();
+            userOrder.setUId("u" + i);
+            userOrder.setOrderId(orderId);
+            userOrder.setAmount(new BigDecimal("9.90"));
+            userOrderDao.insert(userOrder);
+
+            Assert.assertEquals("u" + i, userOrderDao.queryUserOrderByOrderId(orderId).getUId());
+
+            orderRule.getStrategy().doRouter(orderId);
+            String dbKey = "db" + DBContextHolder.getDBKey();
+            String table = "user_order_" + DBContextHolder.getTBKey();
+            orderRule.getStrategy().clear();
+            Assert.assertEquals(2, table.length() - "user_order_".length());
+            Assert.assertEquals(1L, cluster.queryForLong(dbKey, "select count(1) from " + table + " where order_id = '" + orderId + "'"));
+        }
+    }
+
+}
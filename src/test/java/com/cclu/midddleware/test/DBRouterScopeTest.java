@@ -0,0 +1,140 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/22 10:40
+ * @description 路由作用域测试：嵌套路由恢复外层路由，固定连接的作用域内每个分库只借出一个连接
+ * @copyright ChangChengLu
+ */
+public class DBRouterScopeTest {
+
+    private EmbeddedShardCluster cluster;
+
+    private IUserStrategyExportDao userStrategyExportDao;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+        userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_nested_route_restored() {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        try (DBRouterScope outer = DBRouterScope.open("02", "003")) {
+            // 内层 @DBRouter 调用按自己的路由执行，结束后恢复外层路由
+            userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport("u1"));
+            Assert.assertEquals("02", DBContextHolder.getDBKey());
+            Assert.assertEquals("003", DBContextHolder.getTBKey());
+            try (DBRouterScope inner = DBRouterScope.open(strategy, "u1")) {
+                Assert.assertEquals(2, DBRouterScope.depth());
+            }
+            Assert.assertEquals("003", DBContextHolder.getTBKey());
+        }
+        Assert.assertNull(DBContextHolder.getDBKey());
+        Assert.assertNull(DBContextHolder.getTBKey());
+        Assert.assertEquals(0, DBRouterScope.depth());
+        Assert.assertNotNull(userStrategyExportDao.queryUserStrategyExportByUId("u1"));
+    }
+
+    @Test
+    public void test_pinned_connection_reused() throws SQLException {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        String uId = "u1";
+        strategy.doRouter(uId);
+        HikariDataSource pool = (HikariDataSource) cluster.getDataSource("db" + DBContextHolder.getDBKey());
+        strategy.clear();
+
+        try (DBRouterScope scope = DBRouterScope.pinned(strategy, uId)) {
+            userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport(uId));
+            Assert.assertNotNull(userStrategyExportDao.queryUserStrategyExportByUId(uId));
+            Assert.assertEquals(1, pool.getHikariPoolMXBean().getActiveConnections());
+            try (Connection first = cluster.getDynamicDataSource().getConnection();
+                 Connection second = cluster.getDynamicDataSource().getConnection()) {
+                Assert.assertSame(((ConnectionProxy) first).getTargetConnection(), ((ConnectionProxy) second).getTargetConnection());
+            }
+        }
+        Assert.assertEquals(0, pool.getHikariPoolMXBean().getActiveConnections());
+    }
+
+    @Test
+    public void test_pinned_connection_follows_target() throws SQLException {
+        EmbeddedShardCluster standbyCluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .standby("db01")
+                .build()
+                .start();
+        try (DBRouterScope scope = DBRouterScope.open("01", "000"); DBRouterScope pinned = DBRouterScope.pinned()) {
+            DataSource dynamicDataSource = standbyCluster.getDynamicDataSource();
+            Object primary = targetOf(dynamicDataSource);
+            Assert.assertSame(primary, targetOf(dynamicDataSource));
+            // 备库读不复用主库的固定连接
+            DBContextHolder.setReplica(true);
+            try {
+                Assert.assertNotSame(primary, targetOf(dynamicDataSource));
+            } finally {
+                DBContextHolder.clearReplica();
+            }
+            // 故障转移后不再复用故障主库的固定连接
+            Assert.assertTrue(standbyCluster.getDynamicDataSource().failover("db01"));
+            Object standby = targetOf(dynamicDataSource);
+            Assert.assertNotSame(primary, standby);
+            Assert.assertTrue(url(dynamicDataSource).endsWith("_db01_standby"));
+        } finally {
+            standbyCluster.close();
+        }
+    }
+
+    private static Object targetOf(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return ((ConnectionProxy) connection).getTargetConnection();
+        }
+    }
+
+    private static String url(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return connection.getMetaData().getURL();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_close_out_of_order() {
+        DBRouterScope outer = DBRouterScope.open("01", "000");
+        DBRouterScope inner = DBRouterScope.open("02", "001");
+        try {
+            outer.close();
+        } finally {
+            inner.close();
+            outer.close();
+        }
+    }
+
+}
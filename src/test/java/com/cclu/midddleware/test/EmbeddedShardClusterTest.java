@@ -0,0 +1,99 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.example.UserStrategyExport;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.midddleware.support.KeyDistribution;
+import com.cclu.midddleware.support.LoadReport;
+import com.cclu.midddleware.support.ShardLoadGenerator;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/05 16:05
+ * @description 基于内存 H2 分片的路由测试
+ * @copyright ChangChengLu
+ */
+@Slf4j
+public class EmbeddedShardClusterTest {
+
+    private EmbeddedShardCluster cluster;
+
+    private IUserStrategyExportDao userStrategyExportDao;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+        userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_insert_and_query_routed() {
+        for (int i = 0; i < 20; i++) {
+            String uId = "u" + i;
+            userStrategyExportDao.insert(newExport(uId));
+
+            UserStrategyExport export = userStrategyExportDao.queryUserStrategyExportByUId(uId);
+            Assert.assertNotNull(export);
+            Assert.assertEquals(uId, export.getUId());
+
+            IDBRouterStrategy strategy = cluster.getStrategy();
+            strategy.doRouter(uId);
+            String dbKey = "db" + DBContextHolder.getDBKey();
+            String table = "user_strategy_export_" + DBContextHolder.getTBKey();
+            strategy.clear();
+            Assert.assertEquals(1L, cluster.queryForLong(dbKey, "select count(1) from " + table + " where u_id = '" + uId + "'"));
+        }
+        Assert.assertEquals(0L, cluster.queryForLong("db00", "select count(1) from user_strategy_export"));
+    }
+
+    @Test
+    public void test_load_generator() throws InterruptedException {
+        LoadReport report = ShardLoadGenerator.builder()
+                .threads(4)
+                .operations(2000)
+                .keyDistribution(KeyDistribution.zipf("u", 1000, 1.0))
+                .strategy(cluster.getStrategy())
+                .action(uId -> userStrategyExportDao.queryUserStrategyExportByUId(uId))
+                .build()
+                .run();
+        log.info("压测结果\n{}", report);
+        Assert.assertEquals(2000L, report.totalOperations());
+        Assert.assertEquals(0L, report.totalErrors());
+    }
+
+    static UserStrategyExport newExport(String uId) {
+        UserStrategyExport export = new UserStrategyExport();
+        export.setUId(uId);
+        export.setActivityId(100001L);
+        export.setOrderId(System.nanoTime());
+        export.setStrategyId(10001L);
+        export.setStrategyMode(1);
+        export.setGrantType(1);
+        export.setGrantState(0);
+        export.setAwardId("1");
+        export.setAwardType(1);
+        export.setAwardName("award");
+        export.setAwardContent("content");
+        export.setUuid(uId + "_" + export.getOrderId());
+        return export;
+    }
+
+}
@@ -0,0 +1,150 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.example.UserStrategyExport;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.gsi.GlobalIndexes;
+import com.cclu.middleware.db.router.scatter.Shard;
+import com.cclu.middleware.db.router.scatter.ShardScatterTemplate;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/26 14:10
+ * @description 全局二级索引测试：按非路由列 order_id 查询时先点查索引分片，再只查询数据所在分片
+ * @copyright ChangChengLu
+ */
+public class GlobalIndexTest {
+
+    private static final String LOOKUP_SQL = "select u_id, order_id from user_strategy_export where order_id = ?";
+
+    private EmbeddedShardCluster cluster;
+
+    private void start(String mode) {
+        start(mode, "order_id");
+    }
+
+    private void start(String mode, String... columns) {
+        EmbeddedShardCluster.Builder builder = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"));
+        for (String column : columns) {
+            builder.table("user_strategy_export_gsi_" + column, EmbeddedShardCluster.loadTemplate("sql/global_index.sql"));
+        }
+        cluster = builder
+                .property("globalIndexes.user_strategy_export.columns", String.join(",", columns))
+                .property("globalIndexes.user_strategy_export.mode", mode)
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_sync_index_lookup() {
+        start("sync");
+        List<UserStrategyExport> exports = insert(20);
+        GlobalIndexes globalIndexes = cluster.getBean(GlobalIndexes.class);
+        Assert.assertEquals(20, globalIndexes.getIndexWrites());
+        assertLookups(exports);
+        Assert.assertEquals(21, globalIndexes.getLookups());
+    }
+
+    @Test
+    public void test_async_index_lookup() {
+        start("async");
+        List<UserStrategyExport> exports = insert(20);
+        GlobalIndexes globalIndexes = cluster.getBean(GlobalIndexes.class);
+        globalIndexes.flushAll();
+        Assert.assertEquals(20, globalIndexes.getIndexWrites());
+        assertLookups(exports);
+    }
+
+    @Test
+    public void test_rebuild_index() throws Exception {
+        start("sync");
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        strategy.doRouter("u_jdbc");
+        String dbKey = "db" + DBContextHolder.getDBKey();
+        String table = "user_strategy_export_" + DBContextHolder.getTBKey();
+        strategy.clear();
+        cluster.execute(dbKey, "insert into " + table + "(u_id, order_id) values('u_jdbc', 42)");
+        ShardScatterTemplate shardScatterTemplate = cluster.getBean(ShardScatterTemplate.class);
+        Assert.assertTrue(shardScatterTemplate.lookup(LOOKUP_SQL, "order_id", 42L).isEmpty());
+
+        cluster.getBean(GlobalIndexes.class).rebuild("user_strategy_export");
+        List<Map<String, Object>> rows = shardScatterTemplate.lookup(LOOKUP_SQL, "order_id", 42L);
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals("u_jdbc", rows.get(0).get("U_ID"));
+    }
+
+    @Test
+    public void test_normalised_index_value() throws Exception {
+        start("sync", "order_id", "uuid");
+        UserStrategyExport export = EmbeddedShardClusterTest.newExport("u_mixed");
+        export.setUuid("UUID_Mixed");
+        export.setOrderId(4200L);
+        cluster.getMapper(IUserStrategyExportDao.class).insert(export);
+        Shard shard = shardOf("u_mixed");
+
+        // 大小写、末尾空格、数值精度不同但数据库比较相等的值定位到同一数据分片
+        GlobalIndexes globalIndexes = cluster.getBean(GlobalIndexes.class);
+        Assert.assertEquals(Collections.singletonList(shard), globalIndexes.shards("user_strategy_export", "uuid", "uuid_mixed "));
+        Assert.assertEquals(Collections.singletonList(shard), globalIndexes.shards("user_strategy_export", "order_id", new BigDecimal("4200.00")));
+        Assert.assertEquals(Collections.singletonList(shard), globalIndexes.shards("user_strategy_export", "order_id", "4200"));
+
+        // 补建读到的列值同样规范化，不产生重复的索引行
+        globalIndexes.rebuild("user_strategy_export");
+        Assert.assertEquals(Collections.singletonList(shard), globalIndexes.shards("user_strategy_export", "uuid", "Uuid_Mixed"));
+        Shard indexShard = shardOf("uuid_mixed");
+        Assert.assertEquals(1L, cluster.queryForLong("db" + indexShard.getDbKey(), "select count(*) from user_strategy_export_gsi_uuid_" + indexShard.getTbKey()));
+    }
+
+    /**
+     * 按逻辑表的路由策略计算值所在分片
+     */
+    private Shard shardOf(String value) {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        strategy.doRouter(value);
+        Shard shard = new Shard(DBContextHolder.getDBKey(), DBContextHolder.getTBKey());
+        strategy.clear();
+        return shard;
+    }
+
+    private List<UserStrategyExport> insert(int count) {
+        IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+        List<UserStrategyExport> exports = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            UserStrategyExport export = EmbeddedShardClusterTest.newExport("u" + i);
+            userStrategyExportDao.insert(export);
+            exports.add(export);
+        }
+        return exports;
+    }
+
+    private void assertLookups(List<UserStrategyExport> exports) {
+        ShardScatterTemplate shardScatterTemplate = cluster.getBean(ShardScatterTemplate.class);
+        for (UserStrategyExport export : exports) {
+            List<Map<String, Object>> rows = shardScatterTemplate.lookup(LOOKUP_SQL, "order_id", export.getOrderId());
+            Assert.assertEquals(1, rows.size());
+            Assert.assertEquals(export.getUId(), rows.get(0).get("U_ID"));
+        }
+        Assert.assertFalse(shardScatterTemplate.exists("user_strategy_export", "order_id", -1L));
+    }
+
+}
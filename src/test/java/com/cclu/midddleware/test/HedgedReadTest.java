@@ -0,0 +1,132 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.annotation.DBRouter;
+import com.cclu.middleware.db.router.annotation.DBRouterHedgedRead;
+import com.cclu.middleware.db.router.hedge.HedgedReader;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLTimeoutException;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/24 11:00
+ * @description 对冲读及分库语句超时测试：db01 主库变慢时由备库返回结果，超过分库语句超时的查询被取消
+ * @copyright ChangChengLu
+ */
+public class HedgedReadTest {
+
+    private static volatile boolean slow;
+
+    private EmbeddedShardCluster cluster;
+
+    private IHedgeProbeDao hedgeProbeDao;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .standby("db01")
+                .property("hedgedRead.enabled", true)
+                .property("hedgedRead.minSamples", 5)
+                // 窗口较小时 p95 频繁重算，预热后窗口中只剩正常查询的耗时，不受首次查询冷启动影响
+                .property("hedgedRead.windowSize", 16)
+                // 对冲等待时间下限远高于正常查询耗时，负载较高时正常查询也不会触发对冲
+                .property("hedgedRead.minDelayMillis", 500)
+                .property("db01.statementTimeoutSeconds", 1)
+                .mapper(IHedgeProbeDao.class)
+                .build()
+                .start();
+        cluster.execute("db01", "CREATE ALIAS PROBE FOR \"" + HedgedReadTest.class.getName() + ".primaryProbe\"");
+        cluster.execute(cluster.getStandbyDataSource("db01"), "CREATE ALIAS PROBE FOR \"" + HedgedReadTest.class.getName() + ".standbyProbe\"");
+        hedgeProbeDao = cluster.getMapper(IHedgeProbeDao.class);
+        slow = false;
+    }
+
+    @After
+    public void destroy() {
+        slow = false;
+        cluster.close();
+    }
+
+    @Test
+    public void test_hedged_read_served_by_standby() {
+        String uId = uIdOnDb01();
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals("primary", hedgeProbeDao.probe(uId));
+        }
+
+        // 主库耗时超过对冲等待时间，结果由备库返回
+        HedgedReader hedgedReader = cluster.getBean(HedgedReader.class);
+        long hedgeWins = hedgedReader.getHedgeWins();
+        slow = true;
+        Assert.assertEquals("standby", hedgeProbeDao.probe(uId));
+        Assert.assertEquals(hedgeWins + 1, hedgedReader.getHedgeWins());
+
+        slow = false;
+        Assert.assertEquals("primary", hedgeProbeDao.probe(uId));
+    }
+
+    @Test
+    public void test_statement_timeout() {
+        String uId = uIdOnDb01();
+        long start = System.currentTimeMillis();
+        try {
+            hedgeProbeDao.scan(uId);
+            Assert.fail("scan should exceed statement timeout of db01");
+        } catch (RuntimeException e) {
+            Throwable cause = e;
+            while (null != cause && !(cause instanceof SQLTimeoutException)) {
+                cause = cause.getCause();
+            }
+            Assert.assertNotNull(cause);
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    public static String primaryProbe(String uId) throws InterruptedException {
+        if (slow) {
+            Thread.sleep(1500);
+        }
+        return "primary";
+    }
+
+    public static String standbyProbe(String uId) {
+        return "standby";
+    }
+
+    private String uIdOnDb01() {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        for (int i = 0; ; i++) {
+            strategy.doRouter("u" + i);
+            String dbKey = DBContextHolder.getDBKey();
+            strategy.clear();
+            if ("01".equals(dbKey)) {
+                return "u" + i;
+            }
+        }
+    }
+
+    @Mapper
+    public interface IHedgeProbeDao {
+
+        @DBRouter
+        @DBRouterHedgedRead
+        @Select("SELECT PROBE(#{uId})")
+        String probe(String uId);
+
+        @DBRouter
+        @Select("SELECT COUNT(*) FROM SYSTEM_RANGE(1, 2000000000) WHERE MOD(X, 7) = LENGTH(#{uId})")
+        long scan(String uId);
+
+    }
+
+}
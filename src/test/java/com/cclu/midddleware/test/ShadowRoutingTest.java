@@ -0,0 +1,118 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IAwardDictDao;
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
+import com.cclu.middleware.db.router.scatter.ShardScatterTemplate;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/23 10:15
+ * @description 影子路由测试：影子作用域内的读写落到影子库或影子表，生产表不受影响
+ * @copyright ChangChengLu
+ */
+public class ShadowRoutingTest {
+
+    private EmbeddedShardCluster cluster;
+
+    @After
+    public void destroy() {
+        if (null != cluster) {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void test_shadow_data_source() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .shadow("db01")
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+        IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+        String uId = uIdOn("01");
+
+        try (DBRouterScope ignored = DBRouterScope.shadow()) {
+            userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport(uId));
+            Assert.assertNotNull(userStrategyExportDao.queryUserStrategyExportByUId(uId));
+        }
+        Assert.assertFalse(DBContextHolder.isShadow());
+        Assert.assertEquals(1L, count(cluster.getShadowDataSource("db01")));
+        Assert.assertEquals(0L, count(cluster.getDataSource("db01")));
+        Assert.assertNull(userStrategyExportDao.queryUserStrategyExportByUId(uId));
+
+        // db02 未配置影子库也未配置影子表后缀，拒绝执行
+        String uIdOnDb02 = uIdOn("02");
+        try (DBRouterScope ignored = DBRouterScope.shadow()) {
+            userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport(uIdOnDb02));
+            Assert.fail("shadow request without shadow target should fail");
+        } catch (RuntimeException e) {
+            Assert.assertEquals(0L, count(cluster.getDataSource("db02")));
+        }
+    }
+
+    @Test
+    public void test_shadow_table_suffix() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .table("award_dict", EmbeddedShardCluster.loadTemplate("sql/award_dict.sql"))
+                .property("broadcastTables", "award_dict")
+                .property("shadowTableSuffix", "_shadow")
+                .mapper(IUserStrategyExportDao.class)
+                .mapper(IAwardDictDao.class)
+                .build()
+                .start();
+        IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+        IAwardDictDao awardDictDao = cluster.getMapper(IAwardDictDao.class);
+        ShardScatterTemplate shardScatterTemplate = cluster.getBean(ShardScatterTemplate.class);
+
+        try (DBRouterScope ignored = DBRouterScope.shadow()) {
+            awardDictDao.insert("1", "iPhone");
+            for (int i = 0; i < 10; i++) {
+                userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport("u" + i));
+            }
+            Assert.assertEquals("iPhone", userStrategyExportDao.queryAwardNameByUId("u0"));
+            Assert.assertEquals(10, shardScatterTemplate.queryForList("SELECT u_id FROM user_strategy_export").size());
+        }
+        Assert.assertNull(awardDictDao.queryAwardName("1"));
+        Assert.assertTrue(shardScatterTemplate.queryForList("SELECT u_id FROM user_strategy_export").isEmpty());
+        for (String dbKey : new String[]{"db00", "db01", "db02"}) {
+            Assert.assertEquals(1L, cluster.queryForLong(dbKey, "select count(1) from award_dict_shadow"));
+            Assert.assertEquals(0L, cluster.queryForLong(dbKey, "select count(1) from award_dict"));
+        }
+    }
+
+    private String uIdOn(String dbKey) {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        for (int i = 0; ; i++) {
+            strategy.doRouter("u" + i);
+            String routed = DBContextHolder.getDBKey();
+            strategy.clear();
+            if (dbKey.equals(routed)) {
+                return "u" + i;
+            }
+        }
+    }
+
+    private long count(DataSource dataSource) {
+        long count = 0;
+        for (int tbIdx = 0; tbIdx < cluster.getTbCount(); tbIdx++) {
+            count += cluster.queryForLong(dataSource, "select count(1) from user_strategy_export_" + String.format("%03d", tbIdx));
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.example.UserStrategyExport;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.bloom.OffHeapBloomFilter;
+import com.cclu.middleware.db.router.bloom.ShardBloomFilters;
+import com.cclu.middleware.db.router.scatter.Shard;
+import com.cclu.middleware.db.router.scatter.ShardScatterTemplate;
+import com.cclu.middleware.db.router.util.ColumnValues;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/21 14:20
+ * @description 分片布隆过滤器测试：按非路由列 uuid 查询时只访问可能包含该值的分片
+ * @copyright ChangChengLu
+ */
+public class ShardBloomFiltersTest {
+
+    private EmbeddedShardCluster cluster;
+
+    private ShardBloomFilters shardBloomFilters;
+
+    private ShardScatterTemplate shardScatterTemplate;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .property("bloomFilters.user_strategy_export.columns", "uuid")
+                .property("bloomFilters.user_strategy_export.expectedInsertions", 1000)
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+        shardBloomFilters = cluster.getBean(ShardBloomFilters.class);
+        shardScatterTemplate = cluster.getBean(ShardScatterTemplate.class);
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_prune_shards_on_lookup() {
+        shardBloomFilters.rebuild();
+        Assert.assertTrue(shardBloomFilters.isReady("user_strategy_export"));
+        IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+        List<String> uuids = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            UserStrategyExport export = EmbeddedShardClusterTest.newExport("u" + i);
+            userStrategyExportDao.insert(export);
+            uuids.add(export.getUuid());
+        }
+        for (String uuid : uuids) {
+            Assert.assertEquals(1, shardScatterTemplate.lookup("select u_id from user_strategy_export where uuid = ?", "uuid", uuid).size());
+        }
+        Assert.assertFalse(shardScatterTemplate.exists("user_strategy_export", "uuid", "not_exists"));
+        // 8 个分片，命中的查询至多访问少量误判分片
+        Assert.assertEquals(51, shardBloomFilters.getLookups());
+        Assert.assertTrue(shardBloomFilters.getPrunedShards() >= 51 * 6);
+    }
+
+    @Test
+    public void test_rebuild_from_scan() {
+        cluster.execute("db01", "insert into user_strategy_export_002(u_id, uuid) values('u_jdbc', 'uuid_jdbc')");
+        shardBloomFilters.rebuild();
+        Assert.assertTrue(shardScatterTemplate.exists("user_strategy_export", "uuid", "uuid_jdbc"));
+        Assert.assertFalse(shardScatterTemplate.exists("user_strategy_export", "uuid", "uuid_other"));
+    }
+
+    @Test
+    public void test_normalised_lookup() {
+        shardBloomFilters.rebuild();
+        cluster.execute("db01", "insert into user_strategy_export_002(u_id, uuid) values('u_scan', 'UUID_Scan')");
+        UserStrategyExport export = EmbeddedShardClusterTest.newExport("u_mixed");
+        export.setUuid("UUID_Mixed");
+        cluster.getMapper(IUserStrategyExportDao.class).insert(export);
+        List<Shard> shards = shardScatterTemplate.shards("user_strategy_export");
+        // 插入后维护的值按 _ci 排序规则比较：大小写、末尾空格不同仍命中
+        Assert.assertEquals(1, shardBloomFilters.prune("user_strategy_export", "uuid", "uuid_mixed ", shards).size());
+        // 全量重建得到的值同样规范化
+        shardBloomFilters.rebuild();
+        Assert.assertTrue(shardBloomFilters.prune("user_strategy_export", "uuid", "uuid_scan", shards).contains(new Shard("01", "002")));
+        Assert.assertTrue(shardBloomFilters.prune("user_strategy_export", "uuid", "Uuid_Mixed", shards).size() >= 1);
+    }
+
+    @Test
+    public void test_normalised_values() {
+        OffHeapBloomFilter filter = new OffHeapBloomFilter(100, 0.01);
+        filter.put(new BigDecimal("1.50"));
+        filter.put(Timestamp.valueOf("2023-12-30 10:15:30"));
+        filter.put(42);
+        filter.put("Crème");
+        Assert.assertTrue(filter.mightContain(1.5D));
+        Assert.assertTrue(filter.mightContain("1.5"));
+        Assert.assertTrue(filter.mightContain(LocalDateTime.of(2023, 12, 30, 10, 15, 30)));
+        Assert.assertTrue(filter.mightContain("2023-12-30 10:15:30"));
+        Assert.assertTrue(filter.mightContain(42L));
+        Assert.assertTrue(filter.mightContain(new BigDecimal("42.000")));
+        Assert.assertTrue(filter.mightContain("CREME"));
+
+        Assert.assertEquals(ColumnValues.normalize(java.sql.Date.valueOf("2023-12-30")), ColumnValues.normalize(LocalDate.of(2023, 12, 30)));
+        Assert.assertEquals(ColumnValues.normalize(true), ColumnValues.normalize(1));
+        Assert.assertNotEquals(ColumnValues.normalize("1.5"), ColumnValues.normalize("1.51"));
+    }
+
+    @Test
+    public void test_false_positive_rate() {
+        OffHeapBloomFilter filter = new OffHeapBloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put("k" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(filter.mightContain("k" + i));
+            if (filter.mightContain("x" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 300);
+    }
+
+}
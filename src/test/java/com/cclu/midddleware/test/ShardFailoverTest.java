@@ -0,0 +1,134 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.dynamic.DynamicDataSource;
+import com.cclu.middleware.db.router.health.ShardHealthChecker;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/20 10:40
+ * @description 分库故障转移测试：db01 主库切换为独占模式拒绝新连接模拟宕机，流量切到备库，恢复后切回；主库连接池占满不触发切换
+ * @copyright ChangChengLu
+ */
+public class ShardFailoverTest {
+
+    private EmbeddedShardCluster cluster;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .standby("db01")
+                .property("db01.pool.maximum-pool-size", 2)
+                .property("db01.pool.connection-timeout", 250)
+                .property("healthCheck.enabled", true)
+                .property("healthCheck.intervalMillis", 50)
+                .property("healthCheck.timeoutMillis", 500)
+                .property("healthCheck.failureThreshold", 2)
+                .property("healthCheck.recoveryThreshold", 3)
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_failover_and_failback() throws Exception {
+        IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+        DynamicDataSource dynamicDataSource = cluster.getDynamicDataSource();
+        HikariDataSource primary = (HikariDataSource) cluster.getDataSource("db01");
+        String uId = uIdOnDb01();
+
+        // 独占模式下主库拒绝新连接
+        try (Connection exclusive = DriverManager.getConnection(cluster.url("db01"), "sa", "sa")) {
+            exclusive.createStatement().execute("SET EXCLUSIVE 1");
+            Assert.assertTrue(await(() -> dynamicDataSource.isFailedOver("db01")));
+            Assert.assertEquals("FAILOVER", cluster.getBean(ShardHealthChecker.class).status().get("db01"));
+
+            userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport(uId));
+            Assert.assertNotNull(userStrategyExportDao.queryUserStrategyExportByUId(uId));
+            Assert.assertEquals(1L, count(cluster.getStandbyDataSource("db01")));
+
+            exclusive.createStatement().execute("SET EXCLUSIVE 0");
+        }
+        Assert.assertTrue(await(() -> !dynamicDataSource.isFailedOver("db01")));
+        Assert.assertNull(userStrategyExportDao.queryUserStrategyExportByUId(uId));
+        userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport(uId));
+        Assert.assertEquals(1L, count(primary));
+    }
+
+    @Test
+    public void test_saturated_pool_is_not_failure() throws Exception {
+        HikariDataSource primary = (HikariDataSource) cluster.getDataSource("db01");
+        ShardHealthChecker shardHealthChecker = cluster.getBean(ShardHealthChecker.class);
+        List<Connection> held = new ArrayList<>();
+        try {
+            // 占满主库连接池，业务获取连接超时，但主库本身健康
+            for (int i = 0; i < primary.getMaximumPoolSize(); i++) {
+                held.add(primary.getConnection());
+            }
+            for (int i = 0; i < 5; i++) {
+                shardHealthChecker.check();
+            }
+            Assert.assertFalse(cluster.getDynamicDataSource().isFailedOver("db01"));
+            Assert.assertEquals("UP", shardHealthChecker.status().get("db01"));
+        } finally {
+            for (Connection connection : held) {
+                connection.close();
+            }
+        }
+    }
+
+    private String uIdOnDb01() {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        for (int i = 0; ; i++) {
+            strategy.doRouter("u" + i);
+            String dbKey = DBContextHolder.getDBKey();
+            strategy.clear();
+            if ("01".equals(dbKey)) {
+                return "u" + i;
+            }
+        }
+    }
+
+    private long count(DataSource dataSource) {
+        long count = 0;
+        for (int tbIdx = 0; tbIdx < cluster.getTbCount(); tbIdx++) {
+            count += cluster.queryForLong(dataSource, "select count(1) from user_strategy_export_" + String.format("%03d", tbIdx));
+        }
+        return count;
+    }
+
+    private boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,228 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.example.UserStrategyExport;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.scatter.SeekCursor;
+import com.cclu.middleware.db.router.scatter.Shard;
+import com.cclu.middleware.db.router.scatter.ShardPage;
+import com.cclu.middleware.db.router.scatter.ShardScatterTemplate;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/08 14:20
+ * @description 跨分片查询测试
+ * @copyright ChangChengLu
+ */
+public class ShardScatterTemplateTest {
+
+    private EmbeddedShardCluster cluster;
+
+    private ShardScatterTemplate shardScatterTemplate;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+        shardScatterTemplate = cluster.getBean(ShardScatterTemplate.class);
+        IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+        // activityId 取 1~3，awardType 取 i % 5，orderId 取 i
+        for (int i = 0; i < 60; i++) {
+            UserStrategyExport export = EmbeddedShardClusterTest.newExport("u" + i);
+            export.setActivityId((long) (i % 3 + 1));
+            export.setAwardType(i % 5);
+            export.setOrderId((long) i);
+            userStrategyExportDao.insert(export);
+        }
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_query_for_list() {
+        List<Map<String, Object>> rows = shardScatterTemplate.queryForList("select u_id from user_strategy_export where activity_id = ?", 1L);
+        Assert.assertEquals(20, rows.size());
+    }
+
+    @Test
+    public void test_aggregate_without_group() {
+        List<Map<String, Object>> rows = shardScatterTemplate.aggregate(
+                "select count(1) as cnt, sum(order_id) as total, min(order_id) as min_id, max(order_id) as max_id, avg(order_id) as avg_id from user_strategy_export");
+        Assert.assertEquals(1, rows.size());
+        Map<String, Object> row = rows.get(0);
+        Assert.assertEquals(60L, ((Number) row.get("cnt")).longValue());
+        Assert.assertEquals(1770L, ((Number) row.get("total")).longValue());
+        Assert.assertEquals(0L, ((Number) row.get("min_id")).longValue());
+        Assert.assertEquals(59L, ((Number) row.get("max_id")).longValue());
+        Assert.assertEquals(0, new BigDecimal("29.5").compareTo((BigDecimal) row.get("avg_id")));
+    }
+
+    @Test
+    public void test_aggregate_group_by() {
+        List<Map<String, Object>> rows = shardScatterTemplate.aggregate(
+                "select activity_id, count(1) as cnt, avg(award_type) as avg_type from user_strategy_export where order_id >= ? group by activity_id order by activity_id desc limit 2", 0L);
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals(3L, ((Number) rows.get(0).get("activity_id")).longValue());
+        Assert.assertEquals(2L, ((Number) rows.get(1).get("activity_id")).longValue());
+        for (Map<String, Object> row : rows) {
+            Assert.assertEquals(20L, ((Number) row.get("cnt")).longValue());
+            Assert.assertEquals(0, new BigDecimal("2").compareTo((BigDecimal) row.get("avg_type")));
+        }
+    }
+
+    @Test
+    public void test_seek_page() {
+        long expected = 0;
+        String cursor = null;
+        do {
+            ShardPage page = shardScatterTemplate.seekPage("select u_id, order_id from user_strategy_export where activity_id > ?", "order_id", false, 7, cursor, 0L);
+            for (Map<String, Object> row : page.getRows()) {
+                Assert.assertEquals(expected++, ((Number) row.get("ORDER_ID")).longValue());
+            }
+            cursor = page.getNextCursor();
+        } while (null != cursor);
+        Assert.assertEquals(60L, expected);
+    }
+
+    @Test
+    public void test_seek_page_by_shard_local_id() {
+        // 自增 id 在分片间重复，游标按分片记录位置，仍然不重不漏
+        Set<Object> uIds = new HashSet<>();
+        String cursor = null;
+        do {
+            ShardPage page = shardScatterTemplate.seekPage("select id, u_id from user_strategy_export", "id", true, 9, cursor);
+            page.getRows().forEach(row -> Assert.assertTrue(uIds.add(row.get("U_ID"))));
+            cursor = page.getNextCursor();
+        } while (null != cursor);
+        Assert.assertEquals(60, uIds.size());
+    }
+
+    @Test
+    public void test_seek_page_by_duplicate_sort_value() {
+        // activity_id 大量重复，按 (activity_id, id) 翻页时页边界上的相同排序值不被跳过
+        Set<Object> uIds = new HashSet<>();
+        long lastActivityId = 0;
+        String cursor = null;
+        do {
+            ShardPage page = shardScatterTemplate.seekPage("select id, u_id, activity_id from user_strategy_export", "activity_id", "id", false, 7, cursor);
+            for (Map<String, Object> row : page.getRows()) {
+                Assert.assertTrue(uIds.add(row.get("U_ID")));
+                long activityId = ((Number) row.get("ACTIVITY_ID")).longValue();
+                Assert.assertTrue(activityId >= lastActivityId);
+                lastActivityId = activityId;
+            }
+            cursor = page.getNextCursor();
+        } while (null != cursor);
+        Assert.assertEquals(60, uIds.size());
+    }
+
+    @Test
+    public void test_seek_page_with_subquery() {
+        // 子查询中的 WHERE 不影响游标条件
+        long expected = 0;
+        String cursor = null;
+        do {
+            ShardPage page = shardScatterTemplate.seekPage("select u_id, order_id from user_strategy_export where order_id in " +
+                    "(select order_id from user_strategy_export where activity_id = ?)", "order_id", true, 4, cursor, 1L);
+            for (Map<String, Object> row : page.getRows()) {
+                Assert.assertEquals(57L - 3 * expected++, ((Number) row.get("ORDER_ID")).longValue());
+            }
+            cursor = page.getNextCursor();
+        } while (null != cursor);
+        Assert.assertEquals(20L, expected);
+    }
+
+    @Test
+    public void test_seek_cursor_keeps_temporal_precision() {
+        Timestamp timestamp = Timestamp.valueOf("2023-12-30 10:15:30.123456789");
+        LocalDateTime localDateTime = LocalDateTime.of(2023, 12, 30, 10, 15, 30, 123456000);
+        Shard first = new Shard("01", "000");
+        Shard second = new Shard("02", "001");
+        SeekCursor cursor = new SeekCursor();
+        cursor.position(first, new Object[]{timestamp, 7L});
+        cursor.position(second, new Object[]{localDateTime, 9L});
+        cursor.exhaust(new Shard("01", "001"));
+
+        SeekCursor decoded = SeekCursor.decode(cursor.encode());
+        Assert.assertEquals(timestamp, decoded.position(first)[0]);
+        Assert.assertEquals(7L, ((Number) decoded.position(first)[1]).longValue());
+        Assert.assertEquals(localDateTime, decoded.position(second)[0]);
+        Assert.assertTrue(decoded.isExhausted(new Shard("01", "001")));
+    }
+
+    @Test
+    public void test_offset_page() {
+        ShardPage page = shardScatterTemplate.offsetPage("select u_id, order_id from user_strategy_export", "order_id", false, 10, 5);
+        Assert.assertEquals(5, page.getRows().size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(10L + i, ((Number) page.getRows().get(i).get("ORDER_ID")).longValue());
+        }
+        page = shardScatterTemplate.offsetPage("select u_id, order_id from user_strategy_export", "order_id", true, 58, 5);
+        Assert.assertEquals(2, page.getRows().size());
+        Assert.assertEquals(0L, ((Number) page.getRows().get(1).get("ORDER_ID")).longValue());
+    }
+
+    @Test
+    public void test_offset_page_by_duplicate_sort_value() {
+        // activity_id 大量重复，按 (activity_id, id) 排序后逐页翻完不重复也不遗漏
+        Set<Object> uIds = new HashSet<>();
+        long lastActivityId = 0;
+        for (int offset = 0; offset < 60; offset += 7) {
+            ShardPage page = shardScatterTemplate.offsetPage("select id, u_id, activity_id from user_strategy_export", "activity_id", "id", false, offset, 7);
+            for (Map<String, Object> row : page.getRows()) {
+                Assert.assertTrue(uIds.add(row.get("U_ID")));
+                long activityId = ((Number) row.get("ACTIVITY_ID")).longValue();
+                Assert.assertTrue(activityId >= lastActivityId);
+                lastActivityId = activityId;
+            }
+        }
+        Assert.assertEquals(60, uIds.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_offset_page_rejects_illegal_column() {
+        shardScatterTemplate.offsetPage("select u_id, order_id from user_strategy_export", "order_id; drop table user_strategy_export", false, 0, 5);
+    }
+
+    @Test
+    public void test_interrupted_offset_page_releases_connections() throws InterruptedException {
+        Thread.currentThread().interrupt();
+        try {
+            shardScatterTemplate.offsetPage("select u_id, order_id from user_strategy_export", "order_id", false, 0, 5);
+            Assert.fail("interrupted scatter should fail");
+        } catch (IllegalStateException e) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        // 调用方放弃后才打开的分片结果集同样关闭并归还连接
+        long deadline = System.currentTimeMillis() + 5000;
+        for (String dbKey : new String[]{"db01", "db02"}) {
+            HikariDataSource dataSource = (HikariDataSource) cluster.getDataSource(dbKey);
+            while (dataSource.getHikariPoolMXBean().getActiveConnections() > 0) {
+                Assert.assertTrue("connections of " + dbKey + " leaked", System.currentTimeMillis() < deadline);
+                Thread.sleep(10);
+            }
+        }
+    }
+
+}
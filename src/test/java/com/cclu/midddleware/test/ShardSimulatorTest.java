@@ -0,0 +1,95 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.middleware.db.router.DBRouterConfig;
+import com.cclu.middleware.db.router.simulate.ShardDistribution;
+import com.cclu.middleware.db.router.simulate.ShardSimulator;
+import com.cclu.middleware.db.router.simulate.SimulationReport;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import com.cclu.middleware.db.router.strategy.impl.DBRouterStrategyHashCode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/28 10:40
+ * @description 分片分布模拟测试：统计各分片路由键数量，及扩容时需要迁移的路由键比例
+ * @copyright ChangChengLu
+ */
+public class ShardSimulatorTest {
+
+    private static final int KEYS = 100_000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path keysFile;
+
+    @Before
+    public void init() throws IOException {
+        keysFile = temporaryFolder.newFile("keys.txt").toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(keysFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < KEYS; i++) {
+                writer.write("u" + i);
+                writer.newLine();
+            }
+            writer.newLine();
+        }
+    }
+
+    @Test
+    public void test_distribution() throws IOException {
+        SimulationReport report = new ShardSimulator(4, 1000).simulate(keysFile, strategy(2, 4));
+        ShardDistribution current = report.getCurrent();
+        Assert.assertEquals(KEYS, report.totalKeys());
+        Assert.assertNull(report.getTarget());
+        Assert.assertEquals(KEYS, current.dbCount(1) + current.dbCount(2));
+        Assert.assertTrue(current.skew() < 1.1);
+
+        // 并行统计结果与单线程一致
+        ShardDistribution single = new ShardSimulator(1, 1).simulate(keysFile, strategy(2, 4)).getCurrent();
+        for (int dbIdx = 1; dbIdx <= 2; dbIdx++) {
+            for (int tbIdx = 0; tbIdx < 4; tbIdx++) {
+                Assert.assertEquals(single.count(dbIdx, tbIdx), current.count(dbIdx, tbIdx));
+            }
+        }
+    }
+
+    @Test
+    public void test_relocation() throws IOException {
+        ShardSimulator simulator = new ShardSimulator(4, 1000);
+        Assert.assertEquals(0L, simulator.simulate(keysFile, strategy(2, 4), strategy(2, 4)).getRelocatedKeys());
+
+        // 分片总数翻倍，哈希多取一位，约一半路由键迁移到新增的分库
+        SimulationReport report = simulator.simulate(keysFile, strategy(2, 4), strategy(4, 4));
+        Assert.assertEquals(KEYS, report.getTarget().total());
+        Assert.assertTrue(report.relocatedFraction() > 0.45 && report.relocatedFraction() < 0.55);
+        Assert.assertEquals(report.getRelocatedKeys(), report.getRelocatedAcrossDb());
+        Assert.assertEquals(KEYS - report.getRelocatedKeys(), report.getTarget().dbCount(1) + report.getTarget().dbCount(2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_out_of_range_strategy() throws IOException {
+        IDBRouterStrategy strategy = new DBRouterStrategyHashCode(new DBRouterConfig(2, 4, "uId")) {
+            @Override
+            public void doRouter(String dbKeyAttr) {
+                setDBKey(3);
+                setTBKey(0);
+            }
+        };
+        new ShardSimulator(2, 100).simulate(keysFile, strategy);
+    }
+
+    private static IDBRouterStrategy strategy(int dbCount, int tbCount) {
+        return new DBRouterStrategyHashCode(new DBRouterConfig(dbCount, tbCount, "uId"));
+    }
+
+}
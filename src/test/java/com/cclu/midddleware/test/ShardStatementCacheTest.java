@@ -0,0 +1,122 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IAwardDictDao;
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBRouterScope;
+import com.cclu.middleware.db.router.dynamic.ShardStatementCache;
+import com.cclu.middleware.db.router.dynamic.StatementCacheConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/29 10:30
+ * @description 分片 SQL 改写缓存测试：同一分片复用改写后的 SQL，超过容量时按 LRU 淘汰，pool.statementCache 同时开启驱动缓存
+ * @copyright ChangChengLu
+ */
+public class ShardStatementCacheTest {
+
+    @Test
+    public void test_canonical_sql_per_shard() {
+        ShardStatementCache cache = new ShardStatementCache(new StatementCacheConfig());
+        String sql = "select * from user_order where u_id = ?";
+        String first = cache.rewrite("db01", "003", false, new String(sql), s -> s.replace("user_order", "user_order_003"));
+        String second = cache.rewrite("db01", "003", false, new String(sql), s -> s.replace("user_order", "user_order_003"));
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, cache.rewrite("db02", "003", false, sql, s -> s.replace("user_order", "user_order_003")));
+
+        ShardStatementCache.Stats stats = cache.stats().get("db01_003");
+        Assert.assertEquals(1L, stats.getHits());
+        Assert.assertEquals(1L, stats.getMisses());
+        Assert.assertEquals(0.5D, stats.getHitRate(), 0.0001D);
+    }
+
+    @Test
+    public void test_lru_eviction() {
+        StatementCacheConfig config = new StatementCacheConfig();
+        config.getSizes().put("db01", 2);
+        config.getSizes().put("db02", 0);
+        ShardStatementCache cache = new ShardStatementCache(config);
+        cache.rewrite("db01", "000", false, "a", s -> s + "_000");
+        cache.rewrite("db01", "000", false, "b", s -> s + "_000");
+        // 访问 a 后 b 成为最久未使用
+        cache.rewrite("db01", "000", false, "a", s -> s + "_000");
+        cache.rewrite("db01", "000", false, "c", s -> s + "_000");
+        cache.rewrite("db01", "000", false, "a", s -> s + "_000");
+        cache.rewrite("db01", "000", false, "b", s -> s + "_000");
+
+        ShardStatementCache.Stats stats = cache.stats().get("db01_000");
+        Assert.assertEquals(2, stats.getSize());
+        Assert.assertEquals(2L, stats.getHits());
+        Assert.assertEquals(2L, stats.getEvictions());
+
+        // 容量为 0 的库不缓存
+        cache.rewrite("db02", "000", false, "a", s -> s + "_000");
+        Assert.assertFalse(cache.stats().containsKey("db02_000"));
+    }
+
+    @Test
+    public void test_default_data_source_size() {
+        EmbeddedShardCluster cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("award_dict", EmbeddedShardCluster.loadTemplate("sql/award_dict.sql"))
+                .property("broadcastTables", "award_dict")
+                .property("shadowTableSuffix", "_shadow")
+                .property("db00.pool.statementCache.size", 8)
+                .mapper(IAwardDictDao.class)
+                .build()
+                .start();
+        try {
+            // 未路由的语句在默认数据源 db00 上执行，使用 db00 配置的容量
+            IAwardDictDao awardDictDao = cluster.getMapper(IAwardDictDao.class);
+            try (DBRouterScope ignored = DBRouterScope.shadow()) {
+                awardDictDao.queryAwardName("1");
+                awardDictDao.queryAwardName("1");
+            }
+            ShardStatementCache.Stats stats = cluster.getBean(ShardStatementCache.class).stats().get("db00_-#shadow");
+            Assert.assertEquals(8, stats.getCapacity());
+            Assert.assertEquals(1L, stats.getHits());
+        } finally {
+            cluster.close();
+        }
+    }
+
+    @Test
+    public void test_statement_cache_in_pool() {
+        EmbeddedShardCluster cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .property("global.pool.statementCache.size", 64)
+                .property("global.pool.statementCache.sqlLimit", 2048)
+                .mapper(IUserStrategyExportDao.class)
+                .build()
+                .start();
+        try {
+            Map<Object, Object> properties = ((HikariDataSource) cluster.getDataSource("db01")).getDataSourceProperties();
+            Assert.assertEquals("true", properties.get("cachePrepStmts"));
+            Assert.assertEquals("64", properties.get("prepStmtCacheSize"));
+            Assert.assertEquals("2048", properties.get("prepStmtCacheSqlLimit"));
+
+            IUserStrategyExportDao userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+            userStrategyExportDao.insert(EmbeddedShardClusterTest.newExport("u1"));
+            for (int i = 0; i < 10; i++) {
+                Assert.assertNotNull(userStrategyExportDao.queryUserStrategyExportByUId("u1"));
+            }
+            Map<String, ShardStatementCache.Stats> stats = cluster.getBean(ShardStatementCache.class).stats();
+            Assert.assertEquals(1, stats.size());
+            ShardStatementCache.Stats shardStats = stats.values().iterator().next();
+            Assert.assertEquals(64, shardStats.getCapacity());
+            Assert.assertEquals(2, shardStats.getSize());
+            Assert.assertEquals(9L, shardStats.getHits());
+        } finally {
+            cluster.close();
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.annotation.DBRouter;
+import com.cclu.middleware.db.router.annotation.DBRouterSingleFlight;
+import com.cclu.middleware.db.router.flight.SingleFlight;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/27 10:30
+ * @description 合并读测试：同一分片上相同参数的并发查询只执行一次，各调用得到独立的结果，事务内不合并
+ * @copyright ChangChengLu
+ */
+public class SingleFlightTest {
+
+    private static final AtomicInteger PROBES = new AtomicInteger();
+
+    private EmbeddedShardCluster cluster;
+
+    private IFlightProbeDao flightProbeDao;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .dbCount(2)
+                .tbCount(4)
+                .property("singleFlight.enabled", true)
+                .mapper(IFlightProbeDao.class)
+                .build()
+                .start();
+        for (String dbKey : new String[]{"db00", "db01", "db02"}) {
+            cluster.execute(dbKey, "CREATE ALIAS SLOW_PROBE FOR \"" + SingleFlightTest.class.getName() + ".slowProbe\"");
+        }
+        flightProbeDao = cluster.getMapper(IFlightProbeDao.class);
+        executorService = Executors.newFixedThreadPool(8);
+        PROBES.set(0);
+    }
+
+    @After
+    public void destroy() {
+        executorService.shutdownNow();
+        cluster.close();
+    }
+
+    @Test
+    public void test_coalesce_concurrent_reads() throws Exception {
+        List<String> results = concurrently(8, () -> flightProbeDao.probe("u1"));
+        results.forEach(result -> Assert.assertEquals("u1", result));
+        Assert.assertEquals(1, PROBES.get());
+        SingleFlight singleFlight = cluster.getBean(SingleFlight.class);
+        Assert.assertEquals(1L, singleFlight.getFlights());
+        Assert.assertEquals(7L, singleFlight.getCoalesced());
+
+        // 查询结束后再到达的调用重新查询
+        Assert.assertEquals("u1", flightProbeDao.probe("u1"));
+        Assert.assertEquals(2, PROBES.get());
+    }
+
+    @Test
+    public void test_coalesced_results_are_copies() throws Exception {
+        List<List<Map<String, Object>>> results = concurrently(4, () -> flightProbeDao.probeRows("u1"));
+        Assert.assertEquals(1, PROBES.get());
+        Assert.assertEquals(3L, cluster.getBean(SingleFlight.class).getCoalesced());
+
+        // 修改某个调用的结果不影响其他调用
+        results.get(0).get(0).put("U_ID", "changed");
+        results.get(1).clear();
+        Assert.assertEquals("u1", results.get(2).get(0).get("U_ID"));
+        Assert.assertEquals("u1", results.get(3).get(0).get("U_ID"));
+        Assert.assertNotSame(results.get(2), results.get(3));
+    }
+
+    @Test
+    public void test_no_coalesce_for_unserializable_results() throws Exception {
+        List<List<ProbeRecord>> results = concurrently(4, () -> flightProbeDao.probeRecords("u1"));
+        results.forEach(result -> Assert.assertEquals("u1", result.get(0).getUId()));
+        // 无法复制的结果不共享，等待的调用各自重新查询
+        Assert.assertEquals(4, PROBES.get());
+        Assert.assertEquals(0L, cluster.getBean(SingleFlight.class).getCoalesced());
+    }
+
+    @Test
+    public void test_no_coalesce_for_different_keys() throws Exception {
+        AtomicInteger sequence = new AtomicInteger();
+        concurrently(4, () -> flightProbeDao.probe("u" + sequence.incrementAndGet()));
+        Assert.assertEquals(4, PROBES.get());
+    }
+
+    @Test
+    public void test_no_coalesce_in_transaction() throws Exception {
+        TransactionTemplate transactionTemplate = cluster.getBean(TransactionTemplate.class);
+        concurrently(4, () -> transactionTemplate.execute(status -> flightProbeDao.probe("u1")));
+        Assert.assertEquals(4, PROBES.get());
+        Assert.assertEquals(0L, cluster.getBean(SingleFlight.class).getCoalesced());
+    }
+
+    private <T> List<T> concurrently(int threads, Callable<T> call) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executorService.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    public static String slowProbe(String uId) throws InterruptedException {
+        PROBES.incrementAndGet();
+        Thread.sleep(800);
+        return uId;
+    }
+
+    @Mapper
+    public interface IFlightProbeDao {
+
+        @DBRouter
+        @DBRouterSingleFlight
+        @Select("SELECT SLOW_PROBE(#{uId})")
+        String probe(String uId);
+
+        @DBRouter
+        @DBRouterSingleFlight
+        @Select("SELECT SLOW_PROBE(#{uId}) AS U_ID")
+        List<Map<String, Object>> probeRows(String uId);
+
+        @DBRouter
+        @DBRouterSingleFlight
+        @Select("SELECT SLOW_PROBE(#{uId}) AS uId")
+        List<ProbeRecord> probeRecords(String uId);
+
+    }
+
+    /**
+     * 未实现 Serializable 的查询结果
+     */
+    public static class ProbeRecord {
+
+        private String uId;
+
+        public String getUId() {
+            return uId;
+        }
+
+        public void setUId(String uId) {
+            this.uId = uId;
+        }
+
+    }
+
+}
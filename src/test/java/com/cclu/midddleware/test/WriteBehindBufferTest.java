@@ -0,0 +1,166 @@
+package com.cclu.midddleware.test;
+
+import com.cclu.midddleware.example.IUserStrategyExportDao;
+import com.cclu.midddleware.example.UserStrategyExport;
+import com.cclu.midddleware.support.EmbeddedShardCluster;
+import com.cclu.middleware.db.router.DBContextHolder;
+import com.cclu.middleware.db.router.DBRouterScope;
+import com.cclu.middleware.db.router.batch.WriteBehindBuffer;
+import com.cclu.middleware.db.router.scatter.ShardScatterTemplate;
+import com.cclu.middleware.db.router.strategy.IDBRouterStrategy;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * @author ChangCheng Lu
+ * @date 2023/12/14 14:30
+ * @description 写合并测试
+ * @copyright ChangChengLu
+ */
+public class WriteBehindBufferTest {
+
+    private EmbeddedShardCluster cluster;
+
+    private IUserStrategyExportDao userStrategyExportDao;
+
+    @Before
+    public void init() {
+        cluster = EmbeddedShardCluster.builder()
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .mapper(IUserStrategyExportDao.class)
+                .property("writeBehind.batchSize", 16)
+                .property("writeBehind.flushMillis", 5)
+                .build()
+                .start();
+        userStrategyExportDao = cluster.getMapper(IUserStrategyExportDao.class);
+    }
+
+    @After
+    public void destroy() {
+        cluster.close();
+    }
+
+    @Test
+    public void test_group_commit() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String uId = "u" + i;
+            futures.add(executorService.submit(() -> userStrategyExportDao.insertGroupCommit(EmbeddedShardClusterTest.newExport(uId))));
+        }
+        for (Future<Integer> future : futures) {
+            Assert.assertEquals(Integer.valueOf(1), future.get());
+        }
+        executorService.shutdown();
+        // 组提交返回时数据已可见
+        Assert.assertEquals(400L, count());
+        Assert.assertNotNull(userStrategyExportDao.queryUserStrategyExportByUId("u7"));
+    }
+
+    @Test
+    public void test_async() {
+        for (int i = 0; i < 100; i++) {
+            userStrategyExportDao.insertAsync(EmbeddedShardClusterTest.newExport("u" + i));
+        }
+        cluster.getBean(WriteBehindBuffer.class).flushAll();
+        Assert.assertEquals(100L, count());
+    }
+
+    @Test
+    public void test_flush_keeps_caller_route() {
+        userStrategyExportDao.insertAsync(EmbeddedShardClusterTest.newExport("u1"));
+        try (DBRouterScope route = DBRouterScope.open("02", "001"); DBRouterScope shadow = DBRouterScope.shadow()) {
+            cluster.getBean(WriteBehindBuffer.class).flushAll();
+            Assert.assertEquals("02", DBContextHolder.getDBKey());
+            Assert.assertEquals("001", DBContextHolder.getTBKey());
+            Assert.assertTrue(DBContextHolder.isShadow());
+        }
+        Assert.assertEquals(1L, count());
+    }
+
+    @Test
+    public void test_bad_row_fails_alone() {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        strategy.doRouter("u1");
+        String dbKey = DBContextHolder.getDBKey();
+        String tbKey = DBContextHolder.getTBKey();
+        strategy.clear();
+        WriteBehindBuffer writeBehindBuffer = cluster.getBean(WriteBehindBuffer.class);
+        String statementId = IUserStrategyExportDao.class.getName() + ".insertGroupCommit";
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            UserStrategyExport export = EmbeddedShardClusterTest.newExport("u1");
+            if (2 == i) {
+                // uuid 超过列长度，该行写入失败
+                export.setUuid(String.join("", Collections.nCopies(100, "x")));
+            }
+            futures.add(writeBehindBuffer.enqueue(dbKey, tbKey, statementId, export));
+        }
+        writeBehindBuffer.flushAll();
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(2 == i, futures.get(i).isCompletedExceptionally());
+        }
+        Assert.assertEquals(4L, count());
+    }
+
+    @Test
+    public void test_durable_wait_is_bounded() throws Exception {
+        EmbeddedShardCluster slowCluster = EmbeddedShardCluster.builder()
+                .table("user_strategy_export", EmbeddedShardCluster.loadTemplate("sql/user_strategy_export.sql"))
+                .mapper(IUserStrategyExportDao.class)
+                .property("writeBehind.flushMillis", 5)
+                .property("writeBehind.commitTimeoutMillis", 200)
+                .property("db01.pool.maximum-pool-size", 1)
+                .build()
+                .start();
+        try {
+            String uId = userOfShard(slowCluster, "01");
+            // 占用 db01 唯一的连接，批次无法提交
+            Connection connection = slowCluster.getDataSource("db01").getConnection();
+            long start = System.currentTimeMillis();
+            try {
+                slowCluster.getMapper(IUserStrategyExportDao.class).insertGroupCommit(EmbeddedShardClusterTest.newExport(uId));
+                Assert.fail("durable write should time out");
+            } catch (IllegalStateException e) {
+                Assert.assertTrue(e.getMessage().contains("not committed within 205ms"));
+                Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            } finally {
+                connection.close();
+            }
+            // 连接释放后缓冲中的数据仍会提交
+            slowCluster.getBean(WriteBehindBuffer.class).flushAll();
+            Assert.assertNotNull(slowCluster.getMapper(IUserStrategyExportDao.class).queryUserStrategyExportByUId(uId));
+        } finally {
+            slowCluster.close();
+        }
+    }
+
+    private static String userOfShard(EmbeddedShardCluster cluster, String dbKey) {
+        IDBRouterStrategy strategy = cluster.getStrategy();
+        for (int i = 0; ; i++) {
+            strategy.doRouter("u" + i);
+            String routed = DBContextHolder.getDBKey();
+            strategy.clear();
+            if (dbKey.equals(routed)) {
+                return "u" + i;
+            }
+        }
+    }
+
+    private long count() {
+        return ((Number) cluster.getBean(ShardScatterTemplate.class)
+                .aggregate("select count(1) as cnt from user_strategy_export").get(0).get("cnt")).longValue();
+    }
+
+}
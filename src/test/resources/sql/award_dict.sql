@@ -0,0 +1,5 @@
+CREATE TABLE {table} (
+  award_id varchar(64) NOT NULL,
+  award_name varchar(64),
+  PRIMARY KEY (award_id)
+);
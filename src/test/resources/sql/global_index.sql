@@ -0,0 +1,5 @@
+CREATE TABLE {table} (
+  index_value varchar(64) NOT NULL,
+  router_value varchar(64) NOT NULL,
+  PRIMARY KEY (index_value, router_value)
+);
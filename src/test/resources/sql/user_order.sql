@@ -0,0 +1,9 @@
+CREATE TABLE {table} (
+  id bigint NOT NULL AUTO_INCREMENT,
+  u_id varchar(32) NOT NULL,
+  order_id varchar(32) NOT NULL,
+  amount decimal(10, 2),
+  create_time datetime,
+  PRIMARY KEY (id)
+);
+CREATE INDEX idx_{table}_order_id ON {table} (order_id);
@@ -0,0 +1,8 @@
+CREATE TABLE {table} (
+  id bigint NOT NULL AUTO_INCREMENT,
+  order_id varchar(32) NOT NULL,
+  sku varchar(32) NOT NULL,
+  quantity int,
+  PRIMARY KEY (id)
+);
+CREATE INDEX idx_{table}_order_id ON {table} (order_id);
@@ -0,0 +1,20 @@
+CREATE TABLE {table} (
+  id bigint NOT NULL AUTO_INCREMENT,
+  u_id varchar(32) NOT NULL,
+  activity_id bigint,
+  order_id bigint,
+  strategy_id bigint,
+  strategy_mode int,
+  grant_type int,
+  grant_date datetime,
+  grant_state int,
+  award_id varchar(64),
+  award_type int,
+  award_name varchar(64),
+  award_content varchar(128),
+  uuid varchar(64),
+  create_time datetime,
+  update_time datetime,
+  PRIMARY KEY (id)
+);
+CREATE INDEX idx_{table}_u_id ON {table} (u_id);